@@ -0,0 +1,65 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.bcharris.fixedincomepricing.Amortization;
+import net.bcharris.fixedincomepricing.Portfolio;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Amortization schedules for a book of 30 year monthly pools streamed to a sink that keeps nothing, reported as
+ * positions per second for daily and periodic entries.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AmortizationBenchmark {
+
+    private static final int BONDS = 1000;
+    @Param({"DAILY", "PERIODIC"})
+    public Amortization.Frequency frequency;
+    private Portfolio portfolio;
+
+    @Setup
+    public void setUp() {
+        int periods = 360;
+        Portfolio.Builder builder = new Portfolio.Builder();
+        int schedule = builder.addSchedule(Schedules.stairStepFactors(periods), Schedules.constantRates(periods, .05 / 12));
+        for (int i = 0; i < BONDS; i++) {
+            int daysToMaturity = 1 + (int) ((i * 7919L) % (periods * 30));
+            builder.add(daysToMaturity, (.02 + (i % 100) * .0005) / 12, 30, 14 + i % 40, schedule, periods);
+        }
+        portfolio = builder.build();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BONDS)
+    public void amortize(final Blackhole blackhole) {
+        Amortization.amortize(portfolio, frequency, new Amortization.Sink() {
+
+            @Override
+            public void entry(int position, int daysToMaturity, double face, double bookValue, double interest, double accretion) {
+                blackhole.consume(bookValue + interest + accretion);
+            }
+
+            @Override
+            public void couponDate(int position, int daysToMaturity, double priceBefore, double priceAfter, double unexplainedIncome) {
+                blackhole.consume(unexplainedIncome);
+            }
+        });
+    }
+}
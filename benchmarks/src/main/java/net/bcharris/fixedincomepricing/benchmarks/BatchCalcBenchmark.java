@@ -0,0 +1,89 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.bcharris.fixedincomepricing.BatchCalc;
+import net.bcharris.fixedincomepricing.Calc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A batch of 30 year monthly bonds of the same shape, each with its own yield, coupon and factors, reported as bonds per
+ * second:
+ * <ul>
+ * <li><b>calc</b>: {@link Calc#price} for each bond, from its own arrays.</li>
+ * <li><b>scalar</b>: {@link BatchCalc#scalar}, plain Java loops over the columnar arrays.</li>
+ * <li><b>vectorN</b>: {@link BatchCalc#vector} with N lanes, which needs the benchmarks built with -Pvector.</li>
+ * </ul>
+ * The fork adds the jdk.incubator.vector module, so this benchmark needs Java 16 or later.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class BatchCalcBenchmark {
+
+    private static final int BONDS = 1024;
+    private static final int PERIODS = 360;
+    private static final int DAYS_TO_MATURITY = PERIODS * 30 - 15;
+    @Param({"calc", "scalar", "vector2", "vector4", "vector8"})
+    public String kernel;
+    private BatchCalc batchCalc;
+    private double[] yields;
+    private double[] factors;
+    private double[] rates;
+    private double[][] bondFactors;
+    private double[][] bondRates;
+    private double[] prices;
+
+    @Setup
+    public void setUp() {
+        if (kernel.startsWith("vector")) {
+            batchCalc = BatchCalc.vector(Integer.parseInt(kernel.substring("vector".length())));
+        } else if (kernel.equals("scalar")) {
+            batchCalc = BatchCalc.scalar();
+        }
+        Random random = new Random(42);
+        yields = new double[BONDS];
+        factors = new double[BONDS * PERIODS];
+        rates = new double[BONDS * PERIODS];
+        bondFactors = new double[BONDS][PERIODS];
+        bondRates = new double[BONDS][PERIODS];
+        prices = new double[BONDS];
+        for (int b = 0; b < BONDS; b++) {
+            yields[b] = (.02 + random.nextDouble() * .06) / 12;
+            double rate = (.02 + random.nextDouble() * .06) / 12;
+            double factor = 1;
+            for (int p = 0; p < PERIODS; p++) {
+                factors[p * BONDS + b] = bondFactors[b][p] = factor;
+                rates[p * BONDS + b] = bondRates[b][p] = rate;
+                factor *= 1 - random.nextDouble() * .01;
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BONDS)
+    public double[] price() {
+        if (batchCalc == null) {
+            for (int b = 0; b < BONDS; b++) {
+                prices[b] = Calc.price(DAYS_TO_MATURITY, bondFactors[b], bondRates[b], yields[b], 30, 24);
+            }
+        } else {
+            batchCalc.price(BONDS, DAYS_TO_MATURITY, yields, factors, rates, PERIODS, 30, 24, prices);
+        }
+        return prices;
+    }
+}
@@ -0,0 +1,98 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.bcharris.fixedincomepricing.Calc;
+import net.bcharris.fixedincomepricing.DayCountUtil;
+import net.bcharris.fixedincomepricing.Risk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A single {@link Calc#price} call across maturities and coupon frequencies, with the same yield each time, one of a set
+ * of yields, or a yield never seen before, and risk computed in one pass with {@link Risk#calculate} against bumping the
+ * yield either side.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CalcBenchmark {
+
+    @Param({"1", "2", "4", "12"})
+    public int periodsPerYear;
+    @Param({"1", "10", "30"})
+    public int years;
+    private int daysToMaturity;
+    private int periodLength;
+    private double[] factors;
+    private double[] rates;
+    private double periodYield;
+    private double[] manyPeriodYields;
+    private int next;
+    private long fresh;
+
+    @Setup
+    public void setUp() {
+        periodLength = DayCountUtil.periodLength(periodsPerYear);
+        // A partial period exercises the fractional discount and accrued.
+        daysToMaturity = years * 360 - periodLength / 2;
+        int periods = years * periodsPerYear;
+        factors = Schedules.stairStepFactors(periods);
+        rates = Schedules.constantRates(periods, .05 / periodsPerYear);
+        periodYield = .04 / periodsPerYear;
+        manyPeriodYields = new double[10000];
+        for (int i = 0; i < manyPeriodYields.length; i++) {
+            manyPeriodYields[i] = (.02 + i * 1e-6) / periodsPerYear;
+        }
+    }
+
+    @Benchmark
+    public double price() {
+        return Calc.price(daysToMaturity, factors, rates, periodYield, periodLength, 14);
+    }
+
+    /**
+     * A different yield on every call, so no discounts are shared between calls.
+     */
+    @Benchmark
+    public double priceManyYields() {
+        next = next + 1 == manyPeriodYields.length ? 0 : next + 1;
+        return Calc.price(daysToMaturity, factors, rates, manyPeriodYields[next], periodLength, 14);
+    }
+
+    /**
+     * A yield never priced before on every call, so every discount table lookup misses.  Short bonds, two periods a year
+     * for a year, are where a miss costs most against calling {@link Math#pow} directly.
+     */
+    @Benchmark
+    public double priceFreshYields() {
+        fresh++;
+        return Calc.price(daysToMaturity, factors, rates, periodYield + fresh * 1e-15, periodLength, 14);
+    }
+
+    @Benchmark
+    public double riskSinglePass() {
+        Risk risk = Risk.calculate(daysToMaturity, factors, rates, periodYield, periodLength, 14);
+        return risk.price() + risk.modifiedDuration() + risk.convexity();
+    }
+
+    @Benchmark
+    public double riskBumped() {
+        double bump = .0001 / periodsPerYear;
+        double price = Calc.price(daysToMaturity, factors, rates, periodYield, periodLength, 14);
+        double up = Calc.price(daysToMaturity, factors, rates, periodYield + bump, periodLength, 14);
+        double down = Calc.price(daysToMaturity, factors, rates, periodYield - bump, periodLength, 14);
+        return price + (down - up) + (up - 2 * price + down);
+    }
+}
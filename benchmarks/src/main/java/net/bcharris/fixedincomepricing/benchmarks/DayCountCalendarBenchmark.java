@@ -0,0 +1,61 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import net.bcharris.fixedincomepricing.DayCountCalendar;
+import net.bcharris.fixedincomepricing.DayCountCalendar.DayCount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scheduling a book of dated semiannual bonds from settlement and maturity dates, reported as bonds per second for
+ * each day count.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DayCountCalendarBenchmark {
+
+    private static final int BONDS = 1000;
+    @Param({"ACTUAL_ACTUAL", "ACTUAL_360", "THIRTY_E_360"})
+    public DayCount dayCount;
+    private DayCountCalendar calendar;
+    private int settlement;
+    private int[] maturities;
+    private DayCountCalendar.Terms terms;
+
+    @Setup
+    public void setUp() {
+        calendar = new DayCountCalendar(LocalDate.of(2020, 1, 1), LocalDate.of(2060, 12, 31), Collections.<LocalDate>emptySet());
+        settlement = (int) LocalDate.of(2025, 3, 17).toEpochDay();
+        maturities = new int[BONDS];
+        for (int i = 0; i < BONDS; i++) {
+            maturities[i] = settlement + 30 + (int) ((i * 7919L) % (30 * 365));
+        }
+        terms = new DayCountCalendar.Terms();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BONDS)
+    public int schedule() {
+        int days = 0;
+        for (int i = 0; i < BONDS; i++) {
+            days += calendar.schedule(settlement, maturities[i], 2, dayCount, .05, 0, terms).daysToMaturity();
+        }
+        return days;
+    }
+}
@@ -0,0 +1,63 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import java.util.concurrent.TimeUnit;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generating a 30 year monthly factor schedule, for a constant and for scripts of increasing complexity, and preparing
+ * a script as pressing Recompute does, with and without the compiled script cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// Groovy 1.7 reflects into the JDK.
+@Fork(value = 1, jvmArgsAppend = {"--add-opens", "java.base/java.lang=ALL-UNNAMED", "--add-opens", "java.base/java.lang.reflect=ALL-UNNAMED",
+    "--add-opens", "java.base/java.math=ALL-UNNAMED", "--add-opens", "java.base/java.util=ALL-UNNAMED"})
+@State(Scope.Thread)
+public class FactorGenerationBenchmark {
+
+    @Param({"1", "(periods-period)/periods", "if (period==0) x=2; else x+=0.1; return 1/x"})
+    public String script;
+    private GroovyPeriodValueGenerator generator;
+    private double[] values;
+
+    @Setup
+    public void setUp() {
+        generator = new GroovyPeriodValueGenerator(script);
+        values = new double[360];
+    }
+
+    @Benchmark
+    public double[] generate() throws GenerationException {
+        generator.generate(values);
+        return values;
+    }
+
+    @Benchmark
+    public GroovyPeriodValueGenerator newGenerator() {
+        return new GroovyPeriodValueGenerator(script);
+    }
+
+    /**
+     * What every Recompute cost before scripts were cached.
+     */
+    @Benchmark
+    public Script parse() {
+        return new GroovyShell().parse(script);
+    }
+}
@@ -0,0 +1,46 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.bcharris.fixedincomepricing.FactorModel;
+import net.bcharris.fixedincomepricing.FactorModels;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Filling a million period schedule with each built in factor model.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FactorModelBenchmark {
+
+    @Param({"1", "(periods-period)/periods", "cpr(6)", "psa(150)", "levelPayment(4.5)"})
+    public String script;
+    private FactorModel model;
+    private double[] values;
+
+    @Setup
+    public void setUp() {
+        model = FactorModels.parse(script);
+        values = new double[1000000];
+    }
+
+    @Benchmark
+    public double[] generate() throws GenerationException {
+        model.generate(values, 12);
+        return values;
+    }
+}
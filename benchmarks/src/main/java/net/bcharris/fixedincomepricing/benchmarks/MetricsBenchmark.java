@@ -0,0 +1,62 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.bcharris.fixedincomepricing.Calc;
+import net.bcharris.fixedincomepricing.DayCountUtil;
+import net.bcharris.fixedincomepricing.Metrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What {@link Metrics} costs on the finest grained stage it instruments, a single {@link Calc#price} call, with metrics
+ * off and on.  Metrics are fixed when the JVM starts, so each runs in its own fork.  With metrics off the price should
+ * match {@link CalcBenchmark#price}; with them on it pays two clock reads and a histogram update.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class MetricsBenchmark {
+
+    @Param({"2", "12"})
+    public int periodsPerYear;
+    @Param({"1", "30"})
+    public int years;
+    private int daysToMaturity;
+    private int periodLength;
+    private double[] factors;
+    private double[] rates;
+    private double periodYield;
+
+    @Setup
+    public void setUp() {
+        periodLength = DayCountUtil.periodLength(periodsPerYear);
+        daysToMaturity = years * 360 - periodLength / 2;
+        int periods = years * periodsPerYear;
+        factors = Schedules.stairStepFactors(periods);
+        rates = Schedules.constantRates(periods, .05 / periodsPerYear);
+        periodYield = .04 / periodsPerYear;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dfixedincomepricing.metrics=false")
+    public double priceMetricsOff() {
+        return Calc.price(daysToMaturity, factors, rates, periodYield, periodLength, 14);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dfixedincomepricing.metrics=true")
+    public double priceMetricsOn() {
+        return Calc.price(daysToMaturity, factors, rates, periodYield, periodLength, 14);
+    }
+}
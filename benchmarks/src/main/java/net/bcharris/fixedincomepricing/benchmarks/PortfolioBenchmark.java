@@ -0,0 +1,69 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import net.bcharris.fixedincomepricing.Portfolio;
+import net.bcharris.fixedincomepricing.PortfolioPricer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pricing a book of a million 30 year monthly pools, reported as bonds per second for each number of threads.  The pool
+ * has exactly that many threads, so settings beyond the machine's cores measure oversubscription.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PortfolioBenchmark {
+
+    private static final int BONDS = 1000000;
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+    private Portfolio portfolio;
+    private double[] prices;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int periods = 360;
+        Portfolio.Builder builder = new Portfolio.Builder();
+        int[] schedules = new int[16];
+        for (int i = 0; i < schedules.length; i++) {
+            schedules[i] = builder.addSchedule(Schedules.stairStepFactors(periods), Schedules.constantRates(periods, (.03 + i * .001) / 12));
+        }
+        for (int i = 0; i < BONDS; i++) {
+            int daysToMaturity = 1 + (int) ((i * 7919L) % (periods * 30));
+            builder.add(daysToMaturity, (.02 + (i % 100) * .0005) / 12, 30, 14 + i % 40, schedules[i % schedules.length], periods);
+        }
+        portfolio = builder.build();
+        prices = new double[BONDS];
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BONDS)
+    public double[] price() {
+        PortfolioPricer.price(portfolio, prices, pool);
+        return prices;
+    }
+}
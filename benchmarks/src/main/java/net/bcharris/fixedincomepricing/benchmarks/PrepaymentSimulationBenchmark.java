@@ -0,0 +1,57 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import net.bcharris.fixedincomepricing.FactorModels;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+import net.bcharris.fixedincomepricing.PrepaymentSimulation;
+import net.bcharris.fixedincomepricing.RunningStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 10,000 simulated paths of a 30 year monthly amortizing pool, reported as milliseconds per run for each number of
+ * threads.  The pool is capped at the number of available cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrepaymentSimulationBenchmark {
+
+    private static final int PATHS = 10000;
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+    private PrepaymentSimulation simulation;
+    private ForkJoinPool pool;
+    private long seed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        simulation = new PrepaymentSimulation.Builder().fixedCoupon(6).scheduled(FactorModels.levelPayment(6.5)).payDelay(14).build();
+        pool = new ForkJoinPool(Math.min(threads, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public RunningStatistics simulate() throws GenerationException {
+        return simulation.run(10800, 5.5, PATHS, seed++, pool);
+    }
+}
@@ -0,0 +1,86 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import net.bcharris.fixedincomepricing.Calc;
+import net.bcharris.fixedincomepricing.CurveDataset;
+import net.bcharris.fixedincomepricing.DayCountUtil;
+import net.bcharris.fixedincomepricing.PriceCurve;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The price curve behind the Prices tab: one price per day from maturity out to the days to maturity.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PriceCurveBenchmark {
+
+    @Param({"2", "12"})
+    public int periodsPerYear;
+    @Param({"5", "30"})
+    public int years;
+    private int daysToMaturity;
+    private int periodLength;
+    private double[] factors;
+    private double[] rates;
+    private double periodYield;
+    private double[] curve;
+
+    @Setup
+    public void setUp() {
+        periodLength = DayCountUtil.periodLength(periodsPerYear);
+        daysToMaturity = years * 360;
+        int periods = years * periodsPerYear;
+        factors = Schedules.stairStepFactors(periods);
+        rates = Schedules.constantRates(periods, .05 / periodsPerYear);
+        periodYield = .04 / periodsPerYear;
+        curve = new double[daysToMaturity];
+    }
+
+    /**
+     * The curve as computed before {@link PriceCurve}, one {@link Calc#price} per day.
+     */
+    @Benchmark
+    public double[] calcPerDay() {
+        for (int i = daysToMaturity; i >= 1; i--) {
+            curve[i - 1] = Calc.price(i, factors, rates, periodYield, periodLength, 14);
+        }
+        return curve;
+    }
+
+    @Benchmark
+    public double[] priceCurve() {
+        PriceCurve.price(1, factors, rates, periodYield, periodLength, 14, curve);
+        return curve;
+    }
+
+    /**
+     * Everything the Prices tab does with a recomputed curve short of handing it to the plot: a {@link CurveDataset} over
+     * a fresh curve, decimated to two points per pixel of an 800 pixel chart.
+     */
+    @Benchmark
+    public CurveDataset curveDataset() {
+        double[] days = new double[daysToMaturity];
+        double[] prices = new double[daysToMaturity];
+        for (int i = 0; i < daysToMaturity; i++) {
+            days[i] = i + 1;
+        }
+        PriceCurve.price(1, factors, rates, periodYield, periodLength, 14, prices);
+        CurveDataset dataset = new CurveDataset(0, days, prices);
+        dataset.decimate(1, daysToMaturity, 1600);
+        return dataset;
+    }
+}
@@ -0,0 +1,64 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import net.bcharris.fixedincomepricing.ScenarioSurface;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A 500 yield by 10,000 day surface for a 30 year monthly pool, reported as milliseconds per surface for each number of
+ * threads.  The pool is capped at the number of available cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScenarioSurfaceBenchmark {
+
+    private static final int YIELDS = 500;
+    private static final int DAYS = 10000;
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+    private double[] factors;
+    private double[] rates;
+    private double[] periodYields;
+    private double[][] prices;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        factors = Schedules.stairStepFactors(360);
+        rates = Schedules.constantRates(360, .05 / 12);
+        periodYields = new double[YIELDS];
+        for (int i = 0; i < YIELDS; i++) {
+            periodYields[i] = (.01 + i * .0002) / 12;
+        }
+        prices = new double[YIELDS][DAYS];
+        pool = new ForkJoinPool(Math.min(threads, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public double[][] surface() {
+        ScenarioSurface.price(periodYields, 1, factors, rates, 30, 14, prices, pool);
+        return prices;
+    }
+}
@@ -0,0 +1,23 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import java.util.Arrays;
+
+/**
+ * Factor and rate schedules shared by the benchmarks.
+ */
+class Schedules {
+
+    static double[] stairStepFactors(int periods) {
+        double[] factors = new double[periods];
+        for (int i = 0; i < periods; i++) {
+            factors[i] = (double) (periods - i) / periods;
+        }
+        return factors;
+    }
+
+    static double[] constantRates(int periods, double rate) {
+        double[] rates = new double[periods];
+        Arrays.fill(rates, rate);
+        return rates;
+    }
+}
@@ -0,0 +1,112 @@
+package net.bcharris.fixedincomepricing.benchmarks;
+
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to first price for a new JVM, from starting the process until it exits having priced:
+ * <ul>
+ * <li><b>headless</b>: the launcher pricing one row with a built in factor model.</li>
+ * <li><b>headlessScript</b>: the same with a factor script, which loads Groovy.</li>
+ * <li><b>gui</b>: the window showing its first prices, which needs a display.</li>
+ * </ul>
+ * With cds the process uses a class data sharing archive made by a run of the same path during setup, as the cds
+ * profile makes for the jar with dependencies.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    private static final String LAUNCHER = "net.bcharris.fixedincomepricing.Launcher";
+    /**
+     * Groovy 1.7 reflects into the JDK, as in the jar's manifest.
+     */
+    private static final List<String> OPENS = Arrays.asList("--add-opens", "java.base/java.lang=ALL-UNNAMED",
+            "--add-opens", "java.base/java.lang.reflect=ALL-UNNAMED", "--add-opens", "java.base/java.util=ALL-UNNAMED",
+            "--add-opens", "java.base/java.io=ALL-UNNAMED", "--add-opens", "java.base/java.net=ALL-UNNAMED");
+    @Param({"headless", "headlessScript", "gui"})
+    public String path;
+    @Param({"false", "true"})
+    public boolean cds;
+    private File archive;
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        if (path.equals("gui") && GraphicsEnvironment.isHeadless()) {
+            throw new IllegalStateException("The gui path needs a display.");
+        }
+        output = File.createTempFile("startup", ".out");
+        if (cds) {
+            archive = File.createTempFile("startup", ".jsa");
+            archive.delete();
+            run("-XX:ArchiveClassesAtExit=" + archive);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        output.delete();
+        if (archive != null) {
+            archive.delete();
+        }
+    }
+
+    @Benchmark
+    public int firstPrice() throws IOException, InterruptedException {
+        return cds ? run("-XX:SharedArchiveFile=" + archive) : run("-Xshare:auto");
+    }
+
+    private int run(String shareOption) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add(shareOption);
+        command.addAll(OPENS);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LAUNCHER);
+        String input;
+        if (path.equals("gui")) {
+            command.add("gui");
+            command.add("--exit-after-first-price");
+            input = "";
+        } else {
+            command.add("price");
+            input = path.equals("headless")
+                    ? "daysToMaturity,coupon,couponsPerYear,yield,factors\n3600,5,12,5.5,cpr(6)\n"
+                    : "daysToMaturity,coupon,couponsPerYear,yield,factors\n3600,5,12,5.5,1 - period / periods / 2\n";
+        }
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(output).start();
+        OutputStream stdin = process.getOutputStream();
+        stdin.write(input.getBytes("UTF-8"));
+        stdin.close();
+        int exitValue = process.waitFor();
+        if (exitValue != 0) {
+            throw new IllegalStateException(command + " exited with " + exitValue);
+        }
+        return exitValue;
+    }
+}
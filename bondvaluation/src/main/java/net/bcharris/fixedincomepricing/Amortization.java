@@ -0,0 +1,168 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Constant yield amortization schedules, streamed to a {@link Sink} as they are computed.  A position bought at a price
+ * is booked at the yield that price implies, and its book value on each day is the value of its remaining cash flows
+ * at that yield, the same as {@link Calc#price} on that day, so the book follows the price curve.  Each step's income is
+ * split into the coupon interest accrued and the accretion, positive, or amortization, negative, of the book value.
+ * <p>
+ * Between coupon dates the income is exactly the yield on the dirty book value, but on coupon dates the price curve
+ * jumps: a payment delay discounts the cash flows still to come but not the one just received, and the curve need not
+ * end at par.  Each coupon date is reported with the clean prices either side of it and the income the yield does not
+ * explain.
+ * <p>
+ * A position takes one pass over its days, an array of one double per period and a discount table of one double per
+ * day of a period, so the schedules of a book of any size never need to be held in memory.  Amounts are per unit of original face, and prices per unit of current face.
+ */
+public class Amortization {
+
+    public enum Frequency {
+
+        /**
+         * An entry for every day.
+         */
+        DAILY,
+        /**
+         * An entry for every coupon date.
+         */
+        PERIODIC
+    }
+
+    /**
+     * Receives schedules, in order of position and then of decreasing days to maturity.
+     */
+    public interface Sink {
+
+        /**
+         * One step of a schedule.  The first entry for a position is the day of purchase, with no income.
+         * @param position The position the entry is for.
+         * @param daysToMaturity The days to maturity at the end of the step, 0 once the position has matured.
+         * @param face The face outstanding after the step.
+         * @param bookValue The clean book value after the step.
+         * @param interest The coupon interest accrued over the step.
+         * @param accretion The change in book value over the step, other than from principal paid at par.
+         */
+        void entry(int position, int daysToMaturity, double face, double bookValue, double interest, double accretion);
+
+        /**
+         * A coupon date, reported after the entry ending on it.
+         * @param position The position the coupon is for.
+         * @param daysToMaturity The days to maturity on the coupon date, 0 for the last.
+         * @param priceBefore The clean price the day before.
+         * @param priceAfter The clean price on the coupon date, par for the last.
+         * @param unexplainedIncome The day's income beyond the yield on the dirty book value.
+         */
+        void couponDate(int position, int daysToMaturity, double priceBefore, double priceAfter, double unexplainedIncome);
+    }
+
+    /**
+     * Amortize a position bought at a price.
+     * @param position The position, passed on to the sink.
+     * @param price The clean purchase price per unit of current face, as returned by {@link Calc#price}.
+     * @param daysToMaturity Number of days until maturity at purchase, must be >= 1.
+     * @param factors The factors for each period, see {@link Calc#price}.
+     * @param rates The effective coupon rates for each period, each having been divided by the number of periods per year.
+     * @param periodLength The length of a period.
+     * @param payDelay The payment delay for cash flows.
+     * @param frequency How often to report to the sink.
+     * @param sink Receives the schedule.
+     * @return The yield the position is booked at, divided by the number of periods per year.
+     */
+    public static double amortize(int position, double price, int daysToMaturity, double[] factors, double[] rates, int periodLength, int payDelay,
+            Frequency frequency, Sink sink) {
+        checkArgument(daysToMaturity >= 1, "daysToMaturity (%s) >= 1", daysToMaturity);
+        int numCashFlows = (daysToMaturity + periodLength - 1) / periodLength;
+        checkArgument(factors.length >= numCashFlows, "factors.length (%s) >= # of future cash flows (%s)", factors.length, numCashFlows);
+        checkArgument(rates.length == factors.length, "rates.length (%s) == factors.length (%s)", rates.length, factors.length);
+        double periodYield = YieldSolver.solve(price, daysToMaturity, factors, rates, periodLength, payDelay);
+        amortizeUnchecked(position, daysToMaturity, factors, rates, factors.length, periodYield, periodLength, payDelay, frequency, sink,
+                new double[numCashFlows + 1]);
+        return periodYield;
+    }
+
+    /**
+     * Amortize every bond in a portfolio, each bought at its yield.  Positions are the bonds' indexes.
+     */
+    public static void amortize(Portfolio portfolio, Frequency frequency, Sink sink) {
+        double[] sums = new double[0];
+        for (int bond = 0; bond < portfolio.size(); bond++) {
+            int numCashFlows = (portfolio.daysToMaturity(bond) + portfolio.periodLength(bond) - 1) / portfolio.periodLength(bond);
+            if (sums.length <= numCashFlows) {
+                sums = new double[Math.max(numCashFlows + 1, sums.length * 2)];
+            }
+            portfolio.amortizeUnchecked(bond, frequency, sink, sums);
+        }
+    }
+
+    /**
+     * Amortize without checking arguments, with the schedule ending at an index of the arrays as for
+     * {@link Calc#priceUnchecked}.
+     * @param sums Scratch space for at least one more double than the number of future cash flows.
+     */
+    static void amortizeUnchecked(int position, int daysToMaturity, double[] factors, double[] rates, int end, double periodYield,
+            int periodLength, int payDelay, Frequency frequency, Sink sink, double[] sums) {
+        // The sink may price, which can reset any of the thread's cached tables, so the schedule has a table of its own.
+        DiscountTable discounts = DiscountTable.create(periodYield, periodLength, payDelay);
+        // sums[k] is the value of the k cash flows nearest maturity as of the earliest of them, summed as Calc does.
+        int numCashFlows = (daysToMaturity + periodLength - 1) / periodLength;
+        Calc.discountCashFlows(factors, rates, end, numCashFlows, discounts.periodDiscount, sums);
+
+        int day = daysToMaturity;
+        double dirty = dirtyValue(day, sums, discounts);
+        int periodIdx = end - numCashFlows;
+        double bookValue = dirty - accrued(day, factors[periodIdx], rates[periodIdx], periodLength);
+        sink.entry(position, day, factors[periodIdx], bookValue, 0, 0);
+        while (day > 0) {
+            // Every day from day down to next is in the same period, and next may be its coupon date.
+            int next = frequency == Frequency.DAILY ? day - 1 : (day - 1) / periodLength * periodLength;
+            int period = next / periodLength + 1;
+            periodIdx = end - period;
+            double face = factors[periodIdx];
+            double rate = rates[periodIdx];
+            boolean couponDate = next % periodLength == 0;
+            double nextFace = face;
+            double cash = 0;
+            if (couponDate) {
+                nextFace = next == 0 ? 0 : factors[periodIdx + 1];
+                cash = face * rate + face - nextFace;
+            }
+            double nextDirty = next == 0 ? 0 : dirtyValue(next, sums, discounts);
+            double nextBookValue = nextDirty - accrued(next, face, rate, periodLength);
+            double income = nextDirty + cash - dirty;
+            double interest = face * rate * (day - next) / periodLength;
+            double accretion = nextBookValue - bookValue + (face - nextFace);
+            sink.entry(position, next, nextFace, nextBookValue, interest, accretion);
+            if (couponDate) {
+                // The day before, the yield explains the growth of the dirty value to the coupon date.
+                double dayBefore = next + 1 == day ? dirty : dirtyValue(next + 1, sums, discounts);
+                double dayDiscount = periodLength == 1 ? discounts.periodDiscount : discounts.partialDiscount(1);
+                double explained = dayBefore * (1 / dayDiscount - 1);
+                double dayIncome = next + 1 == day ? income : nextDirty + cash - dayBefore;
+                double priceBefore = (dayBefore - accrued(next + 1, face, rate, periodLength)) / face;
+                double priceAfter = next == 0 ? 1 : nextDirty / nextFace;
+                sink.couponDate(position, next, priceBefore, priceAfter, dayIncome - explained);
+            }
+            day = next;
+            dirty = nextDirty;
+            bookValue = nextBookValue;
+        }
+    }
+
+    /**
+     * @return The dirty value per unit of original face, which divided by the factor is the price {@link Calc} would
+     * return before subtracting the accrued.
+     */
+    private static double dirtyValue(int daysToMaturity, double[] sums, DiscountTable discounts) {
+        int periodLength = discounts.periodLength;
+        return Calc.dirtyValue(sums[(daysToMaturity + periodLength - 1) / periodLength], daysToMaturity % periodLength, discounts);
+    }
+
+    /**
+     * @return The accrued per unit of original face as {@link Calc} calculates it, 0 on coupon dates.
+     */
+    private static double accrued(int daysToMaturity, double face, double rate, int periodLength) {
+        return face * rate * Calc.accruedFraction(daysToMaturity % periodLength, periodLength);
+    }
+}
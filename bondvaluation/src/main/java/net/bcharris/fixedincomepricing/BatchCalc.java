@@ -0,0 +1,220 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Arrays;
+
+/**
+ * Prices a batch of bonds of the same shape, the same days to maturity, period length, payment delay and number of
+ * periods, each with its own yield, factors and coupon rates.  The factors and rates are columnar, period p of bond b
+ * at p * count + b with periods indexed as for {@link Calc#price}, so one period of every bond is contiguous and a
+ * batch can be priced several bonds at a time, one per SIMD lane.
+ * <p>
+ * When built with the vector profile and run with {@code --add-modules jdk.incubator.vector}, {@link #get} uses the
+ * JDK's Vector API at the platform's preferred width, otherwise a scalar loop.  Both do the same IEEE operations in the
+ * same order as {@link Calc#price}, multiplies and adds without fusing and the same discount factors, so prices agree
+ * with it to the bit: the tolerance is 0 ULPs.
+ */
+public abstract class BatchCalc {
+
+    /**
+     * The bonds priced together, whose running prices and discounts stay in the first level cache.
+     */
+    static final int TILE = 256;
+
+    private static final String VECTOR_CLASS = "net.bcharris.fixedincomepricing.VectorBatchCalc";
+    private static final BatchCalc SCALAR = new ScalarBatchCalc();
+    /**
+     * Each thread's period, final and delay discounts and running prices for the bonds of one tile.
+     */
+    private static final ThreadLocal<double[][]> TILES = new ThreadLocal<double[][]>() {
+
+        @Override
+        protected double[][] initialValue() {
+            return new double[4][TILE];
+        }
+    };
+
+    /**
+     * The fastest kernel available, found once.
+     */
+    private static class Best {
+
+        static final BatchCalc INSTANCE = find();
+
+        private static BatchCalc find() {
+            BatchCalc vector = vectorOrNull(0);
+            return vector != null ? vector : SCALAR;
+        }
+    }
+
+    BatchCalc() {
+    }
+
+    /**
+     * @return The vector kernel at the preferred width if the Vector API is available, otherwise the scalar kernel.
+     */
+    public static BatchCalc get() {
+        return Best.INSTANCE;
+    }
+
+    /**
+     * @return The kernel in plain Java, one bond after another, which the JIT may vectorize itself.
+     */
+    public static BatchCalc scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * @param lanes The number of bonds priced at once, 2, 4 or 8, or 0 for the platform's preferred width.  Widths
+     * beyond the hardware's work but are emulated, slowly.
+     * @return The vector kernel for that width.
+     * @throws UnsupportedOperationException If this build or JVM lacks the Vector API.
+     */
+    public static BatchCalc vector(int lanes) {
+        BatchCalc calc = vectorOrNull(lanes);
+        if (calc == null) {
+            throw new UnsupportedOperationException("The Vector API needs the vector profile and --add-modules jdk.incubator.vector");
+        }
+        return calc;
+    }
+
+    private static BatchCalc vectorOrNull(int lanes) {
+        try {
+            return (BatchCalc) Class.forName(VECTOR_CLASS).getMethod("create", int.class).invoke(null, lanes);
+        } catch (LinkageError e) {
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            if (e.getCause() instanceof LinkageError) {
+                return null;
+            }
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The number of bonds this kernel prices at once.
+     */
+    public abstract int lanes();
+
+    /**
+     * Calculate prices for a batch of bonds of the same shape.
+     * @param count The number of bonds.
+     * @param daysToMaturity The number of days until maturity of every bond, must be >= 1.
+     * @param periodYields The required rate of return for each bond, divided by the number of periods per year.
+     * @param factors The factors for each period of each bond, columnar, see {@link BatchCalc}.
+     * @param rates The effective coupon rates for each period of each bond, columnar, each having been divided by the
+     * number of periods per year.
+     * @param periods The number of periods in each bond's schedule.
+     * @param periodLength The length of a period.
+     * @param payDelay The payment delay for cash flows.
+     * @param prices The array in which to store the prices.
+     */
+    public final void price(int count, int daysToMaturity, double[] periodYields, double[] factors, double[] rates, int periods,
+            int periodLength, int payDelay, double[] prices) {
+        if (count < 0 || periodYields.length < count || prices.length < count) {
+            throw new IllegalArgumentException(String.format("count (%s) <= periodYields.length (%s) and prices.length (%s)",
+                    count, periodYields.length, prices.length));
+        }
+        if (daysToMaturity < 1 || periodLength < 1 || payDelay < 0) {
+            throw new IllegalArgumentException(String.format("daysToMaturity (%s) >= 1, periodLength (%s) >= 1 and payDelay (%s) >= 0",
+                    daysToMaturity, periodLength, payDelay));
+        }
+        int numCashFlows = (daysToMaturity + periodLength - 1) / periodLength;
+        if (periods < numCashFlows) {
+            throw new IllegalArgumentException(String.format("periods (%s) >= # of future cash flows (%s)", periods, numCashFlows));
+        }
+        if (factors.length < (long) periods * count || rates.length < (long) periods * count) {
+            throw new IllegalArgumentException(String.format("factors.length (%s) and rates.length (%s) >= periods * count (%s)",
+                    factors.length, rates.length, (long) periods * count));
+        }
+        long start = Metrics.start();
+        int partialPeriod = daysToMaturity % periodLength;
+        double accruedFraction = Calc.accruedFraction(partialPeriod, periodLength);
+        double[][] tiles = TILES.get();
+        double[] periodDiscounts = tiles[0];
+        double[] finalDiscounts = tiles[1];
+        double[] delayDiscounts = tiles[2];
+        double[] tilePrices = tiles[3];
+        for (int tile = 0; tile < count; tile += TILE) {
+            int size = Math.min(TILE, count - tile);
+            for (int i = 0; i < size; i++) {
+                DiscountTable table = DiscountTable.get(periodYields[tile + i], periodLength, payDelay);
+                periodDiscounts[i] = table.periodDiscount;
+                finalDiscounts[i] = partialPeriod == 0 ? table.periodDiscount : table.partialDiscount(partialPeriod);
+                delayDiscounts[i] = table.delayDiscount;
+            }
+            priceTile(tile, size, count, numCashFlows, periods, accruedFraction, payDelay > 0, factors, rates, periodDiscounts,
+                    finalDiscounts, delayDiscounts, tilePrices);
+            System.arraycopy(tilePrices, 0, prices, tile, size);
+        }
+        Metrics.stop(Metrics.Stage.BATCH_PRICE, start);
+    }
+
+    /**
+     * Price one tile with the discount factors worked out, as {@link Calc} does for one bond: discount back through the
+     * cash flows from maturity, then by the final whole or partial period and the payment delay, per unit of current
+     * face, less accrued interest.  Kernels walk back through the periods of the tile's bonds, keeping their running
+     * prices in prices, so each period's factors and rates are read in order rather than a schedule apart.
+     * <p>
+     * The discounts and prices hold the tile's bonds from index 0, and bond i of the tile is at tile + i in a period's
+     * factors and rates.
+     * @param tile The tile's first bond.
+     * @param size The number of bonds in the tile, at most {@link #TILE}.
+     * @param accruedFraction The share of the current period's coupon accrued, 0 if settlement is on a coupon date.
+     * @param delay Whether to apply delayDiscounts.
+     */
+    abstract void priceTile(int tile, int size, int count, int numCashFlows, int periods, double accruedFraction, boolean delay,
+            double[] factors, double[] rates, double[] periodDiscounts, double[] finalDiscounts, double[] delayDiscounts, double[] prices);
+
+    /**
+     * Discount a tile's bonds from up to to one period back and add that period's cash flows.
+     * @param row The index of the tile's first bond in the period.
+     * @param finalPeriod Whether the period is the last, whose factor after paydown is 0.
+     */
+    static void discountPeriod(int from, int to, int row, int count, boolean finalPeriod, double[] factors, double[] rates,
+            double[] periodDiscounts, double[] prices) {
+        for (int i = from; i < to; i++) {
+            double factor = finalPeriod ? 0 : factors[row + count + i];
+            prices[i] = Calc.discountPeriod(prices[i], periodDiscounts[i], factors[row + i], factor, rates[row + i]);
+        }
+    }
+
+    /**
+     * Discount a tile's bonds from up to to settlement and turn them into prices.
+     * @param current The index of the tile's first bond in the current period.
+     */
+    static void finish(int from, int to, int current, double accruedFraction, boolean delay, double[] factors, double[] rates,
+            double[] finalDiscounts, double[] delayDiscounts, double[] prices) {
+        for (int i = from; i < to; i++) {
+            double px = prices[i] * finalDiscounts[i];
+            if (delay) {
+                px *= delayDiscounts[i];
+            }
+            prices[i] = Calc.cleanPrice(px, factors[current + i], rates[current + i], accruedFraction);
+        }
+    }
+
+    private static final class ScalarBatchCalc extends BatchCalc {
+
+        @Override
+        public int lanes() {
+            return 1;
+        }
+
+        @Override
+        void priceTile(int tile, int size, int count, int numCashFlows, int periods, double accruedFraction, boolean delay,
+                double[] factors, double[] rates, double[] periodDiscounts, double[] finalDiscounts, double[] delayDiscounts,
+                double[] prices) {
+            Arrays.fill(prices, 0, size, 0);
+            for (int i = 0, row = (periods - 1) * count + tile; i < numCashFlows; i++, row -= count) {
+                discountPeriod(0, size, row, count, i == 0, factors, rates, periodDiscounts, prices);
+            }
+            int current = (periods - numCashFlows) * count + tile;
+            finish(0, size, current, accruedFraction, delay, factors, rates, finalDiscounts, delayDiscounts, prices);
+        }
+    }
+}
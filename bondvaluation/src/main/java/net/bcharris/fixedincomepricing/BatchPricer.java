@@ -0,0 +1,430 @@
+package net.bcharris.fixedincomepricing;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+
+/**
+ * Prices bonds from a comma or tab separated file without a display.  Rows are read in blocks, priced on a pool of
+ * worker threads, and written in input order, with only a few blocks in memory at once, so files of any size can be
+ * priced.
+ * <p>
+ * The first row names the columns, in any order:
+ * <ul>
+ * <li><b>daysToMaturity</b>, <b>coupon</b> (annual percent) and <b>couponsPerYear</b> are required.</li>
+ * <li><b>yield</b> (annual percent) is required to price, or <b>price</b> when solving for yields.</li>
+ * <li><b>paymentDelay</b> defaults to 0, and <b>factors</b>, a factor script as on the Factors tab, defaults to 1.</li>
+ * <li><b>id</b> is optional and copied to the output.</li>
+ * </ul>
+ * Each output row has the id if given, the price, the yield when solving for yields, the modified duration, convexity and
+ * DV01 when risk is asked for, and an error message for rows which could not be priced.
+ */
+public class BatchPricer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * The CPU time a factor script may take to generate one schedule before its row fails.
+     */
+    static final long DEFAULT_SCRIPT_BUDGET_MILLIS = 10000;
+
+    static class Options {
+
+        String input;
+        String output;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int blockSize = 4096;
+        boolean solveYields;
+        boolean risk;
+        boolean quiet;
+        long scriptBudgetMillis = DEFAULT_SCRIPT_BUDGET_MILLIS;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = parseArgs(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: [--input file] [--output file] [--threads n] [--yield] [--risk] [--script-budget ms] [--quiet]");
+            System.err.println("  Reads standard input and writes standard output unless files are given.");
+            System.err.println("  --yield solves for yields from a price column, --risk adds duration, convexity and DV01.");
+            System.err.println("  --script-budget is the CPU time a factor script may take per schedule, default " + DEFAULT_SCRIPT_BUDGET_MILLIS + ".");
+            System.err.println("  The number of rows and the time taken are reported to standard error unless --quiet is given.");
+            System.exit(2);
+            return;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                options.input == null ? System.in : new FileInputStream(options.input), UTF_8), 1 << 16);
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+                options.output == null ? System.out : new FileOutputStream(options.output), UTF_8), 1 << 16);
+        long start = System.nanoTime();
+        long rows;
+        try {
+            rows = run(in, out, options);
+        } finally {
+            out.close();
+            in.close();
+        }
+        if (!options.quiet) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.println(String.format(Locale.US, "Priced %d rows in %.3f s (%.0f rows/s)", rows, seconds, rows / seconds));
+        }
+    }
+
+    static Options parseArgs(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--yield")) {
+                options.solveYields = true;
+            } else if (arg.equals("--risk")) {
+                options.risk = true;
+            } else if (arg.equals("--quiet")) {
+                options.quiet = true;
+            } else if (i + 1 < args.length && arg.equals("--input")) {
+                options.input = args[++i];
+            } else if (i + 1 < args.length && arg.equals("--output")) {
+                options.output = args[++i];
+            } else if (i + 1 < args.length && arg.equals("--threads")) {
+                try {
+                    options.threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Invalid thread count: " + args[i]);
+                }
+                if (options.threads < 1) {
+                    throw new IllegalArgumentException("Invalid thread count: " + args[i]);
+                }
+            } else if (i + 1 < args.length && arg.equals("--script-budget")) {
+                try {
+                    options.scriptBudgetMillis = Long.parseLong(args[++i]);
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Invalid script budget: " + args[i]);
+                }
+                if (options.scriptBudgetMillis < 1) {
+                    throw new IllegalArgumentException("Invalid script budget: " + args[i]);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Price every row of the input.
+     * @return The number of rows read, not counting the header.
+     */
+    static long run(BufferedReader in, Writer out, Options options) throws IOException, InterruptedException {
+        String headerLine = in.readLine();
+        if (headerLine == null) {
+            return 0;
+        }
+        char delimiter = headerLine.indexOf('\t') >= 0 ? '\t' : ',';
+        Columns columns = new Columns(split(headerLine, delimiter), options);
+        out.write(columns.outputHeader(delimiter));
+
+        ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+        // Two blocks per thread keeps every thread busy while the oldest block is written.
+        ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>();
+        long rows = 0;
+        try {
+            while (true) {
+                final List<String> block = new ArrayList<String>(options.blockSize);
+                String line;
+                while (block.size() < options.blockSize && (line = in.readLine()) != null) {
+                    if (line.length() > 0) {
+                        block.add(line);
+                    }
+                }
+                if (block.isEmpty()) {
+                    break;
+                }
+                rows += block.size();
+                final BlockPricer pricer = new BlockPricer(columns, delimiter);
+                pending.add(executor.submit(new Callable<String>() {
+
+                    @Override
+                    public String call() {
+                        return pricer.price(block);
+                    }
+                }));
+                if (pending.size() >= 2 * options.threads) {
+                    out.write(result(pending.remove()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                out.write(result(pending.remove()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        out.flush();
+        return rows;
+    }
+
+    private static String result(Future<String> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Split a row, allowing fields to be quoted so factor scripts can contain the delimiter.
+     */
+    static List<String> split(String line, char delimiter) {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    /**
+     * Where each input is in a row, and what goes in the output.
+     */
+    static class Columns {
+
+        final boolean solveYields;
+        final boolean risk;
+        final long scriptBudgetMillis;
+        final int id;
+        final int daysToMaturity;
+        final int coupon;
+        final int couponsPerYear;
+        final int yieldOrPrice;
+        final int paymentDelay;
+        final int factors;
+
+        Columns(List<String> header, Options options) {
+            List<String> names = new ArrayList<String>();
+            for (String name : header) {
+                names.add(name.toLowerCase(Locale.US));
+            }
+            solveYields = options.solveYields;
+            risk = options.risk;
+            scriptBudgetMillis = options.scriptBudgetMillis;
+            id = names.indexOf("id");
+            daysToMaturity = required(names, "daysToMaturity");
+            coupon = required(names, "coupon");
+            couponsPerYear = required(names, "couponsPerYear");
+            yieldOrPrice = required(names, solveYields ? "price" : "yield");
+            paymentDelay = names.indexOf("paymentdelay");
+            factors = names.indexOf("factors");
+        }
+
+        private static int required(List<String> names, String name) {
+            int index = names.indexOf(name.toLowerCase(Locale.US));
+            if (index < 0) {
+                throw new IllegalArgumentException("The input has no " + name + " column.");
+            }
+            return index;
+        }
+
+        String outputHeader(char delimiter) {
+            StringBuilder header = new StringBuilder();
+            if (id >= 0) {
+                header.append("id").append(delimiter);
+            }
+            header.append("price");
+            if (solveYields) {
+                header.append(delimiter).append("yield");
+            }
+            if (risk) {
+                header.append(delimiter).append("modifiedDuration").append(delimiter).append("convexity").append(delimiter).append("dv01");
+            }
+            header.append(delimiter).append("error").append('\n');
+            return header.toString();
+        }
+    }
+
+    /**
+     * Prices the rows of a block on one thread, reusing its schedules while consecutive rows share them.
+     */
+    private static class BlockPricer {
+
+        private final Columns columns;
+        private final char delimiter;
+        private String factorScript;
+        private int periodsPerYear;
+        private double[] factors;
+        private double periodCoupon;
+        private double[] rates;
+        /**
+         * The last schedule which could not be generated, so rows repeating a script that ran out of time fail at once.
+         */
+        private String failedScript;
+        private int failedPeriods;
+        private int failedPeriodsPerYear;
+        private String failure;
+
+        BlockPricer(Columns columns, char delimiter) {
+            this.columns = columns;
+            this.delimiter = delimiter;
+        }
+
+        String price(List<String> block) {
+            StringBuilder out = new StringBuilder(block.size() * 64);
+            for (String line : block) {
+                List<String> fields = split(line, delimiter);
+                if (columns.id >= 0) {
+                    out.append(field(fields, columns.id)).append(delimiter);
+                }
+                int mark = out.length();
+                try {
+                    priceRow(fields, out);
+                    out.append(delimiter);
+                } catch (GenerationException ex) {
+                    error(out, mark, ex.getMessage());
+                } catch (RuntimeException ex) {
+                    error(out, mark, ex.toString());
+                }
+                out.append('\n');
+            }
+            return out.toString();
+        }
+
+        private void error(StringBuilder out, int mark, String message) {
+            out.setLength(mark);
+            out.append(delimiter);
+            if (columns.solveYields) {
+                out.append(delimiter);
+            }
+            if (columns.risk) {
+                out.append(delimiter).append(delimiter).append(delimiter);
+            }
+            out.append('"').append(message.replace('\n', ' ').replace("\"", "\"\"")).append('"');
+        }
+
+        private void priceRow(List<String> fields, StringBuilder out) throws GenerationException {
+            int daysToMaturity = Integer.parseInt(field(fields, columns.daysToMaturity));
+            int couponsPerYear = Integer.parseInt(field(fields, columns.couponsPerYear));
+            double coupon = Double.parseDouble(field(fields, columns.coupon)) * .01;
+            double yieldOrPrice = Double.parseDouble(field(fields, columns.yieldOrPrice));
+            int paymentDelay = columns.paymentDelay < 0 ? 0 : Integer.parseInt(field(fields, columns.paymentDelay, "0"));
+            String factorScript = columns.factors < 0 ? "1" : field(fields, columns.factors, "1");
+            if (daysToMaturity < 1) {
+                throw new IllegalArgumentException("daysToMaturity must be >= 1");
+            }
+            if (couponsPerYear < 1 || couponsPerYear > 360) {
+                throw new IllegalArgumentException("couponsPerYear must be between 1 and 360");
+            }
+
+            int periodLength = DayCountUtil.periodLength(couponsPerYear);
+            // The same limit as the server's, so one row cannot allocate a schedule big enough to stop the whole run.
+            if (daysToMaturity > PricingServer.MAX_CASH_FLOWS * periodLength) {
+                throw new IllegalArgumentException("daysToMaturity must be at most " + PricingServer.MAX_CASH_FLOWS * periodLength
+                        + " with " + couponsPerYear + " coupons per year");
+            }
+            int neededFactors = (daysToMaturity + periodLength - 1) / periodLength;
+            prepareSchedule(factorScript, couponsPerYear, neededFactors, coupon / couponsPerYear);
+
+            double periodYield;
+            double price;
+            if (columns.solveYields) {
+                price = yieldOrPrice;
+                periodYield = YieldSolver.solve(price, daysToMaturity, factors, rates, periodLength, paymentDelay);
+            } else {
+                periodYield = yieldOrPrice * .01 / couponsPerYear;
+                price = Calc.price(daysToMaturity, factors, rates, periodYield, periodLength, paymentDelay);
+            }
+            out.append(price);
+            if (columns.solveYields) {
+                out.append(delimiter).append(periodYield * couponsPerYear * 100);
+            }
+            if (columns.risk) {
+                Risk risk = Risk.calculate(daysToMaturity, factors, rates, periodYield, periodLength, paymentDelay);
+                out.append(delimiter).append(risk.modifiedDuration());
+                out.append(delimiter).append(risk.convexity());
+                out.append(delimiter).append(risk.dv01());
+            }
+        }
+
+        private void prepareSchedule(String script, int couponsPerYear, int periods, double coupon) throws GenerationException {
+            if (factors == null || factors.length != periods || periodsPerYear != couponsPerYear || !script.equals(factorScript)) {
+                if (script.equals(failedScript) && periods == failedPeriods && couponsPerYear == failedPeriodsPerYear) {
+                    throw new GenerationException(failure);
+                }
+                double[] newFactors = new double[periods];
+                ScriptBudget budget = new ScriptBudget(columns.scriptBudgetMillis);
+                budget.begin();
+                try {
+                    FactorModels.parse(script).generate(newFactors, couponsPerYear);
+                } catch (GenerationException ex) {
+                    failedScript = script;
+                    failedPeriods = periods;
+                    failedPeriodsPerYear = couponsPerYear;
+                    failure = ex.getMessage();
+                    throw ex;
+                } finally {
+                    budget.end();
+                }
+                String invalid = FactorModels.validate(newFactors);
+                if (invalid != null) {
+                    throw new GenerationException(invalid);
+                }
+                factors = newFactors;
+                factorScript = script;
+                periodsPerYear = couponsPerYear;
+                rates = null;
+            }
+            if (rates == null || periodCoupon != coupon) {
+                rates = new double[periods];
+                Arrays.fill(rates, coupon);
+                periodCoupon = coupon;
+            }
+        }
+
+        private static String field(List<String> fields, int index) {
+            if (index >= fields.size() || fields.get(index).length() == 0) {
+                throw new IllegalArgumentException("Missing field " + (index + 1));
+            }
+            return fields.get(index);
+        }
+
+        private static String field(List<String> fields, int index, String defaultValue) {
+            if (index >= fields.size() || fields.get(index).length() == 0) {
+                return defaultValue;
+            }
+            return fields.get(index);
+        }
+    }
+}
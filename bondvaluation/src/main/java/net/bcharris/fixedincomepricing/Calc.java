@@ -2,6 +2,8 @@ package net.bcharris.fixedincomepricing;
 
 import static com.google.common.base.Preconditions.*;
 
+import java.nio.DoubleBuffer;
+
 public class Calc {
 
     /**
@@ -23,42 +25,180 @@ public class Calc {
         }
         checkArgument(factors.length >= numCashFlows, "factors.length (%s) >= # of future cash flows (%s)", factors.length, numCashFlows);
         checkArgument(rates.length == factors.length, "rates.length (%s) == factors.length (%s)", rates.length, factors.length);
+        long start = Metrics.start();
+        double price = priceUnchecked(daysToMaturity, factors, rates, factors.length, periodYield, periodLength, payDelay);
+        Metrics.stop(Metrics.Stage.PRICE, start);
+        return price;
+    }
 
+    /**
+     * Calculate price from schedules held in buffers, such as views of a memory mapped {@link ScheduleStore}, without
+     * copying them.
+     * @param factors The factors for each period, from the buffer's position to its limit.
+     * @param rates The effective coupon rates for each period, from the buffer's position to its limit.
+     * @see #price(int, double[], double[], double, int, int)
+     */
+    public static double price(int daysToMaturity, DoubleBuffer factors, DoubleBuffer rates, double periodYield, int periodLength, int payDelay) {
+        int numCashFlows = daysToMaturity / periodLength;
+        double partialPeriod = daysToMaturity % periodLength;
+        if (partialPeriod > 0) {
+            numCashFlows++;
+        }
+        checkArgument(factors.remaining() >= numCashFlows, "factors.remaining() (%s) >= # of future cash flows (%s)", factors.remaining(), numCashFlows);
+        checkArgument(rates.remaining() == factors.remaining(), "rates.remaining() (%s) == factors.remaining() (%s)", rates.remaining(), factors.remaining());
+        long start = Metrics.start();
+        double price = priceUnchecked(daysToMaturity, factors, rates, periodYield, periodLength, payDelay);
+        Metrics.stop(Metrics.Stage.PRICE, start);
+        return price;
+    }
+
+    private static double priceUnchecked(int daysToMaturity, DoubleBuffer factors, DoubleBuffer rates, double periodYield, int periodLength, int payDelay) {
+        int numCashFlows = (daysToMaturity + periodLength - 1) / periodLength;
+        int partialPeriod = daysToMaturity % periodLength;
+        // The same steps as the array kernel, reading each period through the buffers' absolute get.
+        int factorsEnd = factors.position() + factors.remaining();
+        int ratesOffset = rates.position() - factors.position();
+        DiscountTable discounts = DiscountTable.get(periodYield, periodLength, payDelay);
         double px = 0;
-        int periodIdx = factors.length;
-        boolean finalPeriod = true;
-        for (int i = 0; i < numCashFlows; i++) {
-            px *= 1 / (1 + periodYield);
-            double factor;
-            if (finalPeriod) {
-                factor = 0;
-                finalPeriod = false;
-            } else {
-                factor = factors[periodIdx];
+        for (int periodIdx = factorsEnd - 1; periodIdx >= factorsEnd - numCashFlows; periodIdx--) {
+            double factor = periodIdx == factorsEnd - 1 ? 0 : factors.get(periodIdx + 1);
+            px = discountPeriod(px, discounts.periodDiscount, factors.get(periodIdx), factor, rates.get(ratesOffset + periodIdx));
+        }
+        int periodIdx = factorsEnd - numCashFlows;
+        return cleanPrice(dirtyValue(px, partialPeriod, discounts), factors.get(periodIdx), rates.get(ratesOffset + periodIdx),
+                accruedFraction(partialPeriod, periodLength));
+    }
+
+    /**
+     * Calculate prices for a batch of days to maturity and yields sharing one factor and rate schedule.  The arguments
+     * are validated once for the whole batch, and nothing is allocated, so callers can reuse their buffers from one batch
+     * to the next.
+     * @param count The number of prices to calculate, the arrays may be longer.
+     * @param daysToMaturity The number of days until maturity for each price, each must be >= 1.
+     * @param periodYields The required rate of return for each price, divided by the number of periods per year.
+     * @param factors The factors for each period, see {@link #price}.
+     * @param rates The effective coupon rates for each period, each having been divided by the number of periods per year.
+     * @param periodLength The length of a period.
+     * @param payDelay The payment delay for cash flows.
+     * @param prices The array in which to store the prices.
+     */
+    public static void priceInto(int count, int[] daysToMaturity, double[] periodYields, double[] factors, double[] rates, int periodLength, int payDelay, double[] prices) {
+        // Guava's varargs checks would box their arguments on every call, so only format a message on failure.
+        if (count < 0 || daysToMaturity.length < count || periodYields.length < count || prices.length < count) {
+            throw new IllegalArgumentException(String.format("count (%s) <= daysToMaturity.length (%s), periodYields.length (%s) and prices.length (%s)",
+                    count, daysToMaturity.length, periodYields.length, prices.length));
+        }
+        if (rates.length != factors.length) {
+            throw new IllegalArgumentException(String.format("rates.length (%s) == factors.length (%s)", rates.length, factors.length));
+        }
+        int maxDaysToMaturity = 1;
+        for (int i = 0; i < count; i++) {
+            if (daysToMaturity[i] < 1) {
+                throw new IllegalArgumentException(String.format("daysToMaturity[%s] (%s) >= 1", i, daysToMaturity[i]));
             }
-            double prevFactor = factors[periodIdx - 1];
+            maxDaysToMaturity = Math.max(maxDaysToMaturity, daysToMaturity[i]);
+        }
+        int maxCashFlows = (maxDaysToMaturity + periodLength - 1) / periodLength;
+        if (factors.length < maxCashFlows) {
+            throw new IllegalArgumentException(String.format("factors.length (%s) >= # of future cash flows (%s)", factors.length, maxCashFlows));
+        }
+
+        for (int i = 0; i < count; i++) {
+            prices[i] = priceUnchecked(daysToMaturity[i], factors, rates, factors.length, periodYields[i], periodLength, payDelay);
+        }
+    }
+
+    /**
+     * Calculate price without validating the arguments.
+     * @param scheduleEnd The index after the last period of the schedule within factors and rates, which lets several
+     * schedules share the same arrays.
+     */
+    static double priceUnchecked(int daysToMaturity, double[] factors, double rates[], int scheduleEnd, double periodYield, int periodLength, int payDelay) {
+        int numCashFlows = (daysToMaturity + periodLength - 1) / periodLength;
+        int partialPeriod = daysToMaturity % periodLength;
+        DiscountTable discounts = DiscountTable.get(periodYield, periodLength, payDelay);
+        double px = discountCashFlows(factors, rates, scheduleEnd, numCashFlows, discounts.periodDiscount);
+        int periodIdx = scheduleEnd - numCashFlows;
+        return cleanPrice(dirtyValue(px, partialPeriod, discounts), factors[periodIdx], rates[periodIdx],
+                accruedFraction(partialPeriod, periodLength));
+    }
 
-            px += prevFactor * rates[periodIdx - 1]; // coupon amount
-            px += prevFactor - factor; // paydown amount
-            periodIdx--;
+    /*
+     * The steps of a price, shared by everything that must agree with Calc to the bit.  Changing the order of any of the
+     * operations changes the last bits of every price.
+     */
+
+    /**
+     * Discount a value back one period and add the cash flows at the end of that period.
+     * @param prevFactor The factor at the start of the period.
+     * @param factor The factor after the period's paydown, 0 for the period ending at maturity.
+     * @param rate The period's coupon rate.
+     */
+    static double discountPeriod(double px, double periodDiscount, double prevFactor, double factor, double rate) {
+        px *= periodDiscount;
+        px += prevFactor * rate; // coupon amount
+        px += prevFactor - factor; // paydown amount
+        return px;
+    }
+
+    /**
+     * @return The value of the numCashFlows cash flows before end, as of the earliest of them.
+     */
+    static double discountCashFlows(double[] factors, double[] rates, int end, int numCashFlows, double periodDiscount) {
+        double px = 0;
+        for (int periodIdx = end - 1; periodIdx >= end - numCashFlows; periodIdx--) {
+            double factor = periodIdx == end - 1 ? 0 : factors[periodIdx + 1];
+            px = discountPeriod(px, periodDiscount, factors[periodIdx], factor, rates[periodIdx]);
+        }
+        return px;
+    }
+
+    /**
+     * Discount every number of cash flows before end, for pricers that need more than one days to maturity.
+     * @param sums Receives at k the value of the k cash flows nearest maturity as of the earliest of them, and 0 at 0.
+     */
+    static void discountCashFlows(double[] factors, double[] rates, int end, int numCashFlows, double periodDiscount, double[] sums) {
+        double px = 0;
+        sums[0] = 0;
+        for (int k = 1; k <= numCashFlows; k++) {
+            int periodIdx = end - k;
+            double factor = k == 1 ? 0 : factors[periodIdx + 1];
+            px = discountPeriod(px, periodDiscount, factors[periodIdx], factor, rates[periodIdx]);
+            sums[k] = px;
         }
+    }
 
+    /**
+     * Discount the value of the cash flows as of the next one back to settlement, then for the payment delay.
+     * @param partialPeriod The days to maturity modulo the period length, 0 to discount a whole period.
+     */
+    static double dirtyValue(double px, int partialPeriod, DiscountTable discounts) {
         if (partialPeriod == 0) {
-            px *= 1 / (1 + periodYield);
+            px *= discounts.periodDiscount;
         } else {
-            px *= 1 / Math.pow(1 + periodYield, partialPeriod / periodLength);
+            px *= discounts.partialDiscount(partialPeriod);
         }
-
-        if (payDelay > 0) {
-            px *= 1 / Math.pow(1 + periodYield, (double) payDelay / periodLength);
+        if (discounts.payDelay > 0) {
+            px *= discounts.delayDiscount;
         }
+        return px;
+    }
 
-        px /= factors[periodIdx];
+    /**
+     * @return The share of the current period's coupon accrued, 0 if settlement is on a coupon date.
+     */
+    static double accruedFraction(int partialPeriod, int periodLength) {
+        return partialPeriod > 0 ? (double) (periodLength - partialPeriod) / periodLength : 0;
+    }
 
-        if (partialPeriod > 0) {
-            px -= rates[periodIdx] * ((periodLength - partialPeriod) / periodLength); // calc date accrued
+    /**
+     * @return The dirty value per unit of original face as a price per unit of current face, less accrued interest.
+     */
+    static double cleanPrice(double dirtyValue, double factor, double rate, double accruedFraction) {
+        double px = dirtyValue / factor;
+        if (accruedFraction > 0) {
+            px -= rate * accruedFraction; // calc date accrued
         }
         return px;
     }
 }
-
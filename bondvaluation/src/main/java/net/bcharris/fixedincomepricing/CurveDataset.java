@@ -0,0 +1,237 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * A single series backed by arrays of x and y values, which shows only enough of its points to draw the visible part
+ * of the curve.  Points are chosen by largest-triangle-three-buckets, which keeps the points that most change the shape
+ * of the line, so jumps and dips on coupon dates survive.
+ */
+public class CurveDataset extends AbstractXYDataset implements DomainInfo, RangeInfo {
+
+    /**
+     * The number of points shown until the dataset is first decimated for a chart.
+     */
+    public static final int DEFAULT_MAX_POINTS = 2000;
+    private final Comparable<?> key;
+    private final double[] x;
+    private final double[] y;
+    private final Range domainBounds;
+    private final Range rangeBounds;
+    private int[] visible;
+    private int visibleCount;
+    private double lower = Double.NaN;
+    private double upper = Double.NaN;
+    private int maxPoints;
+
+    /**
+     * @param key The series key.
+     * @param x The x values, in increasing order.  The array is used directly, not copied.
+     * @param y The y values.  The array is used directly, not copied.
+     */
+    public CurveDataset(Comparable<?> key, double[] x, double[] y) {
+        checkArgument(x.length == y.length, "x and y must have the same length");
+        for (int i = 1; i < x.length; i++) {
+            checkArgument(x[i - 1] <= x[i], "x must be in increasing order");
+        }
+        this.key = key;
+        this.x = x;
+        this.y = y;
+        if (x.length == 0) {
+            domainBounds = null;
+            rangeBounds = null;
+        } else {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (double value : y) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            domainBounds = new Range(x[0], x[x.length - 1]);
+            rangeBounds = new Range(min, max);
+        }
+        visible = new int[Math.min(x.length, DEFAULT_MAX_POINTS)];
+        decimate(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, DEFAULT_MAX_POINTS);
+    }
+
+    /**
+     * Choose the points to show for a range of x values.  Does nothing if the range and number of points are unchanged,
+     * and otherwise notifies listeners.
+     * @param lower The lowest visible x value.
+     * @param upper The highest visible x value.
+     * @param maxPoints The most points to show, at least 3.  A couple per pixel of chart width is plenty.
+     */
+    public void decimate(double lower, double upper, int maxPoints) {
+        checkArgument(maxPoints >= 3, "maxPoints must be >= 3");
+        if (lower == this.lower && upper == this.upper && maxPoints == this.maxPoints) {
+            return;
+        }
+        boolean notify = !Double.isNaN(this.lower);
+        this.lower = lower;
+        this.upper = upper;
+        this.maxPoints = maxPoints;
+        // Keep one point either side of the range, so the line runs off the edges of the chart.
+        int from = Math.max(0, lowerIndex(lower) - 1);
+        int to = Math.min(x.length, lowerIndex(upper) + 1);
+        if (to > from && to < x.length && x[to - 1] <= upper) {
+            to++;
+        }
+        int count = Math.min(Math.max(to - from, 0), maxPoints);
+        if (visible.length < count) {
+            visible = new int[count];
+        }
+        visibleCount = count == 0 ? 0 : largestTriangleThreeBuckets(x, y, from, to, count, visible);
+        if (notify) {
+            fireDatasetChanged();
+        }
+    }
+
+    /**
+     * @return The index of the first x value not less than the given value.
+     */
+    private int lowerIndex(double value) {
+        int low = 0;
+        int high = x.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (x[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Pick points from part of a curve with the largest-triangle-three-buckets algorithm.  The first and last points are
+     * always kept, the points between are split into buckets, and from each bucket the point forming the largest
+     * triangle with the point picked from the previous bucket and the average of the next bucket is kept.
+     * @param from The index of the first point.
+     * @param to One past the index of the last point.
+     * @param threshold The number of points to pick.
+     * @param selected Receives the indices of the picked points, in increasing order.
+     * @return The number of points picked, which is the smaller of the threshold and the number of points.
+     */
+    static int largestTriangleThreeBuckets(double[] x, double[] y, int from, int to, int threshold, int[] selected) {
+        int n = to - from;
+        if (threshold >= n || threshold < 3) {
+            int count = Math.min(n, threshold);
+            for (int i = 0; i < count; i++) {
+                selected[i] = from + i;
+            }
+            return count;
+        }
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int previous = from;
+        int count = 0;
+        selected[count++] = from;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int nextStart = from + (int) ((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min(from + (int) ((bucket + 2) * bucketSize) + 1, to);
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += x[i];
+                averageY += y[i];
+            }
+            averageX /= nextEnd - nextStart;
+            averageY /= nextEnd - nextStart;
+
+            int start = from + (int) (bucket * bucketSize) + 1;
+            int end = nextStart;
+            double largestArea = -1;
+            int pick = start;
+            for (int i = start; i < end; i++) {
+                // Twice the triangle's area, which is all the comparison needs.
+                double area = Math.abs((x[previous] - averageX) * (y[i] - y[previous])
+                        - (x[previous] - x[i]) * (averageY - y[previous]));
+                if (area > largestArea) {
+                    largestArea = area;
+                    pick = i;
+                }
+            }
+            selected[count++] = pick;
+            previous = pick;
+        }
+        selected[count++] = to - 1;
+        return count;
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return 1;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Comparable getSeriesKey(int series) {
+        return key;
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        return visibleCount;
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        return x[visible[item]];
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return y[visible[item]];
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        return getYValue(series, item);
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        return domainBounds == null ? Double.NaN : domainBounds.getLowerBound();
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        return domainBounds == null ? Double.NaN : domainBounds.getUpperBound();
+    }
+
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        return domainBounds;
+    }
+
+    @Override
+    public double getRangeLowerBound(boolean includeInterval) {
+        return rangeBounds == null ? Double.NaN : rangeBounds.getLowerBound();
+    }
+
+    @Override
+    public double getRangeUpperBound(boolean includeInterval) {
+        return rangeBounds == null ? Double.NaN : rangeBounds.getUpperBound();
+    }
+
+    @Override
+    public Range getRangeBounds(boolean includeInterval) {
+        return rangeBounds;
+    }
+}
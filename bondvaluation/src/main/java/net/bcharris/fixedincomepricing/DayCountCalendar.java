@@ -0,0 +1,333 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Collection;
+
+/**
+ * Turns settlement and maturity dates into the days to maturity, period length, payment delay and coupon rates
+ * {@link Calc} works in, under a day count convention.  Calc only needs the number of coupons left, the share of the
+ * current period still to run and each period's coupon, so the current period's length in the convention's days
+ * becomes the period length, and the days from settlement to the next coupon date, plus a period length for every
+ * later coupon, become the days to maturity.
+ * <p>
+ * Everything that needs a calendar is worked out once, when the calendar is built, into primitive tables indexed by
+ * epoch day: the month and day of month of every day, the start and length of every month, 30E/360 and Actual/Actual
+ * day numbers, and the business day each day's payments move to.  Scheduling a bond is then array lookups and integer
+ * arithmetic, with no date objects, so a batch of bonds can be scheduled at the cost of pricing them.
+ * <p>
+ * Coupon dates are rolled back from maturity by whole months, keeping maturity's day of month, or the last day of the
+ * month if maturity is a month end, and are not adjusted.  Payments move to the following business day, and as Calc
+ * has one payment delay for every cash flow, the next payment's move is added to the payment delay.  Dates are epoch
+ * days, as from {@link LocalDate#toEpochDay}.
+ */
+public final class DayCountCalendar {
+
+    public enum DayCount {
+
+        /**
+         * Actual/Actual (ICMA): every coupon is the annual rate over the coupons per year, accrued by actual days over the
+         * actual days in the period.  Year fractions are Actual/Actual (ISDA), each calendar year's days over its length.
+         */
+        ACTUAL_ACTUAL,
+        /**
+         * Actual/360: coupons and year fractions are actual days over 360.
+         */
+        ACTUAL_360,
+        /**
+         * Actual/365 Fixed: coupons and year fractions are actual days over 365.
+         */
+        ACTUAL_365,
+        /**
+         * 30E/360 (Eurobond): every month has 30 days, the 31st counting as the 30th.
+         */
+        THIRTY_E_360
+    }
+
+    /**
+     * A bond's inputs for {@link Calc#price}, refilled by each call to {@link DayCountCalendar#schedule}.
+     */
+    public static final class Terms {
+
+        private int daysToMaturity;
+        private int periodLength;
+        private int payDelay;
+        private int periods;
+        private double[] rates = new double[0];
+        private int nextCouponDate;
+        private int nextPaymentDate;
+
+        public int daysToMaturity() {
+            return daysToMaturity;
+        }
+
+        public int periodLength() {
+            return periodLength;
+        }
+
+        public int payDelay() {
+            return payDelay;
+        }
+
+        /**
+         * @return The number of coupons left, which is the length of the factor and rate schedules.
+         */
+        public int periods() {
+            return periods;
+        }
+
+        /**
+         * @return The effective coupon rate for each period, the current period first.  The array is reused by the next
+         * schedule of the same length.
+         */
+        public double[] rates() {
+            return rates;
+        }
+
+        public int nextCouponDate() {
+            return nextCouponDate;
+        }
+
+        /**
+         * @return The next coupon date moved to a business day.
+         */
+        public int nextPaymentDate() {
+            return nextPaymentDate;
+        }
+    }
+
+    private final int firstDay;
+    private final int lastDay;
+    private final int firstYear;
+    private final int firstMonth;
+    /**
+     * For each day, the month it is in, counted from the calendar's first month, and its day of month.
+     */
+    private final int[] monthOfDay;
+    private final byte[] dayOfMonth;
+    /**
+     * For each month, its first day and length.
+     */
+    private final int[] monthStart;
+    private final byte[] monthLength;
+    /**
+     * For each day, 360 per year, 30 per month and the day of month up to 30, so the difference of two days' numbers is
+     * the 30E/360 days between them.
+     */
+    private final int[] thirtyE360;
+    /**
+     * For each day, the years since the calendar's first year plus its day of year over its year's length, so the
+     * difference of two days' numbers is the Actual/Actual (ISDA) year fraction between them.
+     */
+    private final double[] actualActualYears;
+    private final boolean[] businessDay;
+    private final int[] following;
+    private final int[] modifiedFollowing;
+
+    /**
+     * @param first The first date the calendar covers.
+     * @param last The last date the calendar covers.
+     * @param holidays The days other than Saturdays and Sundays which are not business days.
+     */
+    public DayCountCalendar(LocalDate first, LocalDate last, Collection<LocalDate> holidays) {
+        checkArgument(!last.isBefore(first), "last (%s) >= first (%s)", last, first);
+        firstDay = (int) first.toEpochDay();
+        lastDay = (int) last.toEpochDay();
+        firstYear = first.getYear();
+        firstMonth = first.getMonthValue();
+        int days = lastDay - firstDay + 1;
+        int months = (last.getYear() - firstYear) * 12 + last.getMonthValue() - firstMonth + 1;
+        monthStart = new int[months];
+        monthLength = new byte[months];
+        LocalDate monthFirst = first.withDayOfMonth(1);
+        for (int i = 0; i < months; i++, monthFirst = monthFirst.plusMonths(1)) {
+            monthStart[i] = (int) monthFirst.toEpochDay();
+            monthLength[i] = (byte) monthFirst.lengthOfMonth();
+        }
+        monthOfDay = new int[days];
+        dayOfMonth = new byte[days];
+        thirtyE360 = new int[days];
+        actualActualYears = new double[days];
+        businessDay = new boolean[days];
+        LocalDate date = first;
+        for (int i = 0; i < days; i++, date = date.plusDays(1)) {
+            monthOfDay[i] = (date.getYear() - firstYear) * 12 + date.getMonthValue() - firstMonth;
+            dayOfMonth[i] = (byte) date.getDayOfMonth();
+            thirtyE360[i] = date.getYear() * 360 + (date.getMonthValue() - 1) * 30 + Math.min(date.getDayOfMonth(), 30);
+            actualActualYears[i] = date.getYear() - firstYear + (date.getDayOfYear() - 1) / (double) date.lengthOfYear();
+            businessDay[i] = date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY;
+        }
+        for (LocalDate holiday : holidays) {
+            long day = holiday.toEpochDay();
+            if (day >= firstDay && day <= lastDay) {
+                businessDay[(int) (day - firstDay)] = false;
+            }
+        }
+        // Days after the last business day in the calendar stay where they are.
+        following = new int[days];
+        int next = -1;
+        for (int i = days - 1; i >= 0; i--) {
+            if (businessDay[i]) {
+                next = i;
+            }
+            following[i] = firstDay + (next < 0 ? i : next);
+        }
+        modifiedFollowing = new int[days];
+        int previous = -1;
+        for (int i = 0; i < days; i++) {
+            if (businessDay[i]) {
+                previous = i;
+            }
+            boolean sameMonth = monthOfDay[following[i] - firstDay] == monthOfDay[i];
+            modifiedFollowing[i] = sameMonth || previous < 0 ? following[i] : firstDay + previous;
+        }
+    }
+
+    public int firstDay() {
+        return firstDay;
+    }
+
+    public int lastDay() {
+        return lastDay;
+    }
+
+    /**
+     * @return The epoch day of a date, from the tables rather than date arithmetic.
+     * @throws IllegalArgumentException If the date is not a real date within the calendar.
+     */
+    public int epochDay(int year, int month, int day) {
+        int monthIndex = (year - firstYear) * 12 + month - firstMonth;
+        checkArgument(month >= 1 && month <= 12 && monthIndex >= 0 && monthIndex < monthStart.length && day >= 1 && day <= monthLength[monthIndex],
+                "%s-%s-%s is not a date in the calendar", year, month, day);
+        int epochDay = monthStart[monthIndex] + day - 1;
+        checkDay(epochDay);
+        return epochDay;
+    }
+
+    public boolean isBusinessDay(int epochDay) {
+        return businessDay[checkDay(epochDay)];
+    }
+
+    /**
+     * @return The day itself if it is a business day, otherwise the next business day.
+     */
+    public int following(int epochDay) {
+        return following[checkDay(epochDay)];
+    }
+
+    /**
+     * @return The following business day, unless that is in the next month, in which case the previous business day.
+     */
+    public int modifiedFollowing(int epochDay) {
+        return modifiedFollowing[checkDay(epochDay)];
+    }
+
+    /**
+     * @return The years from start to end under a day count, negative if end is before start.
+     */
+    public double yearFraction(DayCount dayCount, int start, int end) {
+        int s = checkDay(start);
+        int e = checkDay(end);
+        switch (dayCount) {
+            case ACTUAL_ACTUAL:
+                return actualActualYears[e] - actualActualYears[s];
+            case ACTUAL_360:
+                return (end - start) / 360.0;
+            case ACTUAL_365:
+                return (end - start) / 365.0;
+            case THIRTY_E_360:
+                return (thirtyE360[e] - thirtyE360[s]) / 360.0;
+            default:
+                throw new AssertionError(dayCount);
+        }
+    }
+
+    /**
+     * Schedule a bond.
+     * @param settlement The settlement date.
+     * @param maturity The maturity date, after settlement.
+     * @param couponsPerYear 1, 2, 3, 4, 6 or 12.
+     * @param dayCount The day count convention for coupons and accrued interest.
+     * @param coupon The annual coupon rate, as a fraction rather than a percentage.
+     * @param payDelay The payment delay for cash flows, in calendar days after the payment date.
+     * @param terms Receives the inputs for {@link Calc#price}, or null to create them.
+     * @return terms, or the new terms.
+     * @throws IllegalArgumentException If the bond's current coupon period starts before the calendar or it matures after it.
+     */
+    public Terms schedule(int settlement, int maturity, int couponsPerYear, DayCount dayCount, double coupon, int payDelay, Terms terms) {
+        checkArgument(couponsPerYear >= 1 && couponsPerYear <= 12 && 12 % couponsPerYear == 0, "couponsPerYear (%s) divides 12", couponsPerYear);
+        checkArgument(maturity > settlement, "maturity (%s) > settlement (%s)", maturity, settlement);
+        checkArgument(payDelay >= 0, "payDelay (%s) >= 0", payDelay);
+        checkDay(settlement);
+        int maturityIdx = checkDay(maturity);
+        if (terms == null) {
+            terms = new Terms();
+        }
+        int monthsPerPeriod = 12 / couponsPerYear;
+        int maturityMonth = monthOfDay[maturityIdx];
+        boolean endOfMonth = dayOfMonth[maturityIdx] == monthLength[maturityMonth];
+        int maturityDayOfMonth = dayOfMonth[maturityIdx];
+
+        // The number of coupon dates after settlement.
+        int periods = (maturityMonth - monthOfDay[settlement - firstDay]) / monthsPerPeriod;
+        if (couponDate(maturityMonth - periods * monthsPerPeriod, maturityDayOfMonth, endOfMonth) > settlement) {
+            periods++;
+        }
+        int previousMonth = maturityMonth - periods * monthsPerPeriod;
+        checkArgument(previousMonth >= 0, "The coupon period before %s starts before the calendar", settlement);
+        int previousCoupon = couponDate(previousMonth, maturityDayOfMonth, endOfMonth);
+        checkArgument(previousCoupon >= firstDay, "The coupon period before %s starts before the calendar", settlement);
+        int nextCoupon = couponDate(previousMonth + monthsPerPeriod, maturityDayOfMonth, endOfMonth);
+
+        int periodLength = days(dayCount, previousCoupon, nextCoupon);
+        // 30E/360 can count no days between a 30th and the 31st.
+        int remaining = Math.max(1, Math.min(periodLength, days(dayCount, settlement, nextCoupon)));
+        terms.periodLength = periodLength;
+        terms.daysToMaturity = (periods - 1) * periodLength + remaining;
+        terms.nextCouponDate = nextCoupon;
+        terms.nextPaymentDate = following[nextCoupon - firstDay];
+        terms.payDelay = payDelay + terms.nextPaymentDate - nextCoupon;
+        terms.periods = periods;
+        if (terms.rates.length != periods) {
+            terms.rates = new double[periods];
+        }
+        int start = previousCoupon;
+        for (int i = 0; i < periods; i++) {
+            int end = couponDate(previousMonth + (i + 1) * monthsPerPeriod, maturityDayOfMonth, endOfMonth);
+            terms.rates[i] = periodCoupon(dayCount, coupon, couponsPerYear, start, end);
+            start = end;
+        }
+        return terms;
+    }
+
+    private int couponDate(int month, int maturityDayOfMonth, boolean endOfMonth) {
+        int length = monthLength[month];
+        return monthStart[month] + (endOfMonth ? length : Math.min(maturityDayOfMonth, length)) - 1;
+    }
+
+    private int days(DayCount dayCount, int start, int end) {
+        return dayCount == DayCount.THIRTY_E_360 ? thirtyE360[end - firstDay] - thirtyE360[start - firstDay] : end - start;
+    }
+
+    private double periodCoupon(DayCount dayCount, double coupon, int couponsPerYear, int start, int end) {
+        switch (dayCount) {
+            case ACTUAL_ACTUAL:
+                return coupon / couponsPerYear;
+            case ACTUAL_360:
+                return coupon * (end - start) / 360;
+            case ACTUAL_365:
+                return coupon * (end - start) / 365;
+            case THIRTY_E_360:
+                return coupon * (thirtyE360[end - firstDay] - thirtyE360[start - firstDay]) / 360;
+            default:
+                throw new AssertionError(dayCount);
+        }
+    }
+
+    private int checkDay(int epochDay) {
+        checkArgument(epochDay >= firstDay && epochDay <= lastDay, "Day %s is outside the calendar [%s, %s]", epochDay, firstDay, lastDay);
+        return epochDay - firstDay;
+    }
+}
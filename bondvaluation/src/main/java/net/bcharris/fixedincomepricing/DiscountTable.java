@@ -0,0 +1,140 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Arrays;
+
+/**
+ * The discount factors for one period yield, period length and payment delay: a whole period, the payment delay, and
+ * each partial period, filled in as they are first needed.  Pricing a curve or a book at shared yields looks tables up
+ * instead of calling {@link Math#pow} for every price.
+ * <p>
+ * Each thread keeps its own tables in a direct mapped cache, so tables are never shared between threads and need no
+ * locking, and a table is evicted when another key hashes to its slot.  A lookup is a hash and one comparison, and a
+ * miss reuses the evicted table's storage rather than allocating, which keeps pricing at a different yield every call
+ * close to its cost without the cache.  The factors are computed by the same expressions {@link Calc} used, so prices
+ * are unchanged to the bit.
+ */
+final class DiscountTable {
+
+    private static final int SLOT_BITS = 8;
+    /**
+     * The most tables each thread keeps.  A table is at most a few kilobytes, one double per day of a period.
+     */
+    static final int MAX_TABLES = 1 << SLOT_BITS;
+    private static final ThreadLocal<DiscountTable[]> TABLES = new ThreadLocal<DiscountTable[]>() {
+
+        @Override
+        protected DiscountTable[] initialValue() {
+            return new DiscountTable[MAX_TABLES];
+        }
+    };
+    double periodYield;
+    private long periodYieldBits;
+    int periodLength;
+    int payDelay;
+    /**
+     * The discount for one whole period.
+     */
+    double periodDiscount;
+    /**
+     * The discount for the payment delay, 1 if there is none.
+     */
+    double delayDiscount;
+    /**
+     * Lazily filled, an entry is only valid if its stamp matches the table's, so reusing the table needs no clearing.
+     */
+    private double[] partialDiscounts;
+    private int[] partialStamps;
+    private int stamp;
+    /**
+     * Counts the resets.  A lookup that misses resets the slot's table in place for its own key, so a caller that uses a
+     * table across other code asserts afterwards that its generation has not changed.
+     */
+    int generation;
+
+    private void reset(double periodYield, int periodLength, int payDelay) {
+        this.periodYield = periodYield;
+        this.periodYieldBits = Double.doubleToLongBits(periodYield);
+        this.periodLength = periodLength;
+        this.payDelay = payDelay;
+        this.generation++;
+        this.periodDiscount = 1 / (1 + periodYield);
+        this.delayDiscount = payDelay > 0 ? 1 / Math.pow(1 + periodYield, (double) payDelay / periodLength) : 1;
+        if (partialDiscounts == null || partialDiscounts.length != periodLength) {
+            partialDiscounts = new double[periodLength];
+            partialStamps = new int[periodLength];
+            stamp = 0;
+        }
+        if (++stamp == 0) {
+            Arrays.fill(partialStamps, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * Get the table for a yield, period length and payment delay, filling it in if this thread does not have it.  The
+     * table may be reused for another key by the thread's next call, so callers must be done with it by then, or take a
+     * table of their own from {@link #create}.  Callers that hold the table across a loop check its {@link #generation}.
+     * @param periodYield The required rate of return divided by the number of periods per year.
+     * @param periodLength The length of a period.
+     * @param payDelay The payment delay for cash flows.
+     */
+    static DiscountTable get(double periodYield, int periodLength, int payDelay) {
+        DiscountTable[] tables = TABLES.get();
+        long bits = Double.doubleToLongBits(periodYield);
+        int slot = slot(periodYield, periodLength, payDelay);
+        DiscountTable table = tables[slot];
+        if (table == null) {
+            table = new DiscountTable();
+            tables[slot] = table;
+            table.reset(periodYield, periodLength, payDelay);
+        } else if (table.periodYieldBits != bits || table.periodLength != periodLength || table.payDelay != payDelay) {
+            table.reset(periodYield, periodLength, payDelay);
+        }
+        return table;
+    }
+
+    /**
+     * @return The slot of the thread's cache that holds the table for a key.
+     */
+    static int slot(double periodYield, int periodLength, int payDelay) {
+        long hash = (Double.doubleToLongBits(periodYield) ^ ((long) periodLength << 32 | payDelay)) * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> (64 - SLOT_BITS));
+    }
+
+    /**
+     * Make a table outside the thread's cache, which nothing else resets, for callers that keep their discounts while
+     * running code that may price, such as an {@link Amortization.Sink}.
+     */
+    static DiscountTable create(double periodYield, int periodLength, int payDelay) {
+        DiscountTable table = new DiscountTable();
+        table.reset(periodYield, periodLength, payDelay);
+        return table;
+    }
+
+    /**
+     * @return The number of tables this thread keeps.
+     */
+    static int size() {
+        int size = 0;
+        for (DiscountTable table : TABLES.get()) {
+            if (table != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param partialPeriod The days in a partial period, from 1 to the period length less 1.
+     * @return The discount for that part of a period.
+     */
+    double partialDiscount(int partialPeriod) {
+        if (partialStamps[partialPeriod] == stamp) {
+            return partialDiscounts[partialPeriod];
+        }
+        double discount = 1 / Math.pow(1 + periodYield, (double) partialPeriod / periodLength);
+        partialDiscounts[partialPeriod] = discount;
+        partialStamps[partialPeriod] = stamp;
+        return discount;
+    }
+}
@@ -0,0 +1,17 @@
+package net.bcharris.fixedincomepricing;
+
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+
+/**
+ * Produces a factor schedule.  See {@link FactorModels} for the built in models and for choosing a model from a script.
+ */
+public interface FactorModel {
+
+    /**
+     * Generate factors for a number of periods.
+     * @param values The array in which to store the factor for each period.
+     * @param periodsPerYear The number of periods per year, which models quoted in annual terms depend on.
+     * @throws GenerationException If the factors could not be generated.
+     */
+    void generate(double[] values, int periodsPerYear) throws GenerationException;
+}
@@ -0,0 +1,231 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.codehaus.groovy.control.CompilationFailedException;
+
+/**
+ * Built in factor models, which fill a schedule with plain loops instead of running a Groovy script once per period, and
+ * {@link #parse} for choosing one from a factor script.
+ */
+public class FactorModels {
+
+    private static final Pattern STAIR_STEP = Pattern.compile("\\(\\s*periods\\s*-\\s*period\\s*\\)\\s*/\\s*periods");
+    private static final Pattern CALL = Pattern.compile("(cpr|psa|levelPayment)\\s*\\(\\s*([0-9]*\\.?[0-9]+)\\s*\\)");
+
+    /**
+     * Choose a model for a factor script.  Scripts which are just a constant, the stair step
+     * <code>(periods-period)/periods</code>, or a single call to <code>cpr</code>, <code>psa</code> or
+     * <code>levelPayment</code> with a number get a built in model, anything else runs as Groovy.
+     * @param script The factor script.
+     * @return The model.
+     * @throws CompilationFailedException If the script needs Groovy and does not compile.
+     */
+    public static FactorModel parse(String script) throws CompilationFailedException {
+        String candidate = script.trim();
+        if (candidate.startsWith("return ")) {
+            candidate = candidate.substring(7).trim();
+        }
+        if (candidate.endsWith(";")) {
+            candidate = candidate.substring(0, candidate.length() - 1).trim();
+        }
+        try {
+            return constant(Double.parseDouble(candidate));
+        } catch (NumberFormatException ex) {
+            // Not a constant.
+        }
+        if (STAIR_STEP.matcher(candidate).matches()) {
+            return stairStep();
+        }
+        Matcher call = CALL.matcher(candidate);
+        if (call.matches()) {
+            double arg = Double.parseDouble(call.group(2));
+            if (call.group(1).equals("cpr")) {
+                return cpr(arg);
+            } else if (call.group(1).equals("psa")) {
+                return psa(arg);
+            } else {
+                return levelPayment(arg);
+            }
+        }
+        return new GroovyPeriodValueGenerator(script);
+    }
+
+    /**
+     * @return A model whose factor never changes before maturity, paying all principal at once.
+     */
+    public static FactorModel bullet() {
+        return constant(1);
+    }
+
+    public static FactorModel constant(final double factor) {
+        return new FactorModel() {
+
+            @Override
+            public void generate(double[] values, int periodsPerYear) {
+                Arrays.fill(values, factor);
+            }
+        };
+    }
+
+    /**
+     * @return A model paying down an equal share of principal each period, <code>(periods-period)/periods</code>.
+     */
+    public static FactorModel stairStep() {
+        return new FactorModel() {
+
+            @Override
+            public void generate(double[] values, int periodsPerYear) {
+                fillStairStep(values);
+            }
+        };
+    }
+
+    /**
+     * @param cpr The constant prepayment rate, as an annual percentage.
+     * @return A model prepaying the same share of the remaining balance each period.
+     */
+    public static FactorModel cpr(final double cpr) {
+        checkArgument(cpr >= 0 && cpr < 100, "cpr (%s) in [0, 100)", cpr);
+        return new FactorModel() {
+
+            @Override
+            public void generate(double[] values, int periodsPerYear) {
+                fillGeometric(values, 0, 1, 1 - periodPrepaymentRate(cpr, periodsPerYear));
+            }
+        };
+    }
+
+    /**
+     * @param speed The speed as a percentage of the PSA standard, whose annual prepayment rate starts at 0.2% in the first
+     * month and rises by 0.2% a month to 6% from month 30 on.
+     * @return A model prepaying on the PSA ramp.
+     */
+    public static FactorModel psa(final double speed) {
+        checkArgument(speed >= 0 && psaCpr(speed, 30) < 100, "speed (%s) in [0, %s)", speed, 100 * 100 / 6.0);
+        return new FactorModel() {
+
+            @Override
+            public void generate(double[] values, int periodsPerYear) {
+                double factor = 1;
+                int i = 0;
+                // Only the ramp needs a rate per period, after it the rate is constant.
+                for (; i < values.length && psaMonth(i, periodsPerYear) < 30; i++) {
+                    values[i] = factor;
+                    factor *= 1 - periodPrepaymentRate(psaCpr(speed, psaMonth(i, periodsPerYear)), periodsPerYear);
+                }
+                fillGeometric(values, i, factor, 1 - periodPrepaymentRate(psaCpr(speed, 30), periodsPerYear));
+            }
+        };
+    }
+
+    /**
+     * @param rate The annual interest rate of the loan as a percentage, which sets how much of each level payment is
+     * principal.
+     * @return A model amortizing like a level payment mortgage, paying off entirely at maturity.
+     */
+    public static FactorModel levelPayment(final double rate) {
+        checkArgument(rate >= 0, "rate (%s) >= 0", rate);
+        return new FactorModel() {
+
+            @Override
+            public void generate(double[] values, int periodsPerYear) {
+                int periods = values.length;
+                double growth = 1 + rate / 100 / periodsPerYear;
+                if (growth == 1) {
+                    fillStairStep(values);
+                    return;
+                }
+                // Working back from maturity with the discount (1 + r)^(period - periods) can't overflow, and once it is
+                // too small to matter the remaining factors are all the same.  Rounding in the running product and the
+                // scale can put the first factors an ulp or so above 1, so they are capped, and the first is exactly 1.
+                double discount = 1 / growth;
+                double scale = 1 / (1 - Math.pow(discount, periods));
+                double remaining = discount;
+                int i = periods - 1;
+                for (; i >= 0 && remaining > 1e-17; i--) {
+                    values[i] = Math.min(1, (1 - remaining) * scale);
+                    remaining *= discount;
+                }
+                Arrays.fill(values, 0, i + 1, Math.min(1, scale));
+                if (periods > 0) {
+                    values[0] = 1;
+                }
+            }
+        };
+    }
+
+    /**
+     * Check a generated schedule can be priced: every factor a number in (0, 1] and none greater than the one before.
+     * @return Why the factors are invalid, or null if they are valid.
+     */
+    static String validate(double[] factors) {
+        for (int i = 0; i < factors.length; i++) {
+            if (factors[i] > 1) {
+                return "Your script returned a factor greater than 1.";
+            }
+            // Written so NaN fails too.
+            if (!(factors[i] > 0)) {
+                return "Your script returned a factor that is not greater than 0.";
+            }
+            if (i > 0 && factors[i] > factors[i - 1]) {
+                return "Your script computed increasing factors.";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fill values from an index on with a geometric sequence, switching to zeros before the sequence becomes subnormal,
+     * where every multiply would be slow.
+     */
+    private static void fillGeometric(double[] values, int from, double start, double ratio) {
+        int end = values.length;
+        if (ratio < 1) {
+            double steps = Math.log(Double.MIN_NORMAL / start) / Math.log(ratio);
+            if (steps < end - from) {
+                end = from + (int) steps;
+            }
+        }
+        double value = start;
+        for (int i = from; i < end; i++) {
+            values[i] = value;
+            value *= ratio;
+        }
+        Arrays.fill(values, end, values.length, 0);
+    }
+
+    private static void fillStairStep(double[] values) {
+        int periods = values.length;
+        for (int i = 0; i < periods; i++) {
+            values[i] = (double) (periods - i) / periods;
+        }
+    }
+
+    /**
+     * Convert an annual prepayment rate to the rate for one period.
+     * @param cpr The annual rate as a percentage.
+     * @param periodsPerYear The number of periods per year.
+     * @return The share of the balance prepaid in one period.
+     */
+    static double periodPrepaymentRate(double cpr, int periodsPerYear) {
+        return 1 - Math.pow(1 - cpr / 100, 1.0 / periodsPerYear);
+    }
+
+    /**
+     * @return The loan age in months at the end of a period, which sets the PSA prepayment rate for that period.
+     */
+    static int psaMonth(int period, int periodsPerYear) {
+        return (period + 1) * 12 / periodsPerYear;
+    }
+
+    /**
+     * @return The annual prepayment rate as a percentage in a month of the PSA ramp.
+     */
+    static double psaCpr(double speed, int month) {
+        return Math.min(month, 30) * .2 * speed / 100;
+    }
+}
@@ -1,15 +1,15 @@
 package net.bcharris.fixedincomepricing;
 
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
 import groovy.lang.Script;
 import java.util.Arrays;
 import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.runtime.InvokerHelper;
 
 /**
  * Generates values for each period from a Groovy script.
  */
-public class GroovyPeriodValueGenerator {
+public class GroovyPeriodValueGenerator implements FactorModel {
 
     public static class GenerationException extends Exception {
 
@@ -17,9 +17,14 @@ public class GroovyPeriodValueGenerator {
             super(message);
         }
     }
-    private final Script script;
+    private final Class<?> scriptClass;
     private final Double constantValue;
 
+    /**
+     * @param groovyScript The script, which is compiled once and cached, so constructing generators for the same script
+     * is cheap.
+     * @throws CompilationFailedException If the script does not compile.
+     */
     public GroovyPeriodValueGenerator(String groovyScript) throws CompilationFailedException {
         String candidate = groovyScript.trim();
         if (candidate.startsWith("return ")) {
@@ -33,10 +38,10 @@ public class GroovyPeriodValueGenerator {
         }
         if (constant == null) {
             this.constantValue = null;
-            this.script = new GroovyShell().parse(groovyScript);
+            this.scriptClass = ScriptCache.compile(groovyScript);
         } else {
             this.constantValue = constant;
-            this.script = null;
+            this.scriptClass = null;
         }
     }
 
@@ -46,28 +51,120 @@ public class GroovyPeriodValueGenerator {
      * @throws GenerationException If there is a problem with the script.
      */
     public void generate(double[] values) throws GenerationException {
+        generate(values, null);
+    }
+
+    /**
+     * Generate values for a number of periods, with the number of periods per year available to the script as
+     * <b>periodsPerYear</b>.
+     * @param values The array in which to store the generated values.
+     * @param periodsPerYear The number of periods per year.
+     * @throws GenerationException If there is a problem with the script.
+     */
+    @Override
+    public void generate(double[] values, int periodsPerYear) throws GenerationException {
+        generate(values, Integer.valueOf(periodsPerYear));
+    }
+
+    private void generate(double[] values, Integer periodsPerYear) throws GenerationException {
         if (constantValue != null) {
             Arrays.fill(values, constantValue);
         } else {
-            Binding binding = new Binding();
-            script.setBinding(binding);
+            PeriodFunction function = periodFunction(values.length, periodsPerYear);
             for (int i = 0; i < values.length; i++) {
-                binding.setVariable("period", new Integer(i));
-                binding.setVariable("periods", values.length);
-                Object result;
-                try {
-                    result = script.run();
-                } catch (Exception ex) {
-                    throw new GenerationException("There was a problem with the Groovy script.  " + ex.getMessage());
-                }
-                if (result == null) {
-                    throw new GenerationException("The script did not return a value.");
-                }
-                try {
-                    values[i] = Double.valueOf(result.toString());
-                } catch (NumberFormatException ex) {
-                    throw new GenerationException("The script did not return a valid floating point number.");
+                values[i] = function.valueAt(i);
+            }
+        }
+    }
+
+    /**
+     * Create a function for one schedule.  A single script session is used for the whole schedule, so any variables the
+     * script creates in one period can be accessed again in later ones.
+     * @param periods The number of periods in the schedule.
+     * @param periodsPerYear The number of periods per year, or null if the script should not depend on it.
+     * @return The function.
+     */
+    public PeriodFunction periodFunction(int periods, Integer periodsPerYear) {
+        if (constantValue != null) {
+            final double constant = constantValue;
+            return new PeriodFunction() {
+
+                @Override
+                public double valueAt(int period) {
+                    return constant;
                 }
+            };
+        }
+        PeriodBinding binding = new PeriodBinding(periods, periodsPerYear);
+        return new ScriptPeriodFunction(InvokerHelper.createScript(scriptClass, binding), binding);
+    }
+
+    /**
+     * Serves period, periods and periodsPerYear from fields, saving a hash map update per variable per period.
+     */
+    private static class PeriodBinding extends Binding {
+
+        private final Integer periods;
+        private final Integer periodsPerYear;
+        private int period;
+
+        PeriodBinding(int periods, Integer periodsPerYear) {
+            this.periods = periods;
+            this.periodsPerYear = periodsPerYear;
+        }
+
+        @Override
+        public Object getVariable(String name) {
+            if ("period".equals(name)) {
+                return period;
+            }
+            if ("periods".equals(name)) {
+                return periods;
+            }
+            if ("periodsPerYear".equals(name) && periodsPerYear != null) {
+                return periodsPerYear;
+            }
+            return super.getVariable(name);
+        }
+    }
+
+    private static class ScriptPeriodFunction implements PeriodFunction {
+
+        private final Script script;
+        private final PeriodBinding binding;
+
+        ScriptPeriodFunction(Script script, PeriodBinding binding) {
+            this.script = script;
+            this.binding = binding;
+        }
+
+        @Override
+        public double valueAt(int period) throws GenerationException {
+            binding.period = period;
+            Object result;
+            long start = Metrics.start();
+            long startBytes = Metrics.allocatedBytes();
+            try {
+                result = script.run();
+            } catch (ScriptBudget.Stopped ex) {
+                throw new GenerationException(ex.getMessage());
+            } catch (StackOverflowError ex) {
+                throw new GenerationException("The script recursed too deeply.");
+            } catch (Exception ex) {
+                throw new GenerationException("There was a problem with the Groovy script.  " + ex.getMessage());
+            } finally {
+                Metrics.stop(Metrics.Stage.SCRIPT_RUN, start, startBytes);
+            }
+            if (result == null) {
+                throw new GenerationException("The script did not return a value.");
+            }
+            if (result instanceof Number) {
+                return ((Number) result).doubleValue();
+            }
+            try {
+                return Double.valueOf(result.toString());
+            } catch (NumberFormatException ex) {
+                throw new GenerationException("The script did not return a valid floating point number.");
             }
         }
     }
@@ -0,0 +1,47 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Arrays;
+
+/**
+ * The jar's main class, which loads only what a command needs.  Pricing a file or serving prices never loads Swing or
+ * JFreeChart, and loads Groovy only for rows with a factor script, while the window loads Groovy only once its Factors
+ * tab is shown.
+ * <pre>
+ * java -jar bondvaluation.jar                    the price curve window
+ * java -jar bondvaluation.jar price [options]    price a file, see {@link BatchPricer}
+ * java -jar bondvaluation.jar serve [--port n]   serve prices over HTTP, see {@link PricingServer}
+ * </pre>
+ * Startup can be cut further with a class data sharing archive of the classes a headless run loads, which the cds
+ * profile builds alongside the jar with dependencies:
+ * <pre>
+ * mvn -Pcds package
+ * java -XX:SharedArchiveFile=target/bondvaluation.jsa -jar target/bondvaluation-1.0-SNAPSHOT-jar-with-dependencies.jar price ...
+ * </pre>
+ */
+public class Launcher {
+
+    public static void main(String[] args) throws Exception {
+        String command = args.length == 0 ? "gui" : args[0];
+        String[] commandArgs = args.length == 0 ? args : Arrays.copyOfRange(args, 1, args.length);
+        if (command.equals("price")) {
+            BatchPricer.main(commandArgs);
+        } else if (command.equals("serve")) {
+            PricingServer.main(commandArgs);
+        } else if (command.equals("gui") && commandArgs.length == 0) {
+            PriceFrame.main(commandArgs);
+        } else if (command.equals("gui") && Arrays.asList(commandArgs).equals(Arrays.asList("--exit-after-first-price"))) {
+            // For timing startup: the process lives exactly as long as it takes to show the first prices.
+            PriceFrame.launch(new Runnable() {
+
+                @Override
+                public void run() {
+                    System.exit(0);
+                }
+            });
+        } else {
+            System.err.println("Usage: [gui [--exit-after-first-price]] | price [options] | serve [options]");
+            System.err.println("  With no command shows the price curve window.  Commands print their own options when given --help.");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package net.bcharris.fixedincomepricing;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts, latencies and allocations for the stages where pricing spends its time.  Metrics are off unless the JVM is
+ * started with <b>-Dfixedincomepricing.metrics=true</b>, and {@link #ENABLED} is a constant the JIT folds away, so when
+ * they are off the instrumented code compiles to what it was without them.  When they are on they are published over JMX
+ * as {@value #OBJECT_NAME}, and <b>-Dfixedincomepricing.metrics.logSeconds=n</b> also logs a summary every n seconds.
+ * <p>
+ * Instrumented code brackets a stage with {@link #start} and {@link #stop}, and with {@link #allocatedBytes} too if
+ * the stage counts allocations:
+ * <pre>
+ * long start = Metrics.start();
+ * ...
+ * Metrics.stop(Metrics.Stage.PRICE, start);
+ * </pre>
+ */
+public class Metrics implements MetricsMXBean {
+
+    public static final boolean ENABLED = Boolean.getBoolean("fixedincomepricing.metrics");
+    public static final String OBJECT_NAME = "net.bcharris.fixedincomepricing:type=Metrics";
+
+    public enum Stage {
+
+        /**
+         * Compiling a Groovy script that was not cached.
+         */
+        SCRIPT_COMPILE,
+        /**
+         * Running a Groovy script for one period.
+         */
+        SCRIPT_RUN,
+        /**
+         * One {@link Calc#price} call.  Reading a thread's allocation counter would cost more than the call, so
+         * allocations are not counted.
+         */
+        PRICE,
+        /**
+         * One {@link BatchCalc#price} call, a whole batch of bonds.
+         */
+        BATCH_PRICE,
+        /**
+         * Pricing a range of days to maturity with {@link PriceCurve}.
+         */
+        PRICE_CURVE,
+        /**
+         * Drawing a chart.
+         */
+        CHART_RENDER
+    }
+    private static final Metrics INSTANCE = ENABLED ? new Metrics() : null;
+    private static final com.sun.management.ThreadMXBean THREADS = ENABLED ? allocationCounter() : null;
+
+    static {
+        if (ENABLED) {
+            try {
+                INSTANCE.register(ManagementFactory.getPlatformMBeanServer());
+            } catch (Exception ex) {
+                log().log(Level.WARNING, "Could not register metrics with JMX.", ex);
+            }
+            long logSeconds = Long.getLong("fixedincomepricing.metrics.logSeconds", 0);
+            if (logSeconds > 0) {
+                INSTANCE.logEvery(logSeconds);
+            }
+        }
+    }
+    private final LongAdder[] counts = new LongAdder[Stage.values().length];
+    private final LongAdder[] nanos = new LongAdder[counts.length];
+    private final LongAdder[] bytes = new LongAdder[counts.length];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[counts.length];
+
+    Metrics() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+            nanos[i] = new LongAdder();
+            bytes[i] = new LongAdder();
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @return The metrics being recorded, or null if metrics are off.
+     */
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return The time a stage starts, or 0 if metrics are off.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @return The bytes this thread has allocated so far, or 0 if metrics are off or the JVM cannot count them.
+     */
+    public static long allocatedBytes() {
+        return ENABLED && THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    /**
+     * Record a stage's latency.
+     * @param start What {@link #start} returned as the stage started.
+     */
+    public static void stop(Stage stage, long start) {
+        if (ENABLED) {
+            INSTANCE.record(stage, System.nanoTime() - start, 0);
+        }
+    }
+
+    /**
+     * Record a stage's latency and the bytes it allocated.
+     * @param start What {@link #start} returned as the stage started.
+     * @param startBytes What {@link #allocatedBytes} returned as the stage started.
+     */
+    public static void stop(Stage stage, long start, long startBytes) {
+        if (ENABLED) {
+            long elapsed = System.nanoTime() - start;
+            INSTANCE.record(stage, elapsed, allocatedBytes() - startBytes);
+        }
+    }
+
+    void record(Stage stage, long elapsedNanos, long allocated) {
+        int i = stage.ordinal();
+        counts[i].increment();
+        nanos[i].add(elapsedNanos);
+        latencies[i].record(elapsedNanos);
+        if (allocated > 0) {
+            bytes[i].add(allocated);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public List<StageStatistics> getStages() {
+        List<StageStatistics> stages = new ArrayList<StageStatistics>();
+        for (Stage stage : Stage.values()) {
+            int i = stage.ordinal();
+            stages.add(new StageStatistics(stage.name(), counts[i].sum(), nanos[i].sum(), latencies[i].percentile(50),
+                    latencies[i].percentile(99), bytes[i].sum()));
+        }
+        return stages;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i].reset();
+            nanos[i].reset();
+            bytes[i].reset();
+            latencies[i].reset();
+        }
+    }
+
+    /**
+     * @return One line per stage that has been recorded.
+     */
+    public String summary() {
+        StringBuilder out = new StringBuilder();
+        for (StageStatistics stage : getStages()) {
+            if (stage.getCount() == 0) {
+                continue;
+            }
+            out.append(String.format(Locale.US, "%-14s %12d calls %12.1f ms  p50 %10.1f us  p99 %10.1f us %14d bytes%n", stage.getStage(),
+                    stage.getCount(), stage.getTotalNanos() / 1e6, stage.getP50Nanos() / 1e3, stage.getP99Nanos() / 1e3, stage.getAllocatedBytes()));
+        }
+        return out.toString();
+    }
+
+    void register(MBeanServer server) throws Exception {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(this, name);
+        }
+    }
+
+    private void logEvery(long seconds) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "metrics-log");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                String summary = summary();
+                if (!summary.isEmpty()) {
+                    log().info("Pricing metrics\n" + summary);
+                }
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+            if (counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled()) {
+                return counter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * What has been recorded for one stage.
+     */
+    public static class StageStatistics {
+
+        private final String stage;
+        private final long count;
+        private final long totalNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long allocatedBytes;
+
+        @ConstructorProperties({"stage", "count", "totalNanos", "p50Nanos", "p99Nanos", "allocatedBytes"})
+        public StageStatistics(String stage, long count, long totalNanos, long p50Nanos, long p99Nanos, long allocatedBytes) {
+            this.stage = stage;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @return The median latency, to within about 3%.
+         */
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        /**
+         * @return The 99th percentile latency, to within about 3%.
+         */
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        /**
+         * @return The bytes allocated by the stage, 0 for stages that do not count them.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    /**
+     * Looked up when needed, as most runs have metrics off and never log.
+     */
+    private static Logger log() {
+        return Logger.getLogger(Metrics.class.getName());
+    }
+}
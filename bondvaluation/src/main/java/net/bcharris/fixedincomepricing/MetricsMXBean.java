@@ -0,0 +1,21 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.List;
+
+/**
+ * The JMX view of {@link Metrics}, registered as {@value Metrics#OBJECT_NAME} when metrics are enabled.
+ */
+public interface MetricsMXBean {
+
+    boolean isEnabled();
+
+    /**
+     * @return One entry per stage, in the order of {@link Metrics.Stage}.
+     */
+    List<Metrics.StageStatistics> getStages();
+
+    /**
+     * Forget everything recorded so far.
+     */
+    void reset();
+}
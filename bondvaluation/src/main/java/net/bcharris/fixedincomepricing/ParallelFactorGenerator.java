@@ -0,0 +1,138 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+
+/**
+ * Generates factor schedules for many instruments at once on a fork-join pool.  Models may be shared between
+ * instruments and threads: a Groovy model runs a fresh script instance with its own variables for every schedule, so
+ * schedules never see each other's state.  Each schedule gets its own {@link ScriptBudget}, so a script that loops
+ * forever fails its own schedule once its CPU time runs out instead of holding up the rest, and {@link #cancel} stops
+ * every script in progress.
+ */
+public class ParallelFactorGenerator {
+
+    /**
+     * Schedules generated per task.  Built in models take microseconds, so tasks of one schedule would be mostly
+     * overhead, while a few schedules per task still lets idle threads steal around a slow script.
+     */
+    static final int SCHEDULES_PER_TASK = 8;
+    private final long cpuBudgetMillis;
+    private final ForkJoinPool pool;
+    private final Set<ScriptBudget> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    /**
+     * Generate on the common fork-join pool.
+     * @param cpuBudgetMillis The CPU time each schedule may take.
+     */
+    public ParallelFactorGenerator(long cpuBudgetMillis) {
+        this(cpuBudgetMillis, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param cpuBudgetMillis The CPU time each schedule may take.
+     * @param pool The pool whose threads generate the schedules.
+     */
+    public ParallelFactorGenerator(long cpuBudgetMillis, ForkJoinPool pool) {
+        checkArgument(cpuBudgetMillis > 0, "cpuBudgetMillis (%s) > 0", cpuBudgetMillis);
+        this.cpuBudgetMillis = cpuBudgetMillis;
+        this.pool = pool;
+    }
+
+    /**
+     * Generate a schedule for each instrument, waiting until all are done or have failed.
+     * @param models The model for each instrument.
+     * @param periods The number of periods in each instrument's schedule.
+     * @param periodsPerYear The number of periods per year for each instrument.
+     * @param errors The array in which to store why each schedule failed, or null for schedules that did not.
+     * @return The schedule for each instrument, null for schedules that failed.
+     */
+    public double[][] generate(FactorModel[] models, int[] periods, int[] periodsPerYear, String[] errors) {
+        checkArgument(periods.length == models.length && periodsPerYear.length == models.length && errors.length == models.length,
+                "periods.length (%s), periodsPerYear.length (%s) and errors.length (%s) == models.length (%s)",
+                periods.length, periodsPerYear.length, errors.length, models.length);
+        double[][] schedules = new double[models.length][];
+        pool.invoke(new GenerateTask(models, periods, periodsPerYear, schedules, errors, 0, models.length));
+        return schedules;
+    }
+
+    /**
+     * Stop the scripts generating schedules now, and fail every schedule not yet started.  Once cancelled the generator
+     * stays cancelled.  May be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (ScriptBudget budget : running) {
+            budget.cancel();
+        }
+    }
+
+    private void generate(FactorModel model, int periods, int periodsPerYear, double[][] schedules, String[] errors, int i) {
+        if (cancelled) {
+            errors[i] = "Cancelled.";
+            return;
+        }
+        ScriptBudget budget = new ScriptBudget(cpuBudgetMillis);
+        running.add(budget);
+        // Catches a cancel between the check above and the budget being added.
+        if (cancelled) {
+            budget.cancel();
+        }
+        budget.begin();
+        try {
+            double[] schedule = new double[periods];
+            model.generate(schedule, periodsPerYear);
+            schedules[i] = schedule;
+        } catch (GenerationException ex) {
+            errors[i] = ex.getMessage();
+        } catch (ScriptBudget.Stopped ex) {
+            // From a model that runs a script without going through GroovyPeriodValueGenerator.
+            errors[i] = ex.getMessage();
+        } catch (RuntimeException ex) {
+            errors[i] = String.valueOf(ex);
+        } finally {
+            budget.end();
+            running.remove(budget);
+        }
+    }
+
+    private class GenerateTask extends RecursiveAction {
+
+        private final FactorModel[] models;
+        private final int[] periods;
+        private final int[] periodsPerYear;
+        private final double[][] schedules;
+        private final String[] errors;
+        private final int from;
+        private final int to;
+
+        GenerateTask(FactorModel[] models, int[] periods, int[] periodsPerYear, double[][] schedules, String[] errors, int from, int to) {
+            this.models = models;
+            this.periods = periods;
+            this.periodsPerYear = periodsPerYear;
+            this.schedules = schedules;
+            this.errors = errors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SCHEDULES_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    generate(models[i], periods[i], periodsPerYear[i], schedules, errors, i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new GenerateTask(models, periods, periodsPerYear, schedules, errors, from, middle),
+                    new GenerateTask(models, periods, periodsPerYear, schedules, errors, middle, to));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package net.bcharris.fixedincomepricing;
+
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+
+/**
+ * The value for each period of one schedule.  Functions may keep state from one period to the next, so periods must be
+ * asked for in order starting at 0, and a function must not be shared between schedules.
+ */
+public interface PeriodFunction {
+
+    /**
+     * @param period The period, from 0 up to but excluding the number of periods in the schedule.
+     * @return The value for the period.
+     * @throws GenerationException If the value could not be computed.
+     */
+    double valueAt(int period) throws GenerationException;
+}
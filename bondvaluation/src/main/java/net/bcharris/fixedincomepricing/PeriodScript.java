@@ -0,0 +1,47 @@
+package net.bcharris.fixedincomepricing;
+
+import groovy.lang.Script;
+
+/**
+ * The base class of period value scripts, giving them the built in factor models as functions of the current period, so
+ * a script can combine them, for example <code>levelPayment(4.5) * cpr(6)</code>.
+ */
+public abstract class PeriodScript extends Script {
+
+    private int intVariable(String name) {
+        return ((Number) getBinding().getVariable(name)).intValue();
+    }
+
+    /**
+     * @see FactorModels#cpr
+     */
+    public double cpr(double cpr) {
+        return Math.pow(1 - FactorModels.periodPrepaymentRate(cpr, intVariable("periodsPerYear")), intVariable("period"));
+    }
+
+    /**
+     * @see FactorModels#psa
+     */
+    public double psa(double speed) {
+        int period = intVariable("period");
+        int periodsPerYear = intVariable("periodsPerYear");
+        double factor = 1;
+        for (int i = 0; i < period; i++) {
+            factor *= 1 - FactorModels.periodPrepaymentRate(FactorModels.psaCpr(speed, FactorModels.psaMonth(i, periodsPerYear)), periodsPerYear);
+        }
+        return factor;
+    }
+
+    /**
+     * @see FactorModels#levelPayment
+     */
+    public double levelPayment(double rate) {
+        int period = intVariable("period");
+        int periods = intVariable("periods");
+        double growth = 1 + rate / 100 / intVariable("periodsPerYear");
+        if (growth == 1) {
+            return (double) (periods - period) / periods;
+        }
+        return (1 - Math.pow(growth, period - periods)) / (1 - Math.pow(growth, -periods));
+    }
+}
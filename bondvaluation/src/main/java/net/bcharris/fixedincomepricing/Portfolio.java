@@ -0,0 +1,168 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Arrays;
+
+/**
+ * The terms of many bonds, stored as one primitive array per term so a book of millions of bonds is a handful of objects.
+ * Factor and rate schedules live in a shared pool, and each bond refers to its schedule by offset and length, so bonds
+ * with identical schedules can share one copy.
+ */
+public class Portfolio {
+
+    private final int size;
+    private final int[] daysToMaturity;
+    private final double[] periodYields;
+    private final int[] periodLengths;
+    private final int[] payDelays;
+    private final int[] scheduleOffsets;
+    private final int[] scheduleLengths;
+    private final double[] factorPool;
+    private final double[] ratePool;
+
+    private Portfolio(Builder builder) {
+        this.size = builder.size;
+        this.daysToMaturity = Arrays.copyOf(builder.daysToMaturity, size);
+        this.periodYields = Arrays.copyOf(builder.periodYields, size);
+        this.periodLengths = Arrays.copyOf(builder.periodLengths, size);
+        this.payDelays = Arrays.copyOf(builder.payDelays, size);
+        this.scheduleOffsets = Arrays.copyOf(builder.scheduleOffsets, size);
+        this.scheduleLengths = Arrays.copyOf(builder.scheduleLengths, size);
+        this.factorPool = Arrays.copyOf(builder.factorPool, builder.poolSize);
+        this.ratePool = Arrays.copyOf(builder.ratePool, builder.poolSize);
+    }
+
+    /**
+     * @return The number of bonds.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int daysToMaturity(int bond) {
+        checkElementIndex(bond, size);
+        return daysToMaturity[bond];
+    }
+
+    public double periodYield(int bond) {
+        checkElementIndex(bond, size);
+        return periodYields[bond];
+    }
+
+    public int periodLength(int bond) {
+        checkElementIndex(bond, size);
+        return periodLengths[bond];
+    }
+
+    public int payDelay(int bond) {
+        checkElementIndex(bond, size);
+        return payDelays[bond];
+    }
+
+    /**
+     * Price one bond, as {@link Calc#price} would.
+     */
+    public double price(int bond) {
+        checkElementIndex(bond, size);
+        return priceUnchecked(bond);
+    }
+
+    double priceUnchecked(int bond) {
+        return Calc.priceUnchecked(daysToMaturity[bond], factorPool, ratePool, scheduleOffsets[bond] + scheduleLengths[bond],
+                periodYields[bond], periodLengths[bond], payDelays[bond]);
+    }
+
+    void amortizeUnchecked(int bond, Amortization.Frequency frequency, Amortization.Sink sink, double[] sums) {
+        Amortization.amortizeUnchecked(bond, daysToMaturity[bond], factorPool, ratePool, scheduleOffsets[bond] + scheduleLengths[bond],
+                periodYields[bond], periodLengths[bond], payDelays[bond], frequency, sink, sums);
+    }
+
+    /**
+     * Accumulates bonds and schedules.  Arrays grow geometrically, so adding is amortized constant time.
+     */
+    public static class Builder {
+
+        private int size;
+        private int[] daysToMaturity = new int[16];
+        private double[] periodYields = new double[16];
+        private int[] periodLengths = new int[16];
+        private int[] payDelays = new int[16];
+        private int[] scheduleOffsets = new int[16];
+        private int[] scheduleLengths = new int[16];
+        private int poolSize;
+        private double[] factorPool = new double[64];
+        private double[] ratePool = new double[64];
+
+        /**
+         * Add a factor and rate schedule to the pool.
+         * @param factors The factors for each period, see {@link Calc#price}.
+         * @param rates The effective coupon rates for each period, each having been divided by the number of periods per
+         * year.
+         * @return The schedule's offset in the pool, to pass to {@link #add(int, double, int, int, int, int)}.
+         */
+        public int addSchedule(double[] factors, double[] rates) {
+            checkArgument(rates.length == factors.length, "rates.length (%s) == factors.length (%s)", rates.length, factors.length);
+            int offset = poolSize;
+            int newPoolSize = poolSize + factors.length;
+            if (newPoolSize > factorPool.length) {
+                int capacity = Math.max(newPoolSize, factorPool.length * 2);
+                factorPool = Arrays.copyOf(factorPool, capacity);
+                ratePool = Arrays.copyOf(ratePool, capacity);
+            }
+            System.arraycopy(factors, 0, factorPool, offset, factors.length);
+            System.arraycopy(rates, 0, ratePool, offset, rates.length);
+            poolSize = newPoolSize;
+            return offset;
+        }
+
+        /**
+         * Add a bond with its own schedule.
+         * @see #add(int, double, int, int, int, int)
+         */
+        public Builder add(int daysToMaturity, double periodYield, int periodLength, int payDelay, double[] factors, double[] rates) {
+            int offset = addSchedule(factors, rates);
+            return add(daysToMaturity, periodYield, periodLength, payDelay, offset, factors.length);
+        }
+
+        /**
+         * Add a bond whose schedule is already in the pool.
+         * @param daysToMaturity Number of days until maturity, must be >= 1.
+         * @param periodYield The required rate of return divided by the number of periods per year.
+         * @param periodLength The length of a period.
+         * @param payDelay The payment delay for cash flows.
+         * @param scheduleOffset The schedule's offset in the pool, as returned by {@link #addSchedule}.
+         * @param scheduleLength The number of periods in the schedule.
+         * @return This builder.
+         */
+        public Builder add(int daysToMaturity, double periodYield, int periodLength, int payDelay, int scheduleOffset, int scheduleLength) {
+            checkArgument(daysToMaturity >= 1, "daysToMaturity (%s) >= 1", daysToMaturity);
+            checkArgument(periodLength >= 1, "periodLength (%s) >= 1", periodLength);
+            checkArgument(payDelay >= 0, "payDelay (%s) >= 0", payDelay);
+            checkPositionIndexes(scheduleOffset, scheduleOffset + scheduleLength, poolSize);
+            int numCashFlows = (daysToMaturity + periodLength - 1) / periodLength;
+            checkArgument(scheduleLength >= numCashFlows, "scheduleLength (%s) >= # of future cash flows (%s)", scheduleLength, numCashFlows);
+            if (size == this.daysToMaturity.length) {
+                int capacity = size * 2;
+                this.daysToMaturity = Arrays.copyOf(this.daysToMaturity, capacity);
+                periodYields = Arrays.copyOf(periodYields, capacity);
+                periodLengths = Arrays.copyOf(periodLengths, capacity);
+                payDelays = Arrays.copyOf(payDelays, capacity);
+                scheduleOffsets = Arrays.copyOf(scheduleOffsets, capacity);
+                scheduleLengths = Arrays.copyOf(scheduleLengths, capacity);
+            }
+            this.daysToMaturity[size] = daysToMaturity;
+            periodYields[size] = periodYield;
+            periodLengths[size] = periodLength;
+            payDelays[size] = payDelay;
+            scheduleOffsets[size] = scheduleOffset;
+            scheduleLengths[size] = scheduleLength;
+            size++;
+            return this;
+        }
+
+        public Portfolio build() {
+            return new Portfolio(this);
+        }
+    }
+}
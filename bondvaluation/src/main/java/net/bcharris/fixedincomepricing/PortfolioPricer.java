@@ -0,0 +1,64 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Prices a whole {@link Portfolio} by splitting it into ranges of bonds and pricing the ranges in parallel on a fork-join
+ * pool.  Every bond's price is written to its own index, so the output is the same whatever the number of threads.
+ */
+public class PortfolioPricer {
+
+    /**
+     * Bonds per task, small enough to balance load and large enough that splitting is cheap by comparison.
+     */
+    static final int BONDS_PER_TASK = 1024;
+
+    /**
+     * Price every bond using the common fork-join pool.
+     * @see #price(Portfolio, double[], ForkJoinPool)
+     */
+    public static void price(Portfolio portfolio, double[] prices) {
+        price(portfolio, prices, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Price every bond.
+     * @param portfolio The bonds to price.
+     * @param prices The array in which to store the prices, prices[i] being the price of bond i.
+     * @param pool The pool whose threads do the work.
+     */
+    public static void price(Portfolio portfolio, double[] prices, ForkJoinPool pool) {
+        checkArgument(prices.length >= portfolio.size(), "prices.length (%s) >= portfolio.size() (%s)", prices.length, portfolio.size());
+        pool.invoke(new PriceTask(portfolio, prices, 0, portfolio.size()));
+    }
+
+    private static class PriceTask extends RecursiveAction {
+
+        private final Portfolio portfolio;
+        private final double[] prices;
+        private final int from;
+        private final int to;
+
+        PriceTask(Portfolio portfolio, double[] prices, int from, int to) {
+            this.portfolio = portfolio;
+            this.prices = prices;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BONDS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    prices[i] = portfolio.priceUnchecked(i);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new PriceTask(portfolio, prices, from, mid), new PriceTask(portfolio, prices, mid, to));
+            }
+        }
+    }
+}
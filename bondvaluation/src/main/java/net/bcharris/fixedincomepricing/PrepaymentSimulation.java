@@ -0,0 +1,265 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+
+/**
+ * Prices a prepayable bond over many simulated interest rate paths.  On each path a Vasicek short rate drives the
+ * prepayment rate through the refinancing incentive, the gap between the loans' note rate and the market rate:
+ * <pre>
+ * r(t+1) = r(t) + meanReversion * (mean - r(t)) * dt + volatility * sqrt(dt) * Z
+ * cpr(t) = min(maxCpr, baseCpr + refinanceCpr * max(0, noteRate - r(t)))
+ * </pre>
+ * The path's factors are the scheduled amortization times the balance surviving those prepayments, its coupons are the
+ * fixed coupon or the short rate plus a margin, and it is priced with {@link Calc#price} at the given yield.  Prices
+ * are streamed into {@link RunningStatistics}, so no path is kept once priced.
+ * <p>
+ * Paths are simulated in parallel, each with its own {@link SplittableRandom} split from the seed along a tree that
+ * depends only on the number of paths, and results are merged back along the same tree, so a seed gives the same
+ * statistics to the bit on any number of threads.  Annual rates are percentages, as in {@link FactorModels}.
+ */
+public class PrepaymentSimulation {
+
+    /**
+     * Paths simulated per task, enough that a task's arrays and statistics are small beside its work.
+     */
+    static final int PATHS_PER_TASK = 256;
+    /**
+     * Prices are binned for percentiles from 0 to 2 in steps of a hundredth of a point.
+     */
+    static final double PRICE_BIN_WIDTH = 1e-4;
+    private static final double MAX_BINNED_PRICE = 2;
+    private final int periodsPerYear;
+    private final int payDelay;
+    private final double initialRate;
+    private final double meanRate;
+    private final double meanReversion;
+    private final double rateVolatility;
+    private final double baseCpr;
+    private final double refinanceCpr;
+    private final double maxCpr;
+    private final double noteRate;
+    private final double coupon;
+    private final boolean floating;
+    private final FactorModel scheduled;
+
+    private PrepaymentSimulation(Builder builder) {
+        this.periodsPerYear = builder.periodsPerYear;
+        this.payDelay = builder.payDelay;
+        this.initialRate = builder.initialRate;
+        this.meanRate = builder.meanRate;
+        this.meanReversion = builder.meanReversion;
+        this.rateVolatility = builder.rateVolatility;
+        this.baseCpr = builder.baseCpr;
+        this.refinanceCpr = builder.refinanceCpr;
+        this.maxCpr = builder.maxCpr;
+        this.noteRate = builder.noteRate;
+        this.coupon = builder.coupon;
+        this.floating = builder.floating;
+        this.scheduled = builder.scheduled;
+    }
+
+    public static class Builder {
+
+        private int periodsPerYear = 12;
+        private int payDelay;
+        private double initialRate = 5;
+        private double meanRate = 5;
+        private double meanReversion = .1;
+        private double rateVolatility = 1;
+        private double baseCpr = 6;
+        private double refinanceCpr = 10;
+        private double maxCpr = 60;
+        private double noteRate = 5.5;
+        private double coupon = 5;
+        private boolean floating;
+        private FactorModel scheduled = FactorModels.bullet();
+
+        /**
+         * @param periodsPerYear The number of coupon periods per year, default 12.
+         */
+        public Builder periodsPerYear(int periodsPerYear) {
+            checkArgument(periodsPerYear >= 1 && periodsPerYear <= 360, "periodsPerYear (%s) in [1, 360]", periodsPerYear);
+            this.periodsPerYear = periodsPerYear;
+            return this;
+        }
+
+        /**
+         * @param payDelay The payment delay for cash flows, default 0.
+         */
+        public Builder payDelay(int payDelay) {
+            checkArgument(payDelay >= 0, "payDelay (%s) >= 0", payDelay);
+            this.payDelay = payDelay;
+            return this;
+        }
+
+        /**
+         * The short rate model, by default starting at 5% and reverting to 5% by a tenth of the gap a year, with a volatility of 1%.
+         * @param initial The short rate now.
+         * @param mean The rate it reverts to.
+         * @param meanReversion The share of the distance to the mean closed per year.
+         * @param volatility The standard deviation of the rate after one year, ignoring mean reversion.
+         */
+        public Builder shortRate(double initial, double mean, double meanReversion, double volatility) {
+            checkArgument(meanReversion >= 0, "meanReversion (%s) >= 0", meanReversion);
+            checkArgument(volatility >= 0, "volatility (%s) >= 0", volatility);
+            this.initialRate = initial;
+            this.meanRate = mean;
+            this.meanReversion = meanReversion;
+            this.rateVolatility = volatility;
+            return this;
+        }
+
+        /**
+         * The prepayment model, by default 6 CPR plus 10 CPR per point of incentive below a 5.5% note rate, up to 60 CPR.
+         * @param baseCpr The annual prepayment rate with no incentive to refinance.
+         * @param refinanceCpr The added annual prepayment rate per percentage point the short rate is below the note rate.
+         * @param maxCpr The highest annual prepayment rate.
+         * @param noteRate The loans' interest rate.
+         */
+        public Builder prepayment(double baseCpr, double refinanceCpr, double maxCpr, double noteRate) {
+            checkArgument(baseCpr >= 0 && baseCpr <= maxCpr, "baseCpr (%s) in [0, maxCpr (%s)]", baseCpr, maxCpr);
+            checkArgument(refinanceCpr >= 0, "refinanceCpr (%s) >= 0", refinanceCpr);
+            checkArgument(maxCpr < 100, "maxCpr (%s) < 100", maxCpr);
+            this.baseCpr = baseCpr;
+            this.refinanceCpr = refinanceCpr;
+            this.maxCpr = maxCpr;
+            this.noteRate = noteRate;
+            return this;
+        }
+
+        /**
+         * Pay a fixed annual coupon, 5% by default.
+         */
+        public Builder fixedCoupon(double coupon) {
+            this.coupon = coupon;
+            this.floating = false;
+            return this;
+        }
+
+        /**
+         * Pay the short rate plus a margin, floored at 0.
+         */
+        public Builder floatingCoupon(double margin) {
+            this.coupon = margin;
+            this.floating = true;
+            return this;
+        }
+
+        /**
+         * @param scheduled The amortization the bond would have without prepayments, by default none.
+         */
+        public Builder scheduled(FactorModel scheduled) {
+            this.scheduled = checkNotNull(scheduled);
+            return this;
+        }
+
+        public PrepaymentSimulation build() {
+            return new PrepaymentSimulation(this);
+        }
+    }
+
+    /**
+     * Simulate on the common fork-join pool.
+     * @see #run(int, double, int, long, ForkJoinPool)
+     */
+    public RunningStatistics run(int daysToMaturity, double yield, int paths, long seed) throws GenerationException {
+        return run(daysToMaturity, yield, paths, seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Price the bond over simulated paths.
+     * @param daysToMaturity Number of days until maturity, must be >= 1.
+     * @param yield The annual yield to price at.
+     * @param paths The number of paths.
+     * @param seed The seed the paths' random numbers are split from.
+     * @param pool The pool whose threads simulate paths.
+     * @return Statistics of the price over the paths.
+     * @throws GenerationException If the scheduled amortization could not be generated.
+     */
+    public RunningStatistics run(int daysToMaturity, double yield, int paths, long seed, ForkJoinPool pool) throws GenerationException {
+        checkArgument(daysToMaturity >= 1, "daysToMaturity (%s) >= 1", daysToMaturity);
+        checkArgument(paths >= 1, "paths (%s) >= 1", paths);
+        int periodLength = DayCountUtil.periodLength(periodsPerYear);
+        double[] scheduledFactors = new double[(daysToMaturity + periodLength - 1) / periodLength];
+        scheduled.generate(scheduledFactors, periodsPerYear);
+        double periodYield = yield / 100 / periodsPerYear;
+        return pool.invoke(new PathTask(daysToMaturity, periodYield, periodLength, scheduledFactors, new SplittableRandom(seed), 0, paths));
+    }
+
+    /**
+     * Fill one path's factors and coupon rates.
+     */
+    void simulate(SplittableRandom random, double[] scheduledFactors, double[] factors, double[] rates) {
+        double dt = 1.0 / periodsPerYear;
+        double shock = rateVolatility * Math.sqrt(dt);
+        double rate = initialRate;
+        double surviving = 1;
+        double spareNormal = Double.NaN;
+        for (int i = 0; i < factors.length; i++) {
+            factors[i] = scheduledFactors[i] * surviving;
+            rates[i] = (floating ? Math.max(0, rate + coupon) : coupon) / 100 / periodsPerYear;
+            double cpr = Math.min(maxCpr, baseCpr + refinanceCpr * Math.max(0, noteRate - rate));
+            surviving *= 1 - FactorModels.periodPrepaymentRate(cpr, periodsPerYear);
+            double normal;
+            if (Double.isNaN(spareNormal)) {
+                // Box-Muller, both normals from one pair of uniforms.  SplittableRandom only has nextGaussian from Java 17.
+                double radius = Math.sqrt(-2 * Math.log(1 - random.nextDouble()));
+                double angle = 2 * Math.PI * random.nextDouble();
+                normal = radius * Math.cos(angle);
+                spareNormal = radius * Math.sin(angle);
+            } else {
+                normal = spareNormal;
+                spareNormal = Double.NaN;
+            }
+            rate += meanReversion * (meanRate - rate) * dt + shock * normal;
+        }
+    }
+
+    private class PathTask extends RecursiveTask<RunningStatistics> {
+
+        private final int daysToMaturity;
+        private final double periodYield;
+        private final int periodLength;
+        private final double[] scheduledFactors;
+        private final SplittableRandom random;
+        private final int from;
+        private final int to;
+
+        PathTask(int daysToMaturity, double periodYield, int periodLength, double[] scheduledFactors, SplittableRandom random, int from, int to) {
+            this.daysToMaturity = daysToMaturity;
+            this.periodYield = periodYield;
+            this.periodLength = periodLength;
+            this.scheduledFactors = scheduledFactors;
+            this.random = random;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected RunningStatistics compute() {
+            if (to - from <= PATHS_PER_TASK) {
+                RunningStatistics statistics = new RunningStatistics(0, MAX_BINNED_PRICE, (int) Math.round(MAX_BINNED_PRICE / PRICE_BIN_WIDTH));
+                double[] factors = new double[scheduledFactors.length];
+                double[] rates = new double[scheduledFactors.length];
+                for (int i = from; i < to; i++) {
+                    simulate(random.split(), scheduledFactors, factors, rates);
+                    statistics.add(Calc.price(daysToMaturity, factors, rates, periodYield, periodLength, payDelay));
+                }
+                return statistics;
+            }
+            int middle = (from + to) >>> 1;
+            // Split both halves' streams before either runs, so the split does not depend on scheduling.
+            PathTask left = new PathTask(daysToMaturity, periodYield, periodLength, scheduledFactors, random.split(), from, middle);
+            PathTask right = new PathTask(daysToMaturity, periodYield, periodLength, scheduledFactors, random.split(), middle, to);
+            invokeAll(left, right);
+            RunningStatistics statistics = left.join();
+            statistics.merge(right.join());
+            return statistics;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Calculates the price for every day in a range of days to maturity.  The result is the same as calling
+ * {@link Calc#price} once per day, but the discounted sum of the whole period cash flows is carried from one coupon date
+ * to the next instead of being recomputed, so each day only pays for its partial period discount and accrued.
+ */
+public class PriceCurve {
+
+    /**
+     * Calculate prices for a range of days to maturity.
+     * @param minDaysToMaturity The smallest number of days until maturity, must be >= 1.
+     * @param factors The factors for each period, as for {@link Calc#price}.  There must be enough factors for the largest
+     * number of days until maturity.
+     * @param rates The effective coupon rates for each period, each having been divided by the number of periods per year.
+     * @param periodYield The required rate of return divided by the number of periods per year.
+     * @param periodLength The length of a period.
+     * @param payDelay The payment delay for cash flows.
+     * @param prices The array in which to store the prices, prices[i] being the price with minDaysToMaturity + i days
+     * until maturity.
+     */
+    public static void price(int minDaysToMaturity, double[] factors, double[] rates, double periodYield, int periodLength, int payDelay, double[] prices) {
+        checkArgument(minDaysToMaturity >= 1, "minDaysToMaturity (%s) >= 1", minDaysToMaturity);
+        int maxDaysToMaturity = minDaysToMaturity + prices.length - 1;
+        int maxCashFlows = (maxDaysToMaturity + periodLength - 1) / periodLength;
+        checkArgument(factors.length >= maxCashFlows, "factors.length (%s) >= # of future cash flows (%s)", factors.length, maxCashFlows);
+        checkArgument(rates.length == factors.length, "rates.length (%s) == factors.length (%s)", rates.length, factors.length);
+
+        long start = Metrics.start();
+        long startBytes = Metrics.allocatedBytes();
+        DiscountTable discounts = DiscountTable.get(periodYield, periodLength, payDelay);
+        int generation = discounts.generation;
+
+        // Discounted sum of the numCashFlows cash flows nearest maturity, as of the earliest of them.
+        double px = 0;
+        int numCashFlows = 0;
+        for (int i = 0; i < prices.length; i++) {
+            int daysToMaturity = minDaysToMaturity + i;
+            int partialPeriod = daysToMaturity % periodLength;
+            int neededCashFlows = (daysToMaturity + periodLength - 1) / periodLength;
+            while (numCashFlows < neededCashFlows) {
+                int periodIdx = factors.length - numCashFlows - 1;
+                double factor = numCashFlows == 0 ? 0 : factors[periodIdx + 1];
+                px = Calc.discountPeriod(px, discounts.periodDiscount, factors[periodIdx], factor, rates[periodIdx]);
+                numCashFlows++;
+            }
+
+            int periodIdx = factors.length - numCashFlows;
+            prices[i] = Calc.cleanPrice(Calc.dirtyValue(px, partialPeriod, discounts), factors[periodIdx], rates[periodIdx],
+                    Calc.accruedFraction(partialPeriod, periodLength));
+        }
+        assert discounts.generation == generation : "discount table reset while pricing the curve";
+        Metrics.stop(Metrics.Stage.PRICE_CURVE, start, startBytes);
+    }
+}
@@ -2,52 +2,126 @@ package net.bcharris.fixedincomepricing;
 
 import groovy.ui.ConsoleTextEditor;
 import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.util.Arrays;
+import java.awt.event.KeyListener;
+import java.util.concurrent.ExecutionException;
 import javax.swing.JDialog;
 import javax.swing.JEditorPane;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
 import javax.swing.JTextArea;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.text.JTextComponent;
 import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
 import org.codehaus.groovy.control.CompilationFailedException;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
 import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.LookupPaintScale;
+import org.jfree.chart.renderer.PaintScale;
+import org.jfree.chart.renderer.xy.XYBlockRenderer;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.chart.renderer.xy.XYStepRenderer;
+import org.jfree.chart.title.PaintScaleLegend;
+import org.jfree.data.xy.DefaultXYZDataset;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
+import org.jfree.ui.RectangleEdge;
 
 public class PriceFrame extends javax.swing.JFrame {
 
     private XYPlot pricePlot;
     private XYPlot factorPlot;
+    private ChartPanel priceChart;
     private double[] factors;
-    private ConsoleTextEditor factorScriptEditor;
+    /**
+     * Groovy's script editor, created when the Factors tab is first shown.
+     */
+    private JTextComponent factorScriptText;
     private double DEFAULT_FACTOR = 1;
-    private GroovyPeriodValueGenerator factorGenerator;
+    private FactorModel factorModel;
+    /**
+     * Recompute once the inputs have been still for this long, so holding down a spinner arrow only computes the value
+     * it stops at.
+     */
+    private static final int RECOMPUTE_DELAY_MILLIS = 75;
+    private final Timer recomputeTimer;
+    private RecomputeWorker recomputeWorker;
+    private int recomputeGeneration;
+    /**
+     * Remembers factors, cash flows and prices between recomputes, so a change recomputes only what depends on it.
+     */
+    private final PricingStages stages = new PricingStages();
+    /**
+     * The last factors shown as invalid, so the same invalid factors are not reported on every recompute.
+     */
+    private double[] rejectedFactors;
+    /**
+     * The most columns of days to draw in the scenario heatmap, beyond which days are sampled.
+     */
+    private static final int MAX_SCENARIO_COLUMNS = 500;
+    private JPanel scenarioPanel;
+    private XYPlot scenarioPlot;
+    private PaintScaleLegend scenarioLegend;
+    private JSpinner minYieldSpinner;
+    private JSpinner maxYieldSpinner;
+    private JSpinner yieldStepsSpinner;
+    /**
+     * The recompute whose scenarios the heatmap shows.  Scenarios are only priced while their tab is showing, so
+     * selecting the tab recomputes them if the inputs have changed since.
+     */
+    private int scenarioGeneration;
+    /**
+     * Run once the first prices are shown, for measuring startup.
+     */
+    private Runnable firstPricesShown;
 
     public PriceFrame() {
         super("Bond Valuation");
         initComponents();
-        factorGenerator = new GroovyPeriodValueGenerator(String.valueOf(DEFAULT_FACTOR));
-        factorScriptEditor = new ConsoleTextEditor();
-        factorScriptEditor.getTextEditor().setText(String.valueOf(DEFAULT_FACTOR));
-        factorScriptEditor.getTextEditor().addKeyListener(new KeyAdapter() {
+        factorModel = FactorModels.constant(DEFAULT_FACTOR);
+        jTabbedPane1.addChangeListener(new ChangeListener() {
 
             @Override
-            public void keyTyped(KeyEvent e) {
-                if (e.getKeyChar() == '\n' && (e.isShiftDown() || e.isControlDown())) {
-                    recomputeButton.doClick();
+            public void stateChanged(ChangeEvent e) {
+                if (factorScriptText == null && SwingUtilities.isDescendingFrom(factorScriptPanel, jTabbedPane1.getSelectedComponent())) {
+                    factorScriptText = GroovySupport.addEditor(factorScriptPanel, String.valueOf(DEFAULT_FACTOR), new KeyAdapter() {
+
+                        @Override
+                        public void keyTyped(KeyEvent e) {
+                            if (e.getKeyChar() == '\n' && (e.isShiftDown() || e.isControlDown())) {
+                                recomputeButton.doClick();
+                            }
+                        }
+                    });
+                    factorScriptPanel.revalidate();
+                }
+                if (jTabbedPane1.getSelectedComponent() == scenarioPanel && scenarioGeneration != recomputeGeneration) {
+                    requestRecompute();
                 }
             }
         });
-        factorScriptPanel.add(factorScriptEditor, BorderLayout.CENTER);
         NumberAxis priceAxis = new NumberAxis("Price");
         priceAxis.setAutoRangeIncludesZero(false);
         NumberAxis factorAxis = new NumberAxis("Factor");
@@ -67,79 +141,368 @@ public class PriceFrame extends javax.swing.JFrame {
         factorPlot.setDomainAxis(periodAxis);
         factorPlot.setRangeAxis(factorAxis);
         factorPlot.setRenderer(0, new XYStepRenderer());
-        priceChartPanel.add(new ChartPanel(new JFreeChart("", null, pricePlot, false)));
-        factorChartPanel.add(new ChartPanel(new JFreeChart("", null, factorPlot, false)));
-        generateNewFactors();
+        priceChart = chartPanel(new JFreeChart("", null, pricePlot, false));
+        // Zooming and resizing change how much of the price curve fits in a pixel.
+        dtmAxis.addChangeListener(new AxisChangeListener() {
+
+            @Override
+            public void axisChanged(AxisChangeEvent event) {
+                decimatePrices();
+            }
+        });
+        priceChart.addComponentListener(new ComponentAdapter() {
+
+            @Override
+            public void componentResized(ComponentEvent e) {
+                decimatePrices();
+            }
+        });
+        priceChartPanel.add(priceChart);
+        factorChartPanel.add(chartPanel(new JFreeChart("", null, factorPlot, false)));
+        initScenarioTab();
+        recomputeTimer = new Timer(RECOMPUTE_DELAY_MILLIS, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                startRecompute();
+            }
+        });
+        recomputeTimer.setRepeats(false);
+        requestRecompute();
         pack();
     }
 
-    private void redrawPrice() {
-        int paymentDelay = (Integer) paymentDelaySpinner.getValue();
-        double yield = (Double) yieldSpinner.getValue() * .01;
-        double coupon = (Double) couponSpinner.getValue() * .01;
-        int couponsPerYear = Integer.valueOf(couponsPerYearSpinner.getValue().toString());
-        int daysToMaturity = (Integer) daysToMaturitySpinner.getValue();
-        int periodLength = DayCountUtil.periodLength(couponsPerYear);
-        double periodCoupon = coupon / couponsPerYear;
-        double periodYield = yield / couponsPerYear;
-
-        XYSeries prices = new XYSeries(0, false);
-        XYSeries coupons = new XYSeries(0, false);
-        for (int i = daysToMaturity; i >= 1; i--) {
-            double[] periodicRates = new double[factors.length];
-            Arrays.fill(periodicRates, periodCoupon);
-            double price = Calc.price(i, factors, periodicRates, periodYield, periodLength, paymentDelay);
-            prices.add(i, price);
-            if (i % periodLength == 0) {
-                coupons.add(i, price);
+    /**
+     * Adds a tab showing clean price as a heatmap over days to maturity and a range of yields.
+     */
+    private void initScenarioTab() {
+        minYieldSpinner = new JSpinner(new SpinnerNumberModel(1.0, 0.0, null, 0.5));
+        maxYieldSpinner = new JSpinner(new SpinnerNumberModel(8.0, 0.0, null, 0.5));
+        yieldStepsSpinner = new JSpinner(new SpinnerNumberModel(50, 2, 1000, 10));
+        ChangeListener recompute = new ChangeListener() {
+
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                requestRecompute();
             }
+        };
+        JPanel controls = new JPanel();
+        controls.add(new JLabel("Min Yield"));
+        controls.add(minYieldSpinner);
+        controls.add(new JLabel("Max Yield"));
+        controls.add(maxYieldSpinner);
+        controls.add(new JLabel("Yield Steps"));
+        controls.add(yieldStepsSpinner);
+        for (JSpinner spinner : new JSpinner[]{minYieldSpinner, maxYieldSpinner, yieldStepsSpinner}) {
+            spinner.addChangeListener(recompute);
         }
-        pricePlot.setDataset(0, new XYSeriesCollection(prices));
-        pricePlot.setDataset(1, new XYSeriesCollection(coupons));
+
+        NumberAxis dtmAxis = new NumberAxis("Days To Maturity");
+        dtmAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
+        dtmAxis.setInverted(true);
+        dtmAxis.setAutoRangeIncludesZero(false);
+        NumberAxis yieldAxis = new NumberAxis("Yield");
+        yieldAxis.setAutoRangeIncludesZero(false);
+        scenarioPlot = new XYPlot();
+        scenarioPlot.setDomainAxis(dtmAxis);
+        scenarioPlot.setRangeAxis(yieldAxis);
+        scenarioPlot.setRenderer(new XYBlockRenderer());
+        JFreeChart chart = new JFreeChart("", null, scenarioPlot, false);
+        scenarioLegend = new PaintScaleLegend(new LookupPaintScale(), new NumberAxis("Price"));
+        scenarioLegend.setPosition(RectangleEdge.RIGHT);
+        scenarioLegend.setMargin(4, 4, 4, 4);
+        chart.addSubtitle(scenarioLegend);
+
+        scenarioPanel = new JPanel(new BorderLayout());
+        scenarioPanel.add(controls, BorderLayout.NORTH);
+        scenarioPanel.add(chartPanel(chart), BorderLayout.CENTER);
+        jTabbedPane1.insertTab("Scenarios", null, scenarioPanel, null, 1);
+    }
+
+    /**
+     * A chart panel whose drawing is recorded as {@link Metrics.Stage#CHART_RENDER}.
+     */
+    private static ChartPanel chartPanel(JFreeChart chart) {
+        return new ChartPanel(chart) {
+
+            @Override
+            public void paintComponent(Graphics g) {
+                long start = Metrics.start();
+                long startBytes = Metrics.allocatedBytes();
+                super.paintComponent(g);
+                Metrics.stop(Metrics.Stage.CHART_RENDER, start, startBytes);
+            }
+        };
+    }
+
+    /**
+     * Colours from blue for the lowest price to red for the highest.
+     */
+    private static PaintScale priceScale(double lowest, double highest) {
+        if (!(highest > lowest)) {
+            highest = lowest + 1e-9;
+        }
+        int colours = 64;
+        LookupPaintScale scale = new LookupPaintScale(lowest, highest, Color.GRAY);
+        for (int i = 0; i < colours; i++) {
+            scale.add(lowest + (highest - lowest) * i / colours, Color.getHSBColor(.67f * (colours - 1 - i) / (colours - 1), .8f, .9f));
+        }
+        return scale;
+    }
+
+    /**
+     * Starts the recompute for the current inputs, cancelling any recompute already running.
+     */
+    private void startRecompute() {
+        if (recomputeWorker != null) {
+            recomputeWorker.cancel(true);
+        }
+        recomputeWorker = new RecomputeWorker(++recomputeGeneration);
+        recomputeWorker.execute();
+    }
+
+    /**
+     * Show about two points per pixel of the visible part of the price curves.
+     */
+    private void decimatePrices() {
+        ValueAxis axis = pricePlot.getDomainAxis();
+        int maxPoints = 2 * Math.max(priceChart.getWidth(), 200);
+        for (int i = 0; i < pricePlot.getDatasetCount(); i++) {
+            if (pricePlot.getDataset(i) instanceof CurveDataset) {
+                ((CurveDataset) pricePlot.getDataset(i)).decimate(axis.getLowerBound(), axis.getUpperBound(), maxPoints);
+            }
+        }
+    }
+
+    /**
+     * Recompute once the inputs stop changing.
+     */
+    private void requestRecompute() {
+        recomputeTimer.restart();
     }
 
-    private void redrawFactors() {
+    private static XYSeriesCollection factorDataset(double[] factors) {
         XYSeries factorSeries = new XYSeries(0, false);
         for (int i = 0; i < factors.length; i++) {
             factorSeries.add(i, factors[i]);
         }
         factorSeries.add(factors.length, 0);
-        factorPlot.setDataset(0, new XYSeriesCollection(factorSeries));
+        return new XYSeriesCollection(factorSeries);
     }
 
-    private void generateNewFactors() {
-        int couponsPerYear = Integer.valueOf(couponsPerYearSpinner.getValue().toString());
-        int daysToMaturity = (Integer) daysToMaturitySpinner.getValue();
-        int periodLength = DayCountUtil.periodLength(couponsPerYear);
-        int neededFactors = daysToMaturity / periodLength + 1;
-        if (daysToMaturity % periodLength == 0) {
-            neededFactors--;
+    /**
+     * What a recompute publishes to the charts.
+     */
+    private static class Recomputation {
+
+        double[] factors;
+        XYSeriesCollection factorDataset;
+        String invalidFactor;
+        CurveDataset prices;
+        CurveDataset coupons;
+        DefaultXYZDataset scenarios;
+        PaintScale scenarioScale;
+        double scenarioDayStride;
+        double scenarioYieldStep;
+    }
+
+    /**
+     * Prices off the event thread through {@link #stages}, so only the stages downstream of the inputs that changed are
+     * computed.  The inputs are read when the worker is created, and the result is only shown if no newer recompute has
+     * started since.  Cancelling interrupts the worker, which stops a factor script at its next budget check.
+     */
+    private class RecomputeWorker extends SwingWorker<Recomputation, Void> {
+
+        private final int generation;
+        private final FactorModel model;
+        private final double[] shownFactors;
+        private final int paymentDelay;
+        private final double yield;
+        private final double coupon;
+        private final int couponsPerYear;
+        private final int daysToMaturity;
+        private final double minYield;
+        private final double maxYield;
+        private final int yieldSteps;
+        private final boolean showScenarios;
+
+        RecomputeWorker(int generation) {
+            this.generation = generation;
+            this.model = factorModel;
+            this.paymentDelay = (Integer) paymentDelaySpinner.getValue();
+            this.yield = (Double) yieldSpinner.getValue() * .01;
+            this.coupon = (Double) couponSpinner.getValue() * .01;
+            this.couponsPerYear = Integer.valueOf(couponsPerYearSpinner.getValue().toString());
+            this.daysToMaturity = (Integer) daysToMaturitySpinner.getValue();
+            double minYield = (Double) minYieldSpinner.getValue() * .01;
+            double maxYield = (Double) maxYieldSpinner.getValue() * .01;
+            this.minYield = Math.min(minYield, maxYield);
+            this.maxYield = Math.max(minYield, maxYield);
+            this.yieldSteps = (Integer) yieldStepsSpinner.getValue();
+            this.showScenarios = jTabbedPane1.getSelectedComponent() == scenarioPanel;
+            this.shownFactors = factors;
         }
-        double[] newFactors = new double[neededFactors];
-        try {
-            factorGenerator.generate(newFactors);
-        } catch (GenerationException ex) {
-            showError("Problem with your factor generation Groovy script", ex.getMessage());
-            return;
+
+        @Override
+        protected Recomputation doInBackground() throws GenerationException {
+            int periodLength = DayCountUtil.periodLength(couponsPerYear);
+            int periods = (daysToMaturity + periodLength - 1) / periodLength;
+            Recomputation result = new Recomputation();
+            result.factors = stages.factors(model, periods, couponsPerYear);
+            if (result.factors != shownFactors) {
+                result.invalidFactor = FactorModels.validate(result.factors);
+                if (result.invalidFactor != null) {
+                    return result;
+                }
+                result.factorDataset = factorDataset(result.factors);
+            }
+            if (isCancelled()) {
+                return null;
+            }
+            double[] rates = stages.rates(coupon / couponsPerYear, periods);
+            PricingStages.CashFlows cashFlows = stages.cashFlows(result.factors, rates);
+            PricingStages.Discounted discounted = stages.discount(cashFlows, yield / couponsPerYear);
+            double[] curve = stages.curve(discounted, periodLength, paymentDelay, daysToMaturity);
+
+            if (isCancelled()) {
+                return null;
+            }
+            double[] days = new double[daysToMaturity];
+            for (int i = 0; i < daysToMaturity; i++) {
+                days[i] = i + 1;
+            }
+            int couponCount = daysToMaturity / periodLength;
+            double[] couponDays = new double[couponCount];
+            double[] couponPrices = new double[couponCount];
+            for (int i = 0; i < couponCount; i++) {
+                couponDays[i] = (i + 1) * periodLength;
+                couponPrices[i] = curve[(i + 1) * periodLength - 1];
+            }
+            result.prices = new CurveDataset(0, days, curve);
+            result.coupons = new CurveDataset(0, couponDays, couponPrices);
+            if (showScenarios && !scenarios(result, cashFlows, periodLength)) {
+                return null;
+            }
+            return result;
+        }
+
+        /**
+         * Price the columns of the yield and days to maturity grid that the heatmap draws, a row of yields at a time.
+         * @return Whether the scenarios were priced, false if the worker was cancelled first.
+         */
+        private boolean scenarios(Recomputation result, PricingStages.CashFlows cashFlows, int periodLength) {
+            double yieldStep = (maxYield - minYield) / (yieldSteps - 1);
+            int dayStride = (daysToMaturity + MAX_SCENARIO_COLUMNS - 1) / MAX_SCENARIO_COLUMNS;
+            int columns = (daysToMaturity + dayStride - 1) / dayStride;
+            int[] days = new int[columns];
+            for (int j = 0; j < columns; j++) {
+                days[j] = 1 + j * dayStride;
+            }
+            double[] prices = new double[columns];
+            double[][] xyz = new double[3][yieldSteps * columns];
+            double lowest = Double.POSITIVE_INFINITY;
+            double highest = Double.NEGATIVE_INFINITY;
+            int item = 0;
+            for (int i = 0; i < yieldSteps; i++) {
+                if (isCancelled()) {
+                    return false;
+                }
+                PricingStages.scenario(cashFlows, (minYield + i * yieldStep) / couponsPerYear, periodLength, paymentDelay, days, prices);
+                for (int j = 0; j < columns; j++) {
+                    double price = prices[j];
+                    xyz[0][item] = days[j];
+                    xyz[1][item] = (minYield + i * yieldStep) * 100;
+                    xyz[2][item] = price;
+                    lowest = Math.min(lowest, price);
+                    highest = Math.max(highest, price);
+                    item++;
+                }
+            }
+            result.scenarios = new DefaultXYZDataset();
+            result.scenarios.addSeries(0, xyz);
+            result.scenarioScale = priceScale(lowest, highest);
+            result.scenarioDayStride = dayStride;
+            result.scenarioYieldStep = yieldStep * 100;
+            return true;
         }
-        for (int i = 0; i < newFactors.length; i++) {
-            if (newFactors[i] <= 0) {
-                showError("Invalid factor", "Your script returned a factor less than or equal to 0.");
+
+        @Override
+        protected void done() {
+            if (isCancelled() || generation != recomputeGeneration) {
                 return;
             }
-            if (newFactors[i] > 1) {
-                showError("Invalid factor", "Your script returned a factor greater than 1.");
+            Recomputation result;
+            try {
+                result = get();
+            } catch (InterruptedException ex) {
+                return;
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof GenerationException) {
+                    showError("Problem with your factor generation Groovy script", ex.getCause().getMessage());
+                } else {
+                    showError("Problem computing prices", String.valueOf(ex.getCause()));
+                }
                 return;
             }
-            if (i > 0 && newFactors[i] > newFactors[i - 1]) {
-                showError("Invalid factor", "Your script computed non-decreasing factors.");
+            if (result == null) {
                 return;
             }
+            if (result.invalidFactor != null) {
+                if (result.factors != rejectedFactors) {
+                    rejectedFactors = result.factors;
+                    showError("Invalid factor", result.invalidFactor);
+                }
+                return;
+            }
+            if (result.factorDataset != null) {
+                factors = result.factors;
+                factorPlot.setDataset(0, result.factorDataset);
+            }
+            pricePlot.setDataset(0, result.prices);
+            pricePlot.setDataset(1, result.coupons);
+            decimatePrices();
+            if (result.scenarios != null) {
+                XYBlockRenderer scenarioRenderer = (XYBlockRenderer) scenarioPlot.getRenderer();
+                scenarioRenderer.setBlockWidth(result.scenarioDayStride);
+                scenarioRenderer.setBlockHeight(result.scenarioYieldStep);
+                scenarioRenderer.setPaintScale(result.scenarioScale);
+                scenarioLegend.setScale(result.scenarioScale);
+                scenarioLegend.getAxis().setRange(result.scenarioScale.getLowerBound(), result.scenarioScale.getUpperBound());
+                scenarioPlot.setDataset(result.scenarios);
+                scenarioGeneration = generation;
+            }
+            if (firstPricesShown != null) {
+                Runnable shown = firstPricesShown;
+                firstPricesShown = null;
+                shown.run();
+            }
+        }
+    }
+
+    /**
+     * Everything the frame uses from Groovy.  The frame's own methods never name a Groovy class, so loading the frame
+     * does not load Groovy, which only the Factors tab and scripts need.
+     */
+    private static class GroovySupport {
+
+        static JTextComponent addEditor(JPanel panel, String text, KeyListener keyListener) {
+            ConsoleTextEditor editor = new ConsoleTextEditor();
+            editor.getTextEditor().setText(text);
+            editor.getTextEditor().addKeyListener(keyListener);
+            panel.add(editor, BorderLayout.CENTER);
+            return editor.getTextEditor();
         }
 
-        factors = newFactors;
-        redrawFactors();
-        redrawPrice();
+        /**
+         * @throws IllegalArgumentException If the script does not compile, or a built in model's arguments are invalid.
+         */
+        static FactorModel parse(String script) {
+            try {
+                return FactorModels.parse(script);
+            } catch (CompilationFailedException ex) {
+                throw new IllegalArgumentException(ex.getMessage(), ex);
+            }
+        }
     }
 
     private void showError(String title, String msg) {
@@ -317,34 +680,35 @@ public class PriceFrame extends javax.swing.JFrame {
     }// </editor-fold>//GEN-END:initComponents
 
     private void daysToMaturitySpinnerStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_daysToMaturitySpinnerStateChanged
-        generateNewFactors();
+        requestRecompute();
     }//GEN-LAST:event_daysToMaturitySpinnerStateChanged
 
     private void couponSpinnerStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_couponSpinnerStateChanged
-        redrawPrice();
+        requestRecompute();
     }//GEN-LAST:event_couponSpinnerStateChanged
 
     private void yieldSpinnerStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_yieldSpinnerStateChanged
-        redrawPrice();
+        requestRecompute();
     }//GEN-LAST:event_yieldSpinnerStateChanged
 
     private void couponsPerYearSpinnerStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_couponsPerYearSpinnerStateChanged
-        generateNewFactors();
+        requestRecompute();
     }//GEN-LAST:event_couponsPerYearSpinnerStateChanged
 
     private void paymentDelaySpinnerStateChanged(javax.swing.event.ChangeEvent evt) {//GEN-FIRST:event_paymentDelaySpinnerStateChanged
-        redrawPrice();
+        requestRecompute();
     }//GEN-LAST:event_paymentDelaySpinnerStateChanged
 
     private void recomputeButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_recomputeButtonActionPerformed
-        String factorScript = factorScriptEditor.getTextEditor().getText();
+        String factorScript = factorScriptText.getText();
         try {
-            factorGenerator = new GroovyPeriodValueGenerator(factorScript);
-        } catch (CompilationFailedException ex) {
-            showError("Syntax error in your factor generation Groovy script", ex.getMessage());
+            factorModel = GroovySupport.parse(factorScript);
+        } catch (IllegalArgumentException ex) {
+            // Syntax errors in a script, or a built-in model out of range.
+            showError("Invalid factor generation script", ex.getMessage());
             return;
         }
-        generateNewFactors();
+        requestRecompute();
     }//GEN-LAST:event_recomputeButtonActionPerformed
 
     private void helpButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_helpButtonActionPerformed
@@ -357,6 +721,13 @@ public class PriceFrame extends javax.swing.JFrame {
                 + "<ul>"
                 + "<li><b>period</b>: The period for which a factor is needed</li>"
                 + "<li><b>periods</b>: The total number of periods</li>"
+                + "<li><b>periodsPerYear</b>: The number of periods per year</li>"
+                + "</ul>"
+                + "Built in models, which are much faster when used on their own, can also be combined in scripts:  "
+                + "<ul>"
+                + "<li><b>cpr(6)</b>: Constant prepayment of 6% a year.</li>"
+                + "<li><b>psa(150)</b>: Prepayment at 150% of the PSA ramp.</li>"
+                + "<li><b>levelPayment(4.5)</b>: Amortization of a level payment loan at 4.5% a year.</li>"
                 + "</ul>"
                 + "Examples:  "
                 + "<ul>"
@@ -365,6 +736,7 @@ public class PriceFrame extends javax.swing.JFrame {
                 + "<li><b>if (period==0) 1; else 0.1</b>: Large drop after period 0.</li>"
                 + "<li><b>if (period==0) x=2; else x+=0.1; return 1/x</b>: Demonstrating saving state.</li>"
                 + "<li><b>(periods-period)/periods</b>: Stair stepping.</li>"
+                + "<li><b>levelPayment(4.5) * cpr(6)</b>: A prepaying mortgage.</li>"
                 + "</ul>"
                 + "</html>";
         JEditorPane pane = new JEditorPane();
@@ -380,11 +752,20 @@ public class PriceFrame extends javax.swing.JFrame {
     }//GEN-LAST:event_helpButtonActionPerformed
 
     public static void main(String args[]) {
+        launch(null);
+    }
+
+    /**
+     * Show the frame.
+     * @param firstPricesShown Run on the event thread once the first prices are shown, or null.
+     */
+    static void launch(final Runnable firstPricesShown) {
         java.awt.EventQueue.invokeLater(new Runnable() {
 
             @Override
             public void run() {
                 PriceFrame priceFrame = new PriceFrame();
+                priceFrame.firstPricesShown = firstPricesShown;
                 priceFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
                 priceFrame.setLocationRelativeTo(null);
                 priceFrame.setVisible(true);
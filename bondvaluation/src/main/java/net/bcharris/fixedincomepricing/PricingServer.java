@@ -0,0 +1,509 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves prices and yields over HTTP with the JDK's built-in server, for other programs on the same machine.
+ * <p>
+ * <b>POST /price</b> takes one request object, or an array of them, and answers with one result object or an array of
+ * them in the same order.  The fields map onto {@link Calc#price}: <b>daysToMaturity</b>, <b>periodLength</b>,
+ * <b>payDelay</b> (default 0), <b>rates</b> and <b>factors</b> (default 1).  Rates and factors are arrays with one value
+ * per period, or a single number for every period, as many periods as the other has or else the bond's cash flows.  A request with <b>periodYield</b> is answered with
+ * <code>{"price": ...}</code>, and one with <b>price</b> instead is answered with <code>{"periodYield": ...}</code>.
+ * <p>
+ * Requests are handled on virtual threads when the JDK has them and on a cached thread pool otherwise.  Prices from
+ * requests of a few bonds are not calculated on the request's thread: they are queued, and a single batching thread
+ * takes everything queued at once and prices it as one {@link Portfolio}, so many concurrent small requests cost about
+ * what one large one does.
+ * <p>
+ * <b>GET /stats</b> reports the number of requests, their p50 and p99 latency, and how well requests are being batched.
+ */
+public class PricingServer {
+
+    /**
+     * Requests with more bonds than this are priced on their own thread, they are already a batch.
+     */
+    static final int SMALL_REQUEST = 16;
+    /**
+     * The most bonds priced in one batch.
+     */
+    static final int MAX_BATCH = 1 << 16;
+    /**
+     * The most periods a bond's schedule may have, more than a century of daily coupons.  A schedule given as one number
+     * is expanded to the bond's number of cash flows, so without a limit a short request could allocate gigabytes.
+     */
+    static final int MAX_CASH_FLOWS = 1 << 16;
+    /**
+     * The largest request body read, room for a batch of a few hundred full length schedules.  Larger bodies are
+     * answered with 413.
+     */
+    static final int MAX_BODY_BYTES = 1 << 24;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final ForkJoinPool pool;
+    private final BlockingQueue<PendingPrice> queue = new LinkedBlockingQueue<PendingPrice>();
+    private final Thread batcher;
+    private volatile boolean stopped;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedPrices = new AtomicLong();
+
+    private PricingServer(InetSocketAddress address, ForkJoinPool pool) throws IOException {
+        this.pool = pool;
+        server = HttpServer.create(address, 0);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        virtualThreads = virtual != null;
+        executor = virtualThreads ? virtual : Executors.newCachedThreadPool(daemonThreads("pricing-request"));
+        server.setExecutor(executor);
+        server.createContext("/price", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handlePrice(exchange);
+            }
+        });
+        server.createContext("/stats", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleStats(exchange);
+            }
+        });
+        batcher = daemonThreads("pricing-batcher").newThread(new Runnable() {
+
+            @Override
+            public void run() {
+                runBatches();
+            }
+        });
+    }
+
+    /**
+     * Start a server pricing batches on the common fork-join pool.
+     * @param address The address to listen on, port 0 picks a free port.
+     */
+    public static PricingServer start(InetSocketAddress address) throws IOException {
+        return start(address, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Start a server.
+     * @param address The address to listen on, port 0 picks a free port.
+     * @param pool The pool whose threads price batches.
+     */
+    public static PricingServer start(InetSocketAddress address, ForkJoinPool pool) throws IOException {
+        PricingServer pricingServer = new PricingServer(address, pool);
+        pricingServer.batcher.start();
+        pricingServer.server.start();
+        return pricingServer;
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return Whether requests are handled on virtual threads.
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Stop accepting requests, waiting up to a second for requests being handled to finish.
+     */
+    public void stop() {
+        server.stop(1);
+        stopped = true;
+        batcher.interrupt();
+        executor.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Usage: [--port n]");
+                System.exit(2);
+            }
+        }
+        PricingServer pricingServer = start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        System.err.println("Listening on http://127.0.0.1:" + pricingServer.port() + "/price"
+                + (pricingServer.usesVirtualThreads() ? " using virtual threads" : ""));
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor, looked up reflectively so this still compiles for and runs on JDKs
+     * without it.
+     * @return The executor, or null if the JDK has no virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (Exception ex) {
+            // Present but unusable, as a preview feature that is not enabled.
+            return null;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+
+            private final AtomicLong count = new AtomicLong();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private void handlePrice(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, error("Use POST."));
+                return;
+            }
+            String text = declaresTooLong(exchange) ? null : read(exchange.getRequestBody());
+            if (text == null) {
+                respond(exchange, 413, error("The request body is over " + MAX_BODY_BYTES + " bytes."));
+                return;
+            }
+            String response;
+            try {
+                Object body = Json.parse(text);
+                List<PricingRequest> items = new ArrayList<PricingRequest>();
+                if (body instanceof List) {
+                    List<?> list = (List<?>) body;
+                    for (int i = 0; i < list.size(); i++) {
+                        items.add(PricingRequest.parse(list.get(i), "Item " + i + ": "));
+                    }
+                } else {
+                    items.add(PricingRequest.parse(body, ""));
+                }
+                double[] results = price(items);
+                StringBuilder out = new StringBuilder();
+                if (body instanceof List) {
+                    out.append('[');
+                }
+                for (int i = 0; i < items.size(); i++) {
+                    if (i > 0) {
+                        out.append(',');
+                    }
+                    out.append(items.get(i).solveForYield ? "{\"periodYield\":" : "{\"price\":");
+                    number(results[i], out);
+                    out.append('}');
+                }
+                if (body instanceof List) {
+                    out.append(']');
+                }
+                response = out.toString();
+            } catch (IllegalArgumentException ex) {
+                respond(exchange, 400, error(ex.getMessage()));
+                return;
+            } catch (IllegalStateException ex) {
+                respond(exchange, 400, error(ex.getMessage()));
+                return;
+            }
+            respond(exchange, 200, response);
+        } catch (RuntimeException ex) {
+            respond(exchange, 500, error(String.valueOf(ex)));
+        } finally {
+            requests.incrementAndGet();
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        long batchCount = batches.get();
+        StringBuilder out = new StringBuilder("{\"requests\":").append(requests.get());
+        out.append(",\"p50Micros\":").append(latency.percentile(50) / 1000);
+        out.append(",\"p99Micros\":").append(latency.percentile(99) / 1000);
+        out.append(",\"batches\":").append(batchCount);
+        out.append(",\"batchedPrices\":").append(batchedPrices.get());
+        out.append(",\"virtualThreads\":").append(virtualThreads).append('}');
+        respond(exchange, 200, out.toString());
+    }
+
+    /**
+     * Price and solve the items, passing small numbers of prices to the batching thread.
+     */
+    private double[] price(List<PricingRequest> items) {
+        double[] results = new double[items.size()];
+        int prices = 0;
+        for (PricingRequest item : items) {
+            if (!item.solveForYield) {
+                prices++;
+            }
+        }
+        List<PendingPrice> pending = new ArrayList<PendingPrice>();
+        Portfolio.Builder builder = prices > SMALL_REQUEST ? new Portfolio.Builder() : null;
+        for (int i = 0; i < items.size(); i++) {
+            PricingRequest item = items.get(i);
+            if (item.solveForYield) {
+                results[i] = YieldSolver.solve(item.price, item.daysToMaturity, item.factors, item.rates, item.periodLength, item.payDelay);
+            } else if (builder != null) {
+                item.addTo(builder);
+            } else {
+                PendingPrice price = new PendingPrice(item, i);
+                pending.add(price);
+                queue.add(price);
+            }
+        }
+        if (builder != null) {
+            Portfolio portfolio = builder.build();
+            double[] portfolioPrices = new double[portfolio.size()];
+            PortfolioPricer.price(portfolio, portfolioPrices, pool);
+            int next = 0;
+            for (int i = 0; i < items.size(); i++) {
+                if (!items.get(i).solveForYield) {
+                    results[i] = portfolioPrices[next++];
+                }
+            }
+        }
+        for (PendingPrice price : pending) {
+            try {
+                results[price.index] = price.result.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for a price.");
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException(String.valueOf(ex.getCause()));
+            }
+        }
+        return results;
+    }
+
+    private void runBatches() {
+        List<PendingPrice> batch = new ArrayList<PendingPrice>();
+        while (!stopped) {
+            try {
+                PendingPrice first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException ex) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            try {
+                Portfolio.Builder builder = new Portfolio.Builder();
+                for (PendingPrice price : batch) {
+                    price.request.addTo(builder);
+                }
+                Portfolio portfolio = builder.build();
+                double[] prices = new double[portfolio.size()];
+                PortfolioPricer.price(portfolio, prices, pool);
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).result.complete(prices[i]);
+                }
+                batches.incrementAndGet();
+                batchedPrices.addAndGet(batch.size());
+            } catch (RuntimeException ex) {
+                for (PendingPrice price : batch) {
+                    price.result.completeExceptionally(ex);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * @return Whether the request's Content-Length is over {@link #MAX_BODY_BYTES}, so it can be refused unread.
+     */
+    private static boolean declaresTooLong(HttpExchange exchange) {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            return length != null && Long.parseLong(length.trim()) > MAX_BODY_BYTES;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The body, or null if it is longer than {@link #MAX_BODY_BYTES}, in which case the rest is not read.
+     */
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            if (bytes.size() + read > MAX_BODY_BYTES) {
+                return null;
+            }
+            bytes.write(buffer, 0, read);
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static String error(String message) {
+        StringBuilder out = new StringBuilder("{\"error\":");
+        Json.quote(String.valueOf(message), out);
+        return out.append('}').toString();
+    }
+
+    private static void number(double value, StringBuilder out) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append("null");
+        } else {
+            out.append(value);
+        }
+    }
+
+    /**
+     * One bond to price or solve, checked as {@link Calc#price} would check it so a batch never fails for one bad bond.
+     */
+    static class PricingRequest {
+
+        final int daysToMaturity;
+        final int periodLength;
+        final int payDelay;
+        final double[] factors;
+        final double[] rates;
+        final boolean solveForYield;
+        final double periodYield;
+        final double price;
+
+        private PricingRequest(int daysToMaturity, int periodLength, int payDelay, double[] factors, double[] rates, boolean solveForYield, double periodYield, double price) {
+            this.daysToMaturity = daysToMaturity;
+            this.periodLength = periodLength;
+            this.payDelay = payDelay;
+            this.factors = factors;
+            this.rates = rates;
+            this.solveForYield = solveForYield;
+            this.periodYield = periodYield;
+            this.price = price;
+        }
+
+        static PricingRequest parse(Object json, String context) {
+            checkArgument(json instanceof Map, "%sExpected an object", context);
+            Map<?, ?> map = (Map<?, ?>) json;
+            int daysToMaturity = integer(map, "daysToMaturity", null, context);
+            int periodLength = integer(map, "periodLength", null, context);
+            int payDelay = integer(map, "payDelay", 0, context);
+            checkArgument(daysToMaturity >= 1, "%sdaysToMaturity (%s) >= 1", context, daysToMaturity);
+            checkArgument(periodLength >= 1, "%speriodLength (%s) >= 1", context, periodLength);
+            checkArgument(payDelay >= 0, "%spayDelay (%s) >= 0", context, payDelay);
+            int numCashFlows = (daysToMaturity + periodLength - 1) / periodLength;
+            checkArgument(numCashFlows <= MAX_CASH_FLOWS, "%s# of future cash flows (%s) <= %s", context, numCashFlows, MAX_CASH_FLOWS);
+            // A single number for one schedule is as long as the other's array, or the bond's cash flows if neither is one.
+            int length = numCashFlows;
+            if (map.get("rates") instanceof List) {
+                length = ((List<?>) map.get("rates")).size();
+            } else if (map.get("factors") instanceof List) {
+                length = ((List<?>) map.get("factors")).size();
+            }
+            double[] rates = schedule(map, "rates", null, length, context);
+            double[] factors = schedule(map, "factors", 1.0, length, context);
+            checkArgument(factors.length >= numCashFlows, "%sfactors.length (%s) >= # of future cash flows (%s)", context, factors.length, numCashFlows);
+            checkArgument(rates.length == factors.length, "%srates.length (%s) == factors.length (%s)", context, rates.length, factors.length);
+            boolean solveForYield = !map.containsKey("periodYield");
+            checkArgument(solveForYield == map.containsKey("price"), "%sGive either periodYield or price", context);
+            double periodYield = solveForYield ? Double.NaN : number(map, "periodYield", context);
+            double price = solveForYield ? number(map, "price", context) : Double.NaN;
+            return new PricingRequest(daysToMaturity, periodLength, payDelay, factors, rates, solveForYield, periodYield, price);
+        }
+
+        void addTo(Portfolio.Builder builder) {
+            builder.add(daysToMaturity, periodYield, periodLength, payDelay, factors, rates);
+        }
+
+        private static double number(Map<?, ?> map, String name, String context) {
+            Object value = map.get(name);
+            checkArgument(value instanceof Double, "%s%s must be a number", context, name);
+            return (Double) value;
+        }
+
+        private static int integer(Map<?, ?> map, String name, Integer defaultValue, String context) {
+            if (!map.containsKey(name) && defaultValue != null) {
+                return defaultValue;
+            }
+            double value = number(map, name, context);
+            checkArgument(value == (int) value, "%s%s must be a whole number", context, name);
+            return (int) value;
+        }
+
+        /**
+         * @param length The length for a schedule given as a single number, or when it is not given at all.
+         */
+        private static double[] schedule(Map<?, ?> map, String name, Double defaultValue, int length, String context) {
+            Object value = map.containsKey(name) ? map.get(name) : defaultValue;
+            if (value instanceof Double) {
+                double[] schedule = new double[length];
+                Arrays.fill(schedule, (Double) value);
+                return schedule;
+            }
+            checkArgument(value instanceof List, "%s%s must be a number or an array of numbers", context, name);
+            List<?> list = (List<?>) value;
+            checkArgument(list.size() <= MAX_CASH_FLOWS, "%s%s.length (%s) <= %s", context, name, list.size(), MAX_CASH_FLOWS);
+            double[] schedule = new double[list.size()];
+            for (int i = 0; i < schedule.length; i++) {
+                checkArgument(list.get(i) instanceof Double, "%s%s must be a number or an array of numbers", context, name);
+                schedule[i] = (Double) list.get(i);
+            }
+            return schedule;
+        }
+    }
+
+    private static class PendingPrice {
+
+        final PricingRequest request;
+        final int index;
+        final CompletableFuture<Double> result = new CompletableFuture<Double>();
+
+        PendingPrice(PricingRequest request, int index) {
+            this.request = request;
+            this.index = index;
+        }
+    }
+}
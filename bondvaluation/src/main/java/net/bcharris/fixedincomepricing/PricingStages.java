@@ -0,0 +1,268 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+
+/**
+ * Pricing split into stages, each remembering its recent results keyed on exactly the inputs it depends on:
+ * <ol>
+ * <li>{@link #factors}: the factor model, the number of periods and periods per year.</li>
+ * <li>{@link #rates}: the coupon and the number of periods.</li>
+ * <li>{@link #cashFlows}: the factors and rates.</li>
+ * <li>{@link #discount}: the cash flows and the yield.</li>
+ * <li>{@link #curve}: the discounted cash flows, the period length, the payment delay and the days to maturity.</li>
+ * </ol>
+ * A stage's result is keyed on the identity of the results it was computed from, and a stage returns the same object for
+ * the same inputs for as long as it is remembered, so changing one input recomputes only the stages downstream of it:
+ * a new yield is discounted and drawn again but keeps its factors and cash flows, and a new days to maturity with the
+ * same number of periods keeps everything up to the discounting.
+ * <p>
+ * Results are shared, so callers must not modify them.  Each stage keeps its {@link #DEFAULT_CAPACITY} most recent
+ * results.  The stages lock the instance, so it can be shared between threads, but one slow factor script holds up
+ * every other caller.  {@link #scenario} prices yields that are each used once, so it neither remembers them nor locks.
+ */
+public class PricingStages {
+
+    static final int DEFAULT_CAPACITY = 16;
+    private final Stage<double[]> factors;
+    private final Stage<double[]> rates;
+    private final Stage<CashFlows> cashFlows;
+    private final Stage<Discounted> discounted;
+    private final Stage<double[]> curves;
+
+    public PricingStages() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of results each stage keeps.
+     */
+    public PricingStages(int capacity) {
+        checkArgument(capacity >= 1, "capacity (%s) >= 1", capacity);
+        factors = new Stage<double[]>(capacity);
+        rates = new Stage<double[]>(capacity);
+        cashFlows = new Stage<CashFlows>(capacity);
+        discounted = new Stage<Discounted>(capacity);
+        curves = new Stage<double[]>(capacity);
+    }
+
+    /**
+     * A schedule's factors and rates, the cash flows at the end of each period per unit of the original face.
+     */
+    public static final class CashFlows {
+
+        final double[] factors;
+        final double[] rates;
+
+        private CashFlows(double[] factors, double[] rates) {
+            this.factors = factors;
+            this.rates = rates;
+        }
+
+        public int periods() {
+            return factors.length;
+        }
+    }
+
+    /**
+     * The cash flows discounted at one yield from maturity back to each coupon date.
+     */
+    public static final class Discounted {
+
+        final CashFlows cashFlows;
+        final double periodYield;
+        /**
+         * sums[k] is the value of the k cash flows nearest maturity as of the earliest of them.
+         */
+        final double[] sums;
+
+        private Discounted(CashFlows cashFlows, double periodYield) {
+            this.cashFlows = cashFlows;
+            this.periodYield = periodYield;
+            int periods = cashFlows.periods();
+            sums = new double[periods + 1];
+            Calc.discountCashFlows(cashFlows.factors, cashFlows.rates, periods, periods, 1 / (1 + periodYield), sums);
+        }
+
+        /**
+         * Price for one days to maturity, the same as {@link Calc#price} with the cash flows' factors and rates.
+         * @param daysToMaturity Number of days until maturity, from 1 to the periods covered by the cash flows.
+         */
+        public double price(int daysToMaturity, int periodLength, int payDelay) {
+            int numCashFlows = (daysToMaturity + periodLength - 1) / periodLength;
+            checkArgument(daysToMaturity >= 1 && numCashFlows <= cashFlows.periods(), "daysToMaturity (%s) in [1, %s]",
+                    daysToMaturity, cashFlows.periods() * periodLength);
+            return price(daysToMaturity, numCashFlows, DiscountTable.get(periodYield, periodLength, payDelay));
+        }
+
+        private double price(int daysToMaturity, int numCashFlows, DiscountTable discounts) {
+            int partialPeriod = daysToMaturity % discounts.periodLength;
+            int periodIdx = cashFlows.periods() - numCashFlows;
+            return Calc.cleanPrice(Calc.dirtyValue(sums[numCashFlows], partialPeriod, discounts), cashFlows.factors[periodIdx],
+                    cashFlows.rates[periodIdx], Calc.accruedFraction(partialPeriod, discounts.periodLength));
+        }
+    }
+
+    /**
+     * @return The model's factors for a number of periods, generated if they are not remembered.
+     * @throws GenerationException If the factors could not be generated, in which case nothing is remembered.
+     */
+    public synchronized double[] factors(FactorModel model, int periods, int periodsPerYear) throws GenerationException {
+        Key key = new Key(model, periods, periodsPerYear);
+        double[] result = factors.get(key);
+        if (result == null) {
+            result = new double[periods];
+            model.generate(result, periodsPerYear);
+            factors.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param periodCoupon The coupon rate divided by the number of periods per year.
+     * @return The same coupon for every period.
+     */
+    public synchronized double[] rates(double periodCoupon, int periods) {
+        Key key = new Key(periodCoupon, periods);
+        double[] result = rates.get(key);
+        if (result == null) {
+            result = new double[periods];
+            Arrays.fill(result, periodCoupon);
+            rates.put(key, result);
+        }
+        return result;
+    }
+
+    public synchronized CashFlows cashFlows(double[] factors, double[] rates) {
+        checkArgument(rates.length == factors.length, "rates.length (%s) == factors.length (%s)", rates.length, factors.length);
+        Key key = new Key(factors, rates);
+        CashFlows result = cashFlows.get(key);
+        if (result == null) {
+            result = new CashFlows(factors, rates);
+            cashFlows.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param periodYield The required rate of return divided by the number of periods per year.
+     */
+    public synchronized Discounted discount(CashFlows cashFlows, double periodYield) {
+        Key key = new Key(cashFlows, periodYield);
+        Discounted result = discounted.get(key);
+        if (result == null) {
+            result = new Discounted(cashFlows, periodYield);
+            discounted.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return The price for each days to maturity from 1, as {@link PriceCurve} would calculate them.
+     */
+    public synchronized double[] curve(Discounted discounted, int periodLength, int payDelay, int daysToMaturity) {
+        int periods = discounted.cashFlows.periods();
+        checkArgument(daysToMaturity >= 1 && (daysToMaturity + periodLength - 1) / periodLength <= periods,
+                "daysToMaturity (%s) in [1, %s]", daysToMaturity, periods * periodLength);
+        Key key = new Key(discounted, periodLength, payDelay, daysToMaturity);
+        double[] result = curves.get(key);
+        if (result == null) {
+            result = new double[daysToMaturity];
+            DiscountTable discounts = DiscountTable.get(discounted.periodYield, periodLength, payDelay);
+            int generation = discounts.generation;
+            for (int i = 0; i < daysToMaturity; i++) {
+                int days = i + 1;
+                result[i] = discounted.price(days, (days + periodLength - 1) / periodLength, discounts);
+            }
+            assert discounts.generation == generation : "discount table reset while pricing the curve";
+            curves.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Price the cash flows at one yield for some days to maturity, as {@link Calc#price} would, without remembering the
+     * discounting.
+     * @param periodYield The required rate of return divided by the number of periods per year.
+     * @param days The days to maturity to price, each from 1 to the periods covered by the cash flows.
+     * @param prices Receives the price for each of days.
+     */
+    public static void scenario(CashFlows cashFlows, double periodYield, int periodLength, int payDelay, int[] days, double[] prices) {
+        checkArgument(prices.length >= days.length, "prices.length (%s) >= days.length (%s)", prices.length, days.length);
+        for (int daysToMaturity : days) {
+            checkArgument(daysToMaturity >= 1 && (daysToMaturity + periodLength - 1) / periodLength <= cashFlows.periods(),
+                    "daysToMaturity (%s) in [1, %s]", daysToMaturity, cashFlows.periods() * periodLength);
+        }
+        Discounted discounted = new Discounted(cashFlows, periodYield);
+        DiscountTable discounts = DiscountTable.get(periodYield, periodLength, payDelay);
+        int generation = discounts.generation;
+        for (int i = 0; i < days.length; i++) {
+            prices[i] = discounted.price(days[i], (days[i] + periodLength - 1) / periodLength, discounts);
+        }
+        assert discounts.generation == generation : "discount table reset while pricing the scenario";
+    }
+
+    /**
+     * The most recently used results of one stage.
+     */
+    private static class Stage<V> extends LinkedHashMap<Key, V> {
+
+        private final int capacity;
+
+        Stage(int capacity) {
+            super(16, .75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    /**
+     * A stage's inputs.  Numbers are compared by value, and everything else, the models and the results of earlier
+     * stages, by identity.
+     */
+    private static final class Key {
+
+        private final Object[] parts;
+        private final int hash;
+
+        Key(Object... parts) {
+            this.parts = parts;
+            int hash = 1;
+            for (Object part : parts) {
+                hash = 31 * hash + (part instanceof Number ? part.hashCode() : System.identityHashCode(part));
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Object[] other = ((Key) obj).parts;
+            if (other.length != parts.length) {
+                return false;
+            }
+            for (int i = 0; i < parts.length; i++) {
+                boolean same = parts[i] instanceof Number ? parts[i].equals(other[i]) : parts[i] == other[i];
+                if (!same) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
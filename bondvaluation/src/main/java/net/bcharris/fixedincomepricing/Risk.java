@@ -0,0 +1,154 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * A price with its sensitivities to the yield, all computed in the one backward pass over the cash flows that
+ * {@link Calc#price} makes.  The first and second derivatives of the price are carried through the loop alongside it,
+ * so the partial period, payment delay and accrued interest are accounted for exactly rather than by bumping the yield.
+ * <p>
+ * Durations, convexity and DV01 are with respect to the annual yield, the period yield times
+ * {@link DayCountUtil#periodsPerYear}, and durations and convexity are relative to the price including accrued interest.
+ */
+public class Risk {
+
+    private final double price;
+    private final double accrued;
+    private final double modifiedDuration;
+    private final double macaulayDuration;
+    private final double convexity;
+    private final double dv01;
+
+    private Risk(double price, double accrued, double modifiedDuration, double macaulayDuration, double convexity, double dv01) {
+        this.price = price;
+        this.accrued = accrued;
+        this.modifiedDuration = modifiedDuration;
+        this.macaulayDuration = macaulayDuration;
+        this.convexity = convexity;
+        this.dv01 = dv01;
+    }
+
+    /**
+     * Calculate price and risk.
+     * @see Calc#price(int, double[], double[], double, int, int)
+     */
+    public static Risk calculate(int daysToMaturity, double[] factors, double rates[], double periodYield, int periodLength, int payDelay) {
+        checkArgument(daysToMaturity >= 1, "daysToMaturity (%s) >= 1", daysToMaturity);
+        int numCashFlows = (daysToMaturity + periodLength - 1) / periodLength;
+        checkArgument(factors.length >= numCashFlows, "factors.length (%s) >= # of future cash flows (%s)", factors.length, numCashFlows);
+        checkArgument(rates.length == factors.length, "rates.length (%s) == factors.length (%s)", rates.length, factors.length);
+
+        double[] derivatives = new double[3];
+        derivatives(daysToMaturity, factors, rates, periodYield, periodLength, payDelay, derivatives);
+        double price = derivatives[0];
+        double accrued = rates[factors.length - numCashFlows] * Calc.accruedFraction(daysToMaturity % periodLength, periodLength);
+        double fullPrice = price + accrued;
+        double periodsPerYear = DayCountUtil.periodsPerYear(periodLength);
+        // The derivatives are with respect to the period yield, and an annual yield moves it 1 / periodsPerYear as far.
+        double slope = derivatives[1] / periodsPerYear;
+        double curvature = derivatives[2] / (periodsPerYear * periodsPerYear);
+        double modifiedDuration = -slope / fullPrice;
+        return new Risk(price, accrued, modifiedDuration, modifiedDuration * (1 + periodYield), curvature / fullPrice, -slope * .0001);
+    }
+
+    /**
+     * Calculate the price as {@link Calc#price} does, along with its first and second derivatives with respect to the
+     * period yield.
+     * @param result Receives the price at index 0, its first derivative at index 1 and, if there is room, its second
+     * derivative at index 2.
+     */
+    static void derivatives(int daysToMaturity, double[] factors, double rates[], double periodYield, int periodLength, int payDelay, double[] result) {
+        int numCashFlows = (daysToMaturity + periodLength - 1) / periodLength;
+        int partialPeriod = daysToMaturity % periodLength;
+
+        // With v = 1 / (1 + y), v' = -v^2 and v'' = 2v^3.
+        double discount = 1 / (1 + periodYield);
+        double discountSlope = -discount * discount;
+        double discountCurvature = -2 * discount * discountSlope;
+        double px = 0;
+        double slope = 0;
+        double curvature = 0;
+        for (int periodIdx = factors.length - 1; periodIdx >= factors.length - numCashFlows; periodIdx--) {
+            curvature = curvature * discount + 2 * slope * discountSlope + px * discountCurvature;
+            slope = slope * discount + px * discountSlope;
+            double factor = periodIdx == factors.length - 1 ? 0 : factors[periodIdx + 1];
+            px = Calc.discountPeriod(px, discount, factors[periodIdx], factor, rates[periodIdx]);
+        }
+
+        // For d = (1 + y)^-t, d' = -t d v and d'' = t (t + 1) d v^2.  The partial period and payment delay discounts are
+        // applied one after the other, as Calc does, so the price matches it exactly.
+        double[] state = {px, slope, curvature};
+        if (partialPeriod == 0) {
+            applyDiscount(state, discount, 1, discount);
+        } else {
+            double exponent = (double) partialPeriod / periodLength;
+            applyDiscount(state, 1 / Math.pow(1 + periodYield, exponent), exponent, discount);
+        }
+        if (payDelay > 0) {
+            double exponent = (double) payDelay / periodLength;
+            applyDiscount(state, 1 / Math.pow(1 + periodYield, exponent), exponent, discount);
+        }
+
+        int periodIdx = factors.length - numCashFlows;
+        double factor = factors[periodIdx];
+        result[0] = Calc.cleanPrice(state[0], factor, rates[periodIdx], Calc.accruedFraction(partialPeriod, periodLength));
+        result[1] = state[1] / factor;
+        if (result.length > 2) {
+            result[2] = state[2] / factor;
+        }
+    }
+
+    /**
+     * Multiply a value and its derivatives, held in order in the state, by a discount of (1 + y)^-exponent.
+     */
+    private static void applyDiscount(double[] state, double periodDiscount, double exponent, double discount) {
+        double periodDiscountSlope = -exponent * periodDiscount * discount;
+        double periodDiscountCurvature = exponent * (exponent + 1) * periodDiscount * discount * discount;
+        state[2] = state[2] * periodDiscount + 2 * state[1] * periodDiscountSlope + state[0] * periodDiscountCurvature;
+        state[1] = state[1] * periodDiscount + state[0] * periodDiscountSlope;
+        state[0] *= periodDiscount;
+    }
+
+    /**
+     * @return The price, as returned by {@link Calc#price}.
+     */
+    public double price() {
+        return price;
+    }
+
+    /**
+     * @return The accrued interest subtracted from the price.
+     */
+    public double accrued() {
+        return accrued;
+    }
+
+    /**
+     * @return Minus the derivative of the price with respect to the annual yield, over the price with accrued interest.
+     */
+    public double modifiedDuration() {
+        return modifiedDuration;
+    }
+
+    /**
+     * @return The average time to the cash flows weighted by their present values, the modified duration times one plus
+     * the period yield.
+     */
+    public double macaulayDuration() {
+        return macaulayDuration;
+    }
+
+    /**
+     * @return The second derivative of the price with respect to the annual yield, over the price with accrued interest.
+     */
+    public double convexity() {
+        return convexity;
+    }
+
+    /**
+     * @return The fall in price for a one basis point rise in the annual yield, to first order.
+     */
+    public double dv01() {
+        return dv01;
+    }
+}
@@ -0,0 +1,135 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Mean, standard error and percentiles of a stream of values, in constant memory however many values there are.  The
+ * mean and variance are updated with Welford's method, and percentiles come from a histogram of fixed width bins, so
+ * they are accurate to half a bin.  Statistics gathered separately can be merged, and merging the same parts in the same
+ * order always gives the same result to the bit.
+ */
+public final class RunningStatistics {
+
+    private final double lower;
+    private final double binWidth;
+    private final long[] bins;
+    private long below;
+    private long above;
+    private long count;
+    private double mean;
+    private double sumSquares;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param lower The lowest value percentiles are binned for, lower values only count towards the minimum.
+     * @param upper The highest value percentiles are binned for, higher values only count towards the maximum.
+     * @param bins The number of bins between lower and upper.
+     */
+    public RunningStatistics(double lower, double upper, int bins) {
+        checkArgument(upper > lower, "upper (%s) > lower (%s)", upper, lower);
+        checkArgument(bins >= 1, "bins (%s) >= 1", bins);
+        this.lower = lower;
+        this.binWidth = (upper - lower) / bins;
+        this.bins = new long[bins];
+    }
+
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        sumSquares += delta * (value - mean);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        double bin = Math.floor((value - lower) / binWidth);
+        if (bin < 0) {
+            below++;
+        } else if (bin >= bins.length) {
+            above++;
+        } else {
+            bins[(int) bin]++;
+        }
+    }
+
+    /**
+     * Add everything another instance has seen, which must have the same bins.
+     */
+    public void merge(RunningStatistics other) {
+        checkArgument(other.bins.length == bins.length && other.lower == lower && other.binWidth == binWidth, "The statistics have different bins.");
+        if (other.count == 0) {
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        sumSquares += other.sumSquares + delta * delta * ((double) count * other.count / total);
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        below += other.below;
+        above += other.above;
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] += other.bins[i];
+        }
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return The mean, NaN if there are no values.
+     */
+    public double mean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * @return The sample standard deviation, NaN if there are fewer than two values.
+     */
+    public double standardDeviation() {
+        return count < 2 ? Double.NaN : Math.sqrt(sumSquares / (count - 1));
+    }
+
+    /**
+     * @return The standard error of the mean, NaN if there are fewer than two values.
+     */
+    public double standardError() {
+        return standardDeviation() / Math.sqrt(count);
+    }
+
+    public double min() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double max() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /**
+     * @param percentile From 0 to 100.
+     * @return The middle of the bin holding the percentile, clamped to the smallest and largest values, or the smallest or
+     * largest value for the 0th and 100th percentiles and percentiles outside the bins.  NaN if there are no values.
+     */
+    public double percentile(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "percentile (%s) in [0, 100]", percentile);
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (percentile == 100) {
+            return max;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = below;
+        if (seen >= rank || percentile == 0) {
+            return min;
+        }
+        for (int i = 0; i < bins.length; i++) {
+            seen += bins[i];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, lower + (i + .5) * binWidth));
+            }
+        }
+        return max;
+    }
+}
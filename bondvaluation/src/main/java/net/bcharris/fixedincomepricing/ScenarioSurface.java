@@ -0,0 +1,97 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Prices a bond over a grid of yields and days to maturity.  Each yield's row is one {@link PriceCurve}, so the
+ * discount powers for a yield are computed once and shared by every day in its row, and the rows are priced in parallel
+ * on a fork-join pool.  Every row is written to its own array, so the output is the same whatever the number of threads.
+ */
+public class ScenarioSurface {
+
+    /**
+     * Prices per task, enough that forking is cheap by comparison.
+     */
+    static final int PRICES_PER_TASK = 1 << 16;
+
+    /**
+     * Price the grid using the common fork-join pool.
+     * @see #price(double[], int, double[], double[], int, int, double[][], ForkJoinPool)
+     */
+    public static void price(double[] periodYields, int minDaysToMaturity, double[] factors, double[] rates, int periodLength, int payDelay, double[][] prices) {
+        price(periodYields, minDaysToMaturity, factors, rates, periodLength, payDelay, prices, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Price the grid.
+     * @param periodYields The required rates of return, each divided by the number of periods per year.
+     * @param minDaysToMaturity The smallest number of days until maturity, must be >= 1.
+     * @param factors The factors for each period, as for {@link Calc#price}.  There must be enough factors for the largest
+     * number of days until maturity.
+     * @param rates The effective coupon rates for each period, each having been divided by the number of periods per year.
+     * @param periodLength The length of a period.
+     * @param payDelay The payment delay for cash flows.
+     * @param prices The arrays in which to store the prices, one per yield and all the same length, prices[i][j] being the
+     * price at periodYields[i] with minDaysToMaturity + j days until maturity.
+     * @param pool The pool whose threads do the work.
+     */
+    public static void price(double[] periodYields, int minDaysToMaturity, double[] factors, double[] rates, int periodLength, int payDelay, double[][] prices, ForkJoinPool pool) {
+        checkArgument(prices.length == periodYields.length, "prices.length (%s) == periodYields.length (%s)", prices.length, periodYields.length);
+        if (prices.length == 0) {
+            return;
+        }
+        int days = prices[0].length;
+        for (double[] row : prices) {
+            checkArgument(row.length == days, "prices rows all have length %s", days);
+        }
+        checkArgument(minDaysToMaturity >= 1, "minDaysToMaturity (%s) >= 1", minDaysToMaturity);
+        int maxCashFlows = (minDaysToMaturity + days - 1 + periodLength - 1) / periodLength;
+        checkArgument(factors.length >= maxCashFlows, "factors.length (%s) >= # of future cash flows (%s)", factors.length, maxCashFlows);
+        checkArgument(rates.length == factors.length, "rates.length (%s) == factors.length (%s)", rates.length, factors.length);
+        int rowsPerTask = Math.max(1, PRICES_PER_TASK / Math.max(days, 1));
+        pool.invoke(new SurfaceTask(periodYields, minDaysToMaturity, factors, rates, periodLength, payDelay, prices, rowsPerTask, 0, prices.length));
+    }
+
+    private static class SurfaceTask extends RecursiveAction {
+
+        private final double[] periodYields;
+        private final int minDaysToMaturity;
+        private final double[] factors;
+        private final double[] rates;
+        private final int periodLength;
+        private final int payDelay;
+        private final double[][] prices;
+        private final int rowsPerTask;
+        private final int from;
+        private final int to;
+
+        SurfaceTask(double[] periodYields, int minDaysToMaturity, double[] factors, double[] rates, int periodLength, int payDelay, double[][] prices, int rowsPerTask, int from, int to) {
+            this.periodYields = periodYields;
+            this.minDaysToMaturity = minDaysToMaturity;
+            this.factors = factors;
+            this.rates = rates;
+            this.periodLength = periodLength;
+            this.payDelay = payDelay;
+            this.prices = prices;
+            this.rowsPerTask = rowsPerTask;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= rowsPerTask) {
+                for (int i = from; i < to; i++) {
+                    PriceCurve.price(minDaysToMaturity, factors, rates, periodYields[i], periodLength, payDelay, prices[i]);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SurfaceTask(periodYields, minDaysToMaturity, factors, rates, periodLength, payDelay, prices, rowsPerTask, from, mid),
+                        new SurfaceTask(periodYields, minDaysToMaturity, factors, rates, periodLength, payDelay, prices, rowsPerTask, mid, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A file of factor and rate schedules keyed by instrument ID, read and written through memory mapped buffers, so
+ * schedules for millions of instruments stay off the heap and can be priced straight from the mapping with
+ * {@link Calc#price(int, DoubleBuffer, DoubleBuffer, double, int, int)}.
+ * <p>
+ * The file starts with a header and a fixed size open addressing hash table of instrument IDs, so opening a store only
+ * maps it, whatever its size.  Each schedule is stored as a factor column followed by a rate column, each with room to
+ * grow, so appending a period, as each month's factors come out, writes in place.  A schedule which outgrows its room is
+ * moved to the end of the file with twice the room, leaving its old space unused.  The file is mapped in chunks, and no
+ * schedule crosses a chunk boundary.
+ * <p>
+ * Any number of threads may read schedules, but writes must come from one thread at a time.
+ */
+public class ScheduleStore implements Closeable {
+
+    private static final int MAGIC = 0x42565353; // "BVSS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    static final int DEFAULT_CHUNK_SHIFT = 30;
+    private static final int MIN_CAPACITY = 16;
+    private static final int MIN_MAPPING = 1 << 20;
+    // Header fields.
+    private static final int MAGIC_POS = 0;
+    private static final int VERSION_POS = 4;
+    private static final int CHUNK_SHIFT_POS = 8;
+    private static final int SLOT_COUNT_POS = 12;
+    private static final int SIZE_POS = 16;
+    private static final int DATA_END_POS = 24;
+    // Slot fields, a slot with offset 0 is empty because no schedule starts in the header.
+    private static final int SLOT_ID = 0;
+    private static final int SLOT_OFFSET = 8;
+    private static final int SLOT_LENGTH = 16;
+    private static final int SLOT_CAPACITY = 20;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int chunkShift;
+    private final long chunkSize;
+    private final int slotCount;
+    private volatile MappedByteBuffer[] chunks;
+
+    private ScheduleStore(RandomAccessFile file, int chunkShift, int slotCount) throws IOException {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.chunkShift = chunkShift;
+        this.chunkSize = 1L << chunkShift;
+        this.slotCount = slotCount;
+        long length = channel.size();
+        MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((length + chunkSize - 1) >>> chunkShift)];
+        for (int i = 0; i < mapped.length; i++) {
+            long base = (long) i << chunkShift;
+            mapped[i] = map(base, Math.min(chunkSize, length - base));
+        }
+        this.chunks = mapped;
+    }
+
+    /**
+     * Create a new, empty store, replacing any existing file.
+     * @param path The file.
+     * @param maxInstruments The most instruments the store will ever hold.
+     * @return The store.
+     * @throws IOException If the file can't be created.
+     */
+    public static ScheduleStore create(File path, int maxInstruments) throws IOException {
+        return create(path, maxInstruments, DEFAULT_CHUNK_SHIFT);
+    }
+
+    static ScheduleStore create(File path, int maxInstruments, int chunkShift) throws IOException {
+        checkArgument(maxInstruments >= 1, "maxInstruments (%s) >= 1", maxInstruments);
+        // Keep the table at most half full so probes stay short.
+        int slotCount = Integer.highestOneBit(maxInstruments) * 4;
+        long dataStart = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+        checkArgument(dataStart <= 1L << chunkShift, "maxInstruments (%s) too large for the chunk size", maxInstruments);
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            file.setLength(0);
+            file.setLength(dataStart);
+            ScheduleStore store = new ScheduleStore(file, chunkShift, slotCount);
+            ByteBuffer header = store.chunks[0];
+            header.putInt(MAGIC_POS, MAGIC);
+            header.putInt(VERSION_POS, VERSION);
+            header.putInt(CHUNK_SHIFT_POS, chunkShift);
+            header.putInt(SLOT_COUNT_POS, slotCount);
+            header.putInt(SIZE_POS, 0);
+            header.putLong(DATA_END_POS, dataStart);
+            return store;
+        } catch (IOException ex) {
+            file.close();
+            throw ex;
+        } catch (RuntimeException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Open an existing store.
+     * @param path The file.
+     * @return The store.
+     * @throws IOException If the file can't be read or is not a store.
+     */
+    public static ScheduleStore open(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            file.getChannel().read(header, 0);
+            if (header.getInt(MAGIC_POS) != MAGIC || header.getInt(VERSION_POS) != VERSION) {
+                throw new IOException(path + " is not a schedule store.");
+            }
+            return new ScheduleStore(file, header.getInt(CHUNK_SHIFT_POS), header.getInt(SLOT_COUNT_POS));
+        } catch (IOException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return The number of instruments.
+     */
+    public int size() {
+        return chunks[0].getInt(SIZE_POS);
+    }
+
+    /**
+     * Get an instrument's schedule.
+     * @param id The instrument ID.
+     * @return The schedule, or null if the store has none for the instrument.  Its buffers are views of the mapping with
+     * the schedule's length when it was got, so they see later changes to those periods made in place, but never the
+     * periods appended after, nor anything once a change moves the schedule.
+     */
+    public Schedule get(long id) {
+        ByteBuffer index = chunks[0];
+        int slot = findSlot(index, id);
+        long offset = index.getLong(slot + SLOT_OFFSET);
+        if (offset == 0) {
+            return null;
+        }
+        int length = index.getInt(slot + SLOT_LENGTH);
+        int capacity = index.getInt(slot + SLOT_CAPACITY);
+        return new Schedule(id, column(offset, length), column(offset + 8L * capacity, length));
+    }
+
+    /**
+     * Store an instrument's schedule, replacing any it had.
+     * @param id The instrument ID.
+     * @param factors The factors for each period, see {@link Calc#price}.
+     * @param rates The effective coupon rates for each period.
+     * @throws IOException If the file can't grow.
+     */
+    public void put(long id, double[] factors, double[] rates) throws IOException {
+        checkArgument(rates.length == factors.length, "rates.length (%s) == factors.length (%s)", rates.length, factors.length);
+        ByteBuffer index = chunks[0];
+        int slot = claimSlot(index, id);
+        long offset = index.getLong(slot + SLOT_OFFSET);
+        int capacity = index.getInt(slot + SLOT_CAPACITY);
+        if (offset == 0 || capacity < factors.length) {
+            capacity = Math.max(MIN_CAPACITY, factors.length + factors.length / 4);
+            long newOffset = allocate(2L * 8 * capacity);
+            index = chunks[0];
+            if (offset == 0) {
+                occupy(index, slot, id);
+            }
+            offset = newOffset;
+            index.putLong(slot + SLOT_OFFSET, offset);
+            index.putInt(slot + SLOT_CAPACITY, capacity);
+        }
+        column(offset, factors.length).put(factors);
+        column(offset + 8L * capacity, rates.length).put(rates);
+        index.putInt(slot + SLOT_LENGTH, factors.length);
+    }
+
+    /**
+     * Add periods to the end of an instrument's schedule, creating the schedule if there is none.
+     * @param id The instrument ID.
+     * @param factors The factors for the new periods.
+     * @param rates The effective coupon rates for the new periods.
+     * @throws IOException If the file can't grow.
+     */
+    public void append(long id, double[] factors, double[] rates) throws IOException {
+        checkArgument(rates.length == factors.length, "rates.length (%s) == factors.length (%s)", rates.length, factors.length);
+        ByteBuffer index = chunks[0];
+        int slot = claimSlot(index, id);
+        long offset = index.getLong(slot + SLOT_OFFSET);
+        int length = index.getInt(slot + SLOT_LENGTH);
+        int capacity = index.getInt(slot + SLOT_CAPACITY);
+        int newLength = length + factors.length;
+        if (offset == 0 || capacity < newLength) {
+            int newCapacity = Math.max(MIN_CAPACITY, Math.max(2 * capacity, newLength));
+            long newOffset = allocate(2L * 8 * newCapacity);
+            if (length > 0) {
+                double[] old = new double[length];
+                column(offset, length).get(old);
+                column(newOffset, length).put(old);
+                column(offset + 8L * capacity, length).get(old);
+                column(newOffset + 8L * newCapacity, length).put(old);
+            }
+            index = chunks[0];
+            if (offset == 0) {
+                occupy(index, slot, id);
+            }
+            offset = newOffset;
+            capacity = newCapacity;
+            index.putLong(slot + SLOT_OFFSET, offset);
+            index.putInt(slot + SLOT_CAPACITY, capacity);
+        }
+        DoubleBuffer factorColumn = column(offset, newLength);
+        factorColumn.position(length);
+        factorColumn.put(factors);
+        DoubleBuffer rateColumn = column(offset + 8L * capacity, newLength);
+        rateColumn.position(length);
+        rateColumn.put(rates);
+        index.putInt(slot + SLOT_LENGTH, newLength);
+    }
+
+    /**
+     * Write changes through to the file.
+     * @throws IOException If the file can't be written.
+     */
+    public void force() throws IOException {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    /**
+     * Close the file.  The mapping, and any schedules read from it, stay valid until they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        file.close();
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return The position of the slot holding the ID, or of the empty slot where it would go.
+     */
+    private int findSlot(ByteBuffer index, long id) {
+        int mask = slotCount - 1;
+        int i = hash(id) & mask;
+        while (true) {
+            int slot = HEADER_SIZE + i * SLOT_SIZE;
+            if (index.getLong(slot + SLOT_OFFSET) == 0 || index.getLong(slot + SLOT_ID) == id) {
+                return slot;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * @return The position of the slot holding the ID, or of the empty slot where it would go if the store has room.  An
+     * empty slot is only taken by {@link #occupy} once its schedule has space, so a failed allocation changes nothing.
+     */
+    private int claimSlot(ByteBuffer index, long id) {
+        int slot = findSlot(index, id);
+        if (index.getLong(slot + SLOT_OFFSET) == 0) {
+            int size = index.getInt(SIZE_POS);
+            checkState(size < slotCount / 2, "The store is full at %s instruments.", size);
+        }
+        return slot;
+    }
+
+    /**
+     * Take an empty slot for an ID, before its offset is written.
+     */
+    private void occupy(ByteBuffer index, int slot, long id) {
+        index.putLong(slot + SLOT_ID, id);
+        index.putInt(slot + SLOT_LENGTH, 0);
+        index.putInt(slot + SLOT_CAPACITY, 0);
+        index.putInt(SIZE_POS, index.getInt(SIZE_POS) + 1);
+    }
+
+    /**
+     * Reserve space at the end of the file, starting a new chunk rather than crossing into one.
+     */
+    private long allocate(long bytes) throws IOException {
+        checkArgument(bytes <= chunkSize, "A schedule of %s bytes does not fit in a chunk of %s bytes.", bytes, chunkSize);
+        ByteBuffer header = chunks[0];
+        long offset = header.getLong(DATA_END_POS);
+        if ((offset & (chunkSize - 1)) + bytes > chunkSize) {
+            offset = ((offset >>> chunkShift) + 1) << chunkShift;
+        }
+        ensureMapped(offset + bytes);
+        chunks[0].putLong(DATA_END_POS, offset + bytes);
+        return offset;
+    }
+
+    private void ensureMapped(long end) throws IOException {
+        int chunk = (int) ((end - 1) >>> chunkShift);
+        long base = (long) chunk << chunkShift;
+        MappedByteBuffer[] mapped = chunks;
+        if (chunk < mapped.length && base + mapped[chunk].capacity() >= end) {
+            return;
+        }
+        // Allocation never skips a whole chunk, so only the last chunk grows, geometrically to limit remapping.
+        MappedByteBuffer[] grown = Arrays.copyOf(mapped, Math.max(mapped.length, chunk + 1));
+        long current = grown[chunk] == null ? 0 : grown[chunk].capacity();
+        long size = Math.min(chunkSize, Math.max(end - base, Math.max(2 * current, MIN_MAPPING)));
+        grown[chunk] = map(base, size);
+        chunks = grown;
+    }
+
+    private MappedByteBuffer map(long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private DoubleBuffer column(long offset, int length) {
+        ByteBuffer chunk = chunks[(int) (offset >>> chunkShift)].duplicate();
+        int position = (int) (offset & (chunkSize - 1));
+        chunk.limit(position + 8 * length);
+        chunk.position(position);
+        return chunk.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    /**
+     * One instrument's schedule, as views of the store's mapping.
+     */
+    public static class Schedule {
+
+        private final long id;
+        private final DoubleBuffer factors;
+        private final DoubleBuffer rates;
+
+        Schedule(long id, DoubleBuffer factors, DoubleBuffer rates) {
+            this.id = id;
+            this.factors = factors;
+            this.rates = rates;
+        }
+
+        public long id() {
+            return id;
+        }
+
+        /**
+         * @return The number of periods.
+         */
+        public int length() {
+            return factors.limit();
+        }
+
+        public DoubleBuffer factors() {
+            return factors.duplicate();
+        }
+
+        public DoubleBuffer rates() {
+            return rates.duplicate();
+        }
+
+        /**
+         * Price the instrument straight from the mapping.
+         * @see Calc#price(int, DoubleBuffer, DoubleBuffer, double, int, int)
+         */
+        public double price(int daysToMaturity, double periodYield, int periodLength, int payDelay) {
+            return Calc.price(daysToMaturity, factors, rates, periodYield, periodLength, payDelay);
+        }
+    }
+}
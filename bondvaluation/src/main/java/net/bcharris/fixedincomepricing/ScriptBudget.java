@@ -0,0 +1,137 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Limits the CPU time scripts may use on a thread, and lets another thread stop them.  {@link ScriptCache} compiles a
+ * call to {@link #check} into the start of every loop body, closure and method of a script, so even a script stuck in an
+ * infinite loop stops soon after its budget runs out or it is cancelled, with a {@link Stopped} error that
+ * {@link GroovyPeriodValueGenerator} reports as a {@link GroovyPeriodValueGenerator.GenerationException}.  A thread
+ * running scripts without a budget can still stop them by being interrupted.
+ * <pre>
+ * ScriptBudget budget = new ScriptBudget(1000);
+ * budget.begin();
+ * try {
+ *     model.generate(factors, periodsPerYear);
+ * } finally {
+ *     budget.end();
+ * }
+ * </pre>
+ */
+public final class ScriptBudget {
+
+    /**
+     * Thrown into a script to stop it.  It is an error rather than an exception so scripts which catch exceptions do not
+     * swallow it.
+     */
+    public static class Stopped extends Error {
+
+        Stopped(String message) {
+            super(message);
+        }
+    }
+    private static final ThreadLocal<ScriptBudget> CURRENT = new ThreadLocal<ScriptBudget>();
+    /**
+     * Reading the thread's CPU time costs about a microsecond, so it is only read every this many checks.
+     */
+    static final int CHECK_INTERVAL = 256;
+    private final long cpuBudgetNanos;
+    private volatile boolean cancelled;
+    private boolean started;
+    private long deadline;
+    private int countdown;
+    private ScriptBudget previous;
+
+    /**
+     * @param cpuBudgetMillis The CPU time scripts may use between {@link #begin} and {@link #end}, which is wall clock
+     * time on JVMs that cannot measure a thread's CPU time.
+     */
+    public ScriptBudget(long cpuBudgetMillis) {
+        checkArgument(cpuBudgetMillis > 0, "cpuBudgetMillis (%s) > 0", cpuBudgetMillis);
+        this.cpuBudgetNanos = cpuBudgetMillis * 1000000;
+    }
+
+    /**
+     * Start applying the budget to scripts run on this thread.
+     */
+    public void begin() {
+        checkState(previous == null && CURRENT.get() != this, "The budget is already in use.");
+        previous = CURRENT.get();
+        started = false;
+        countdown = CHECK_INTERVAL;
+        CURRENT.set(this);
+    }
+
+    /**
+     * Stop applying the budget, restoring any budget this thread had before {@link #begin}.
+     */
+    public void end() {
+        checkState(CURRENT.get() == this, "The budget is not in use on this thread.");
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+        previous = null;
+    }
+
+    /**
+     * Stop the scripts under this budget at their next check.  May be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Called by compiled scripts.
+     * @throws Stopped If the thread's budget has run out or been cancelled, or the thread has been interrupted.
+     */
+    public static void check() {
+        ScriptBudget budget = CURRENT.get();
+        if (budget != null) {
+            budget.checkBudget();
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new Stopped("The script was interrupted.");
+        }
+    }
+
+    private void checkBudget() {
+        if (cancelled) {
+            throw new Stopped("The script was cancelled.");
+        }
+        if (!started) {
+            // The clock starts at the first check, so a budget around a built in model never loads JMX.
+            started = true;
+            deadline = Clock.now() + cpuBudgetNanos;
+            return;
+        }
+        if (--countdown > 0) {
+            return;
+        }
+        countdown = CHECK_INTERVAL;
+        if (Clock.now() - deadline > 0) {
+            throw new Stopped("The script ran for more than its budget of " + cpuBudgetNanos / 1000000 + " ms.");
+        }
+    }
+
+    /**
+     * Holds the thread MXBean, so JMX is only loaded once a script runs under a budget.
+     */
+    private static class Clock {
+
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+        private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+        static long now() {
+            return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package net.bcharris.fixedincomepricing;
+
+import groovy.lang.GroovyClassLoader;
+import java.security.CodeSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.codehaus.groovy.ast.ClassCodeVisitorSupport;
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.expr.ArgumentListExpression;
+import org.codehaus.groovy.ast.expr.ClosureExpression;
+import org.codehaus.groovy.ast.expr.StaticMethodCallExpression;
+import org.codehaus.groovy.ast.stmt.BlockStatement;
+import org.codehaus.groovy.ast.stmt.DoWhileStatement;
+import org.codehaus.groovy.ast.stmt.ExpressionStatement;
+import org.codehaus.groovy.ast.stmt.ForStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.ast.stmt.WhileStatement;
+import org.codehaus.groovy.classgen.GeneratorContext;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+
+/**
+ * Compiled Groovy scripts keyed by source text, so a script used for many bonds, or recomputed without being edited, is
+ * only compiled once.  The least recently used scripts are evicted, and each script gets its own class loader so an
+ * evicted script's class can be unloaded.  Scripts extend {@link PeriodScript}, and call {@link ScriptBudget#check} at
+ * the start of every loop body, closure and method so they can be stopped.
+ */
+class ScriptCache {
+
+    static final int MAX_SCRIPTS = 256;
+    private static final CompilerConfiguration CONFIGURATION = new CompilerConfiguration();
+
+    static {
+        CONFIGURATION.setScriptBaseClass(PeriodScript.class.getName());
+    }
+    private static final Map<String, Class<?>> scripts = new LinkedHashMap<String, Class<?>>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+            return size() > MAX_SCRIPTS;
+        }
+    };
+
+    /**
+     * Get the compiled class for a script, compiling it if it is not cached.
+     * @param source The script's source text.
+     * @return The script class, which is usually but not necessarily a {@link groovy.lang.Script}.
+     * @throws CompilationFailedException If the script does not compile.
+     */
+    static Class<?> compile(String source) throws CompilationFailedException {
+        synchronized (scripts) {
+            Class<?> scriptClass = scripts.get(source);
+            if (scriptClass != null) {
+                return scriptClass;
+            }
+        }
+        // Compile outside the lock, two threads compiling the same new script at once merely duplicate work.
+        long start = Metrics.start();
+        long startBytes = Metrics.allocatedBytes();
+        Class<?> scriptClass = new BudgetedClassLoader().parseClass(source);
+        Metrics.stop(Metrics.Stage.SCRIPT_COMPILE, start, startBytes);
+        synchronized (scripts) {
+            scripts.put(source, scriptClass);
+        }
+        return scriptClass;
+    }
+
+    static int size() {
+        synchronized (scripts) {
+            return scripts.size();
+        }
+    }
+
+    /**
+     * Compiles scripts with budget checks.
+     */
+    private static class BudgetedClassLoader extends GroovyClassLoader {
+
+        BudgetedClassLoader() {
+            super(ScriptCache.class.getClassLoader(), CONFIGURATION);
+        }
+
+        @Override
+        protected CompilationUnit createCompilationUnit(CompilerConfiguration config, CodeSource source) {
+            CompilationUnit unit = super.createCompilationUnit(config, source);
+            unit.addPhaseOperation(new CompilationUnit.PrimaryClassNodeOperation() {
+
+                @Override
+                public void call(SourceUnit source, GeneratorContext context, ClassNode classNode) {
+                    new BudgetChecks(source).visitClass(classNode);
+                }
+            }, Phases.CONVERSION);
+            return unit;
+        }
+    }
+
+    /**
+     * Puts a budget check first in every loop body, closure and method, before variable scopes are worked out so the
+     * checks need no scope of their own.
+     */
+    private static class BudgetChecks extends ClassCodeVisitorSupport {
+
+        private final SourceUnit source;
+
+        BudgetChecks(SourceUnit source) {
+            this.source = source;
+        }
+
+        @Override
+        protected SourceUnit getSourceUnit() {
+            return source;
+        }
+
+        private static Statement check() {
+            return new ExpressionStatement(new StaticMethodCallExpression(ClassHelper.make(ScriptBudget.class), "check",
+                    ArgumentListExpression.EMPTY_ARGUMENTS));
+        }
+
+        private static Statement withCheck(Statement statement) {
+            if (statement instanceof BlockStatement) {
+                ((BlockStatement) statement).getStatements().add(0, check());
+                return statement;
+            }
+            BlockStatement block = new BlockStatement();
+            block.addStatement(check());
+            block.addStatement(statement);
+            return block;
+        }
+
+        @Override
+        public void visitMethod(MethodNode node) {
+            if (node.getCode() != null) {
+                node.setCode(withCheck(node.getCode()));
+            }
+            super.visitMethod(node);
+        }
+
+        @Override
+        public void visitClosureExpression(ClosureExpression expression) {
+            if (expression.getCode() instanceof BlockStatement) {
+                withCheck(expression.getCode());
+            }
+            super.visitClosureExpression(expression);
+        }
+
+        @Override
+        public void visitForLoop(ForStatement loop) {
+            loop.setLoopBlock(withCheck(loop.getLoopBlock()));
+            super.visitForLoop(loop);
+        }
+
+        @Override
+        public void visitWhileLoop(WhileStatement loop) {
+            loop.setLoopBlock(withCheck(loop.getLoopBlock()));
+            super.visitWhileLoop(loop);
+        }
+
+        @Override
+        public void visitDoWhileLoop(DoWhileStatement loop) {
+            loop.setLoopBlock(withCheck(loop.getLoopBlock()));
+            super.visitDoWhileLoop(loop);
+        }
+    }
+}
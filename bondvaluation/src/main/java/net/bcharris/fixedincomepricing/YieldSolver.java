@@ -0,0 +1,137 @@
+package net.bcharris.fixedincomepricing;
+
+import static com.google.common.base.Preconditions.*;
+
+/**
+ * Solves for the yield which gives a price, the inverse of {@link Calc#price}.  Each iteration evaluates the price and
+ * its analytic derivative with respect to the yield in one pass over the cash flows, takes a Newton step, and falls back
+ * to bisection whenever the step would leave the interval known to contain the solution.
+ */
+public class YieldSolver {
+
+    private static final int MAX_ITERATIONS = 100;
+    private static final double YIELD_TOLERANCE = 1e-14;
+
+    /**
+     * Solve for the yield, starting from the first coupon rate.
+     * @see #solve(double, int, double[], double[], int, int, double)
+     */
+    public static double solve(double price, int daysToMaturity, double[] factors, double[] rates, int periodLength, int payDelay) {
+        checkArgs(daysToMaturity, factors, rates, periodLength);
+        return solve(price, daysToMaturity, factors, rates, periodLength, payDelay, rates[firstPeriodIdx(daysToMaturity, factors, periodLength)], new double[2], null);
+    }
+
+    /**
+     * Solve for the yield.
+     * @param price The price, as returned by {@link Calc#price}.
+     * @param daysToMaturity Number of days until maturity, must be >= 1.
+     * @param factors The factors for each period, see {@link Calc#price}.
+     * @param rates The effective coupon rates for each period, each having been divided by the number of periods per year.
+     * @param periodLength The length of a period.
+     * @param payDelay The payment delay for cash flows.
+     * @param guess The period yield at which to start searching.
+     * @return The required rate of return divided by the number of periods per year.
+     */
+    public static double solve(double price, int daysToMaturity, double[] factors, double[] rates, int periodLength, int payDelay, double guess) {
+        checkArgs(daysToMaturity, factors, rates, periodLength);
+        return solve(price, daysToMaturity, factors, rates, periodLength, payDelay, guess, new double[2], null);
+    }
+
+    /**
+     * Solve for the yields of a batch of prices sharing one factor and rate schedule.  Each solve starts from the previous
+     * solution, so sorting the batch by days to maturity and price keeps the number of iterations per price small.
+     * @param count The number of yields to solve for, the arrays may be longer.
+     * @param daysToMaturity The number of days until maturity for each price, each must be >= 1.
+     * @param prices The prices, as returned by {@link Calc#price}.
+     * @param factors The factors for each period, see {@link Calc#price}.
+     * @param rates The effective coupon rates for each period, each having been divided by the number of periods per year.
+     * @param periodLength The length of a period.
+     * @param payDelay The payment delay for cash flows.
+     * @param periodYields The array in which to store the yields, each divided by the number of periods per year.
+     * @return The total number of iterations taken.
+     */
+    public static int solveInto(int count, int[] daysToMaturity, double[] prices, double[] factors, double[] rates, int periodLength, int payDelay, double[] periodYields) {
+        checkArgument(count >= 0 && daysToMaturity.length >= count && prices.length >= count && periodYields.length >= count,
+                "count (%s) <= daysToMaturity.length (%s), prices.length (%s) and periodYields.length (%s)",
+                count, daysToMaturity.length, prices.length, periodYields.length);
+        for (int i = 0; i < count; i++) {
+            checkArgs(daysToMaturity[i], factors, rates, periodLength);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        double[] scratch = new double[2];
+        int[] iterations = new int[1];
+        double guess = rates[firstPeriodIdx(daysToMaturity[0], factors, periodLength)];
+        for (int i = 0; i < count; i++) {
+            guess = solve(prices[i], daysToMaturity[i], factors, rates, periodLength, payDelay, guess, scratch, iterations);
+            periodYields[i] = guess;
+        }
+        return iterations[0];
+    }
+
+    private static void checkArgs(int daysToMaturity, double[] factors, double[] rates, int periodLength) {
+        checkArgument(daysToMaturity >= 1, "daysToMaturity (%s) >= 1", daysToMaturity);
+        int numCashFlows = (daysToMaturity + periodLength - 1) / periodLength;
+        checkArgument(factors.length >= numCashFlows, "factors.length (%s) >= # of future cash flows (%s)", factors.length, numCashFlows);
+        checkArgument(rates.length == factors.length, "rates.length (%s) == factors.length (%s)", rates.length, factors.length);
+    }
+
+    private static int firstPeriodIdx(int daysToMaturity, double[] factors, int periodLength) {
+        return factors.length - (daysToMaturity + periodLength - 1) / periodLength;
+    }
+
+    private static double solve(double price, int daysToMaturity, double[] factors, double[] rates, int periodLength, int payDelay, double guess, double[] scratch, int[] iterations) {
+        // As the yield goes to infinity the price goes to minus the accrued, and as it goes to -1 the price is unbounded.
+        int partialPeriod = daysToMaturity % periodLength;
+        double accrued = 0;
+        if (partialPeriod > 0) {
+            accrued = rates[firstPeriodIdx(daysToMaturity, factors, periodLength)] * ((double) (periodLength - partialPeriod) / periodLength);
+        }
+        checkArgument(price > -accrued, "price (%s) > -accrued (%s)", price, -accrued);
+
+        // The price is decreasing in the yield, so the solution is above lo and below hi.
+        double lo = -1;
+        double hi = Double.POSITIVE_INFINITY;
+        double y = guess > -1 ? guess : 0;
+        for (int i = 1; i <= MAX_ITERATIONS; i++) {
+            priceAndSlope(daysToMaturity, factors, rates, y, periodLength, payDelay, scratch);
+            double f = scratch[0] - price;
+            double slope = scratch[1];
+            if (f == 0) {
+                return done(y, i, iterations);
+            }
+            if (f > 0) {
+                lo = y;
+            } else {
+                hi = y;
+            }
+
+            double next = y - f / slope;
+            if (!(next > lo && next < hi)) {
+                next = hi == Double.POSITIVE_INFINITY ? lo + Math.max(1, 2 * Math.abs(lo)) : (lo + hi) / 2;
+            }
+            if (Math.abs(next - y) <= YIELD_TOLERANCE * Math.max(1, Math.abs(y))) {
+                return done(next, i, iterations);
+            }
+            y = next;
+        }
+        throw new IllegalStateException("No yield found for price " + price + " after " + MAX_ITERATIONS + " iterations.");
+    }
+
+    private static double done(double y, int iterationsTaken, int[] iterations) {
+        if (iterations != null) {
+            iterations[0] += iterationsTaken;
+        }
+        return y;
+    }
+
+    /**
+     * Calculate the price as {@link Calc#price} does, along with its derivative with respect to the period yield.
+     * @param result Receives the price at index 0 and the derivative at index 1.
+     * @see Risk#derivatives
+     */
+    static void priceAndSlope(int daysToMaturity, double[] factors, double rates[], double periodYield, int periodLength, int payDelay, double[] result) {
+        Risk.derivatives(daysToMaturity, factors, rates, periodYield, periodLength, payDelay, result);
+    }
+}
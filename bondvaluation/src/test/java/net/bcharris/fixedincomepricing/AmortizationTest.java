@@ -0,0 +1,193 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AmortizationTest {
+
+    private static class Recorder implements Amortization.Sink {
+
+        final List<double[]> entries = new ArrayList<double[]>();
+        final List<double[]> couponDates = new ArrayList<double[]>();
+        double interest;
+        double accretion;
+
+        @Override
+        public void entry(int position, int daysToMaturity, double face, double bookValue, double interest, double accretion) {
+            entries.add(new double[]{position, daysToMaturity, face, bookValue, interest, accretion});
+            this.interest += interest;
+            this.accretion += accretion;
+        }
+
+        @Override
+        public void couponDate(int position, int daysToMaturity, double priceBefore, double priceAfter, double unexplainedIncome) {
+            couponDates.add(new double[]{position, daysToMaturity, priceBefore, priceAfter, unexplainedIncome});
+        }
+    }
+
+    /**
+     * Marks to market as it records, at a new yield and period length each time, as a sink valuing a book might.
+     */
+    private static class PricingRecorder extends Recorder {
+
+        private final double[] factors = {1, 1, 1, 1};
+        private final double[] rates = {.01, .01, .01, .01};
+        private int calls;
+        double marks;
+
+        @Override
+        public void entry(int position, int daysToMaturity, double face, double bookValue, double interest, double accretion) {
+            mark();
+            super.entry(position, daysToMaturity, face, bookValue, interest, accretion);
+        }
+
+        @Override
+        public void couponDate(int position, int daysToMaturity, double priceBefore, double priceAfter, double unexplainedIncome) {
+            mark();
+            super.couponDate(position, daysToMaturity, priceBefore, priceAfter, unexplainedIncome);
+        }
+
+        private void mark() {
+            calls++;
+            marks += Calc.price(100, factors, rates, .001 + calls * 1e-7, calls % 2 == 0 ? 30 : 180, calls % 3);
+        }
+    }
+
+    private static double[] rates(int periods, double periodCoupon) {
+        double[] rates = new double[periods];
+        Arrays.fill(rates, periodCoupon);
+        return rates;
+    }
+
+    @Test
+    public void test_book_follows_price_curve_without_delay() throws GenerationException {
+        double[] factors = new double[60];
+        FactorModels.levelPayment(6).generate(factors, 12);
+        double[] rates = rates(60, .06 / 12);
+        double price = Calc.price(1795, factors, rates, .04 / 12, 30, 0);
+        Recorder recorder = new Recorder();
+        double periodYield = Amortization.amortize(0, price, 1795, factors, rates, 30, 0, Amortization.Frequency.DAILY, recorder);
+        assertEquals(.04 / 12, periodYield, 1e-12);
+
+        assertEquals(1796, recorder.entries.size());
+        for (double[] entry : recorder.entries) {
+            int days = (int) entry[1];
+            if (days > 0) {
+                double face = factors[factors.length - (days + 29) / 30];
+                assertEquals(face, entry[2], 0);
+                assertEquals(Calc.price(days, factors, rates, periodYield, 30, 0) * face, entry[3], 1e-12);
+            }
+        }
+        assertEquals(price * factors[0], recorder.entries.get(0)[3], 1e-12);
+        double[] last = recorder.entries.get(recorder.entries.size() - 1);
+        assertEquals(0, last[1], 0);
+        assertEquals(0, last[2], 0);
+        assertEquals(0, last[3], 0);
+
+        // A premium bond amortizes its premium down to the face repaid.
+        assertTrue(recorder.accretion < 0);
+        assertEquals(-(price - 1) * factors[0], recorder.accretion, 1e-12);
+        double coupons = 0;
+        for (int i = 0; i < factors.length; i++) {
+            coupons += factors[i] * rates[i];
+        }
+        double accruedAtPurchase = factors[0] * rates[0] * (30 - 1795 % 30) / 30.0;
+        assertEquals(coupons - accruedAtPurchase, recorder.interest, 1e-12);
+
+        assertEquals(60, recorder.couponDates.size());
+        for (double[] couponDate : recorder.couponDates) {
+            assertEquals(0, couponDate[4], 1e-15);
+        }
+        assertEquals(1, recorder.couponDates.get(59)[3], 0);
+    }
+
+    @Test
+    public void test_payment_delay_breaks_constant_yield_on_coupon_dates() {
+        double[] factors = {1, 1, 1, 1};
+        double[] rates = rates(4, .05 / 4);
+        Recorder recorder = new Recorder();
+        Amortization.amortize(3, 1, 360, factors, rates, 90, 24, Amortization.Frequency.DAILY, recorder);
+        assertEquals(4, recorder.couponDates.size());
+        for (double[] couponDate : recorder.couponDates) {
+            assertEquals(3, couponDate[0], 0);
+            assertTrue(couponDate[4] > 1e-6);
+        }
+        double[] maturity = recorder.couponDates.get(3);
+        assertEquals(0, maturity[1], 0);
+        assertTrue(Math.abs(maturity[2] - 1) > 1e-4);
+        assertEquals(1, maturity[3], 0);
+        // The price the day before a coupon date is the curve's.
+        double[] first = recorder.couponDates.get(0);
+        assertEquals(270, first[1], 0);
+        double periodYield = YieldSolver.solve(1, 360, factors, rates, 90, 24);
+        assertEquals(Calc.price(271, factors, rates, periodYield, 90, 24), first[2], 1e-12);
+        assertEquals(Calc.price(270, factors, rates, periodYield, 90, 24), first[3], 1e-12);
+    }
+
+    @Test
+    public void test_periodic_matches_daily() throws GenerationException {
+        double[] factors = new double[40];
+        FactorModels.cpr(10).generate(factors, 4);
+        double[] rates = rates(40, .055 / 4);
+        Recorder daily = new Recorder();
+        Recorder periodic = new Recorder();
+        Amortization.amortize(0, .97, 3550, factors, rates, 90, 14, Amortization.Frequency.DAILY, daily);
+        Amortization.amortize(0, .97, 3550, factors, rates, 90, 14, Amortization.Frequency.PERIODIC, periodic);
+        assertEquals(41, periodic.entries.size());
+        assertEquals(daily.interest, periodic.interest, 1e-12);
+        assertEquals(daily.accretion, periodic.accretion, 1e-12);
+        assertEquals(daily.couponDates.size(), periodic.couponDates.size());
+        for (int i = 0; i < daily.couponDates.size(); i++) {
+            for (int j = 0; j < 5; j++) {
+                assertEquals(daily.couponDates.get(i)[j], periodic.couponDates.get(i)[j], 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void test_portfolio_positions_are_bonds_at_their_yields() {
+        double[] factors = {1, .8, .5};
+        double[] rates = rates(3, .06 / 12);
+        Portfolio portfolio = new Portfolio.Builder()
+                .add(75, .05 / 12, 30, 0, factors, rates)
+                .add(40, .07 / 12, 30, 10, factors, rates)
+                .build();
+        Recorder fromPortfolio = new Recorder();
+        Amortization.amortize(portfolio, Amortization.Frequency.PERIODIC, fromPortfolio);
+        Recorder separately = new Recorder();
+        Amortization.amortize(0, portfolio.price(0), 75, factors, rates, 30, 0, Amortization.Frequency.PERIODIC, separately);
+        Amortization.amortize(1, portfolio.price(1), 40, factors, rates, 30, 10, Amortization.Frequency.PERIODIC, separately);
+        assertEquals(separately.entries.size(), fromPortfolio.entries.size());
+        for (int i = 0; i < separately.entries.size(); i++) {
+            for (int j = 0; j < 6; j++) {
+                assertEquals(separately.entries.get(i)[j], fromPortfolio.entries.get(i)[j], 1e-10);
+            }
+        }
+        assertEquals(0, fromPortfolio.entries.get(0)[0], 0);
+        assertEquals(1, fromPortfolio.entries.get(fromPortfolio.entries.size() - 1)[0], 0);
+    }
+
+    @Test
+    public void test_sink_pricing_does_not_change_the_schedule() throws GenerationException {
+        double[] factors = new double[334];
+        FactorModels.levelPayment(5).generate(factors, 12);
+        double[] rates = rates(334, .055 / 12);
+        Recorder plain = new Recorder();
+        Amortization.amortize(0, 1.02, 10000, factors, rates, 30, 14, Amortization.Frequency.DAILY, plain);
+        PricingRecorder pricing = new PricingRecorder();
+        Amortization.amortize(0, 1.02, 10000, factors, rates, 30, 14, Amortization.Frequency.DAILY, pricing);
+        assertEquals(10001, pricing.entries.size());
+        for (int i = 0; i < plain.entries.size(); i++) {
+            assertTrue("entry " + i, Arrays.equals(plain.entries.get(i), pricing.entries.get(i)));
+        }
+        assertEquals(plain.couponDates.size(), pricing.couponDates.size());
+        for (int i = 0; i < plain.couponDates.size(); i++) {
+            assertTrue("coupon date " + i, Arrays.equals(plain.couponDates.get(i), pricing.couponDates.get(i)));
+        }
+        assertTrue(pricing.marks > 0);
+    }
+}
@@ -0,0 +1,99 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BatchCalcTest {
+
+    private static final int PERIODS = 360;
+
+    /**
+     * The kernels this JVM has: always the scalar one, and each vector width when the Vector API is available.
+     */
+    private static List<BatchCalc> kernels() {
+        List<BatchCalc> kernels = new ArrayList<BatchCalc>();
+        kernels.add(BatchCalc.scalar());
+        kernels.add(BatchCalc.get());
+        try {
+            for (int lanes : new int[]{2, 4, 8}) {
+                kernels.add(BatchCalc.vector(lanes));
+            }
+        } catch (UnsupportedOperationException e) {
+            // Not built with the vector profile, or run without the module.
+        }
+        return kernels;
+    }
+
+    /**
+     * Bonds with random yields, coupons and declining factors, columnar.
+     */
+    private static void randomBonds(Random random, int count, double[] yields, double[] factors, double[] rates) {
+        for (int b = 0; b < count; b++) {
+            yields[b] = (.01 + random.nextDouble() * .09) / 12;
+            double rate = (.01 + random.nextDouble() * .09) / 12;
+            double factor = 1;
+            for (int p = 0; p < PERIODS; p++) {
+                factors[p * count + b] = factor;
+                rates[p * count + b] = rate;
+                factor *= 1 - random.nextDouble() * .02;
+            }
+        }
+    }
+
+    private static double calcPrice(int b, int count, int daysToMaturity, double[] yields, double[] factors, double[] rates, int payDelay) {
+        double[] bondFactors = new double[PERIODS];
+        double[] bondRates = new double[PERIODS];
+        for (int p = 0; p < PERIODS; p++) {
+            bondFactors[p] = factors[p * count + b];
+            bondRates[p] = rates[p * count + b];
+        }
+        return Calc.price(daysToMaturity, bondFactors, bondRates, yields[b], 30, payDelay);
+    }
+
+    @Test
+    public void test_every_kernel_matches_calc_to_the_bit() {
+        Random random = new Random(42);
+        // More than a tile, leaving a remainder after whole vectors of every width.
+        int count = BatchCalc.TILE + 13;
+        double[] yields = new double[count];
+        double[] factors = new double[count * PERIODS];
+        double[] rates = new double[count * PERIODS];
+        double[] prices = new double[count];
+        randomBonds(random, count, yields, factors, rates);
+        for (BatchCalc kernel : kernels()) {
+            for (int daysToMaturity : new int[]{1, 29, 30, 31, 1234, 3600, PERIODS * 30}) {
+                for (int payDelay : new int[]{0, 24}) {
+                    kernel.price(count, daysToMaturity, yields, factors, rates, PERIODS, 30, payDelay, prices);
+                    for (int b = 0; b < count; b++) {
+                        double expected = calcPrice(b, count, daysToMaturity, yields, factors, rates, payDelay);
+                        assertEquals(kernel.lanes() + " lanes, " + daysToMaturity + " days, bond " + b,
+                                Double.doubleToLongBits(expected), Double.doubleToLongBits(prices[b]));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_empty_batch() {
+        BatchCalc.get().price(0, 30, new double[0], new double[0], new double[0], 1, 30, 0, new double[0]);
+    }
+
+    @Test
+    public void test_scalar_is_one_lane() {
+        assertEquals(1, BatchCalc.scalar().lanes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_too_few_periods_rejected() {
+        BatchCalc.get().price(1, 61, new double[1], new double[2], new double[2], 2, 30, 0, new double[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_short_factors_rejected() {
+        BatchCalc.get().price(2, 30, new double[2], new double[3], new double[4], 2, 30, 0, new double[2]);
+    }
+}
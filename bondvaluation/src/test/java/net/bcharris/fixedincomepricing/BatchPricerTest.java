@@ -0,0 +1,123 @@
+package net.bcharris.fixedincomepricing;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BatchPricerTest {
+
+    private static String[] run(String input, String... args) throws Exception {
+        BatchPricer.Options options = BatchPricer.parseArgs(args);
+        options.blockSize = 7;
+        options.threads = 3;
+        StringWriter out = new StringWriter();
+        BatchPricer.run(new BufferedReader(new StringReader(input)), out, options);
+        return out.toString().split("\n", -1);
+    }
+
+    private static double[] constantSchedule(int periods, double value) {
+        double[] values = new double[periods];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    @Test
+    public void test_prices_in_input_order() throws Exception {
+        StringBuilder input = new StringBuilder("id,daysToMaturity,coupon,couponsPerYear,yield,paymentDelay\n");
+        for (int i = 0; i < 100; i++) {
+            input.append(i).append(',').append(30 + i * 97).append(",5,12,").append(3 + i * .05).append(",14\n");
+        }
+        String[] lines = run(input.toString());
+        assertEquals("id,price,error", lines[0]);
+        for (int i = 0; i < 100; i++) {
+            List<String> fields = BatchPricer.split(lines[i + 1], ',');
+            int days = 30 + i * 97;
+            int periods = (days + 29) / 30;
+            double expected = Calc.price(days, constantSchedule(periods, 1), constantSchedule(periods, .05 / 12),
+                    (3 + i * .05) * .01 / 12, 30, 14);
+            assertEquals(String.valueOf(i), fields.get(0));
+            assertEquals(expected, Double.parseDouble(fields.get(1)), 0);
+            assertEquals("", fields.get(2));
+        }
+        assertEquals("", lines[101]);
+    }
+
+    @Test
+    public void test_yields_and_risk_from_tab_separated_prices() throws Exception {
+        String[] lines = run("price\tdaysToMaturity\tcoupon\tcouponsPerYear\tfactors\n"
+                + ".985\t3600\t4\t2\t\"cpr(6)\"\n", "--yield", "--risk");
+        assertEquals("price\tyield\tmodifiedDuration\tconvexity\tdv01\terror", lines[0]);
+        List<String> fields = BatchPricer.split(lines[1], '\t');
+        double yield = Double.parseDouble(fields.get(1));
+        double[] factors = new double[20];
+        FactorModels.cpr(6).generate(factors, 2);
+        double[] rates = constantSchedule(20, .02);
+        assertEquals(.985, Calc.price(3600, factors, rates, yield * .01 / 2, 180, 0), 1e-9);
+
+        double up = Calc.price(3600, factors, rates, (yield + .01) * .01 / 2, 180, 0);
+        double down = Calc.price(3600, factors, rates, (yield - .01) * .01 / 2, 180, 0);
+        // Central differences are off by a few parts in ten million from convexity.
+        assertEquals((down - up) / 2, Double.parseDouble(fields.get(4)), 1e-6);
+        assertEquals((down - up) / 2 / .985 / .0001, Double.parseDouble(fields.get(2)), 1e-4);
+    }
+
+    @Test
+    public void test_bad_rows_report_errors_and_continue() throws Exception {
+        String[] lines = run("daysToMaturity,coupon,couponsPerYear,yield,factors\n"
+                + "360,5,12,4,\"(periods - period) / periods\"\n"
+                + "360,5,12,4,1.5\n"
+                + "abc,5,12,4,1\n"
+                + "360,5,12,4,\n");
+        assertEquals("", BatchPricer.split(lines[1], ',').get(1));
+        assertTrue(lines[2].startsWith(",\""));
+        assertEquals(FactorModels.validate(new double[]{1.5}), BatchPricer.split(lines[2], ',').get(1));
+        assertTrue(lines[3].startsWith(",\""));
+        // An empty factor script means factors of 1.
+        assertEquals("", BatchPricer.split(lines[4], ',').get(1));
+        assertFalse("".equals(BatchPricer.split(lines[4], ',').get(0)));
+    }
+
+    @Test
+    public void test_runaway_factor_script_fails_its_rows() throws Exception {
+        StringBuilder input = new StringBuilder("daysToMaturity,coupon,couponsPerYear,yield,factors\n");
+        for (int i = 0; i < 20; i++) {
+            input.append(i % 2 == 0 ? "360,5,12,4,1\n" : "360,5,12,4,\"while (true) {}; 1\"\n");
+        }
+        String[] lines = run(input.toString(), "--script-budget", "50");
+        for (int i = 0; i < 20; i++) {
+            List<String> fields = BatchPricer.split(lines[i + 1], ',');
+            if (i % 2 == 0) {
+                assertEquals("", fields.get(1));
+            } else {
+                assertEquals("", fields.get(0));
+                assertTrue(fields.get(1), fields.get(1).contains("budget of 50 ms"));
+            }
+        }
+    }
+
+    @Test
+    public void test_overlong_schedules_fail_their_rows() throws Exception {
+        String[] lines = run("daysToMaturity,coupon,couponsPerYear,yield\n"
+                + "2000000000,5,360,4\n"
+                + "360,5,12,4\n"
+                + "2147483647,5,1,4\n");
+        assertTrue(lines[1], BatchPricer.split(lines[1], ',').get(1).contains("daysToMaturity must be at most " + PricingServer.MAX_CASH_FLOWS));
+        assertEquals("", BatchPricer.split(lines[2], ',').get(1));
+        assertTrue(lines[3], BatchPricer.split(lines[3], ',').get(1).contains("daysToMaturity must be at most"));
+    }
+
+    @Test
+    public void test_stats_unless_quiet() {
+        assertFalse(BatchPricer.parseArgs(new String[0]).quiet);
+        assertTrue(BatchPricer.parseArgs(new String[]{"--quiet"}).quiet);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_missing_column() throws Exception {
+        run("daysToMaturity,coupon,yield\n360,5,4\n");
+    }
+}
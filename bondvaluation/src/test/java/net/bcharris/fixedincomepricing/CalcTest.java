@@ -0,0 +1,84 @@
+package net.bcharris.fixedincomepricing;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class CalcTest {
+
+    private static final int PERIODS = 360;
+    private static final int PERIOD_LENGTH = 30;
+
+    private static double[] factors() {
+        double[] factors = new double[PERIODS];
+        for (int i = 0; i < PERIODS; i++) {
+            factors[i] = (double) (PERIODS - i) / PERIODS;
+        }
+        return factors;
+    }
+
+    private static double[] rates() {
+        double[] rates = new double[PERIODS];
+        Arrays.fill(rates, .045 / 12);
+        return rates;
+    }
+
+    @Test
+    public void test_price_into_matches_price() {
+        double[] factors = factors();
+        double[] rates = rates();
+        int count = 1000;
+        int[] days = new int[count + 5];
+        double[] yields = new double[count + 5];
+        double[] prices = new double[count + 5];
+        for (int i = 0; i < count; i++) {
+            days[i] = 1 + (i * 7919) % (PERIODS * PERIOD_LENGTH);
+            yields[i] = (.01 + i * .0001) / 12;
+        }
+        Calc.priceInto(count, days, yields, factors, rates, PERIOD_LENGTH, 14, prices);
+        for (int i = 0; i < count; i++) {
+            assertEquals("i=" + i, Calc.price(days[i], factors, rates, yields[i], PERIOD_LENGTH, 14), prices[i], 0);
+        }
+        assertEquals(0, prices[count], 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_price_into_rejects_days_beyond_factors() {
+        Calc.priceInto(2, new int[]{30, PERIODS * PERIOD_LENGTH + 1}, new double[2], factors(), rates(), PERIOD_LENGTH, 0, new double[2]);
+    }
+
+    @Test
+    public void test_price_into_does_not_allocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        double[] factors = factors();
+        double[] rates = rates();
+        int count = 500;
+        int[] days = new int[count];
+        double[] yields = new double[count];
+        double[] prices = new double[count];
+        for (int i = 0; i < count; i++) {
+            days[i] = 1 + (i * 131) % (PERIODS * PERIOD_LENGTH);
+            yields[i] = .04 / 12;
+        }
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < 200; i++) {
+            Calc.priceInto(count, days, yields, factors, rates, PERIOD_LENGTH, 14, prices);
+        }
+        threadBean.getThreadAllocatedBytes(threadId);
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 200; i++) {
+            Calc.priceInto(count, days, yields, factors, rates, PERIOD_LENGTH, 14, prices);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        // Leave room for the measurement itself, 200 batches of boxed checks would be hundreds of kilobytes.
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
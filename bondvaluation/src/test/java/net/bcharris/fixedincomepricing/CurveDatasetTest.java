@@ -0,0 +1,81 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CurveDatasetTest {
+
+    private static CurveDataset priceCurve(int days) {
+        double[] factors = new double[(days + 29) / 30];
+        double[] rates = new double[factors.length];
+        Arrays.fill(factors, 1);
+        Arrays.fill(rates, .06 / 12);
+        double[] x = new double[days];
+        double[] y = new double[days];
+        PriceCurve.price(1, factors, rates, .04 / 12, 30, 0, y);
+        for (int i = 0; i < days; i++) {
+            x[i] = i + 1;
+        }
+        return new CurveDataset("price", x, y);
+    }
+
+    @Test
+    public void test_keeps_ends_and_coupon_jumps() {
+        CurveDataset dataset = priceCurve(3600);
+        dataset.decimate(0, 3601, 360);
+        assertEquals(360, dataset.getItemCount(0));
+        assertEquals(1, dataset.getXValue(0, 0), 0);
+        assertEquals(3600, dataset.getXValue(0, 359), 0);
+        // The price falls by the coupon on each coupon date, so one side of every jump is kept.
+        double previous = 0;
+        int coupons = 0;
+        for (int i = 0; i < dataset.getItemCount(0); i++) {
+            double x = dataset.getXValue(0, i);
+            assertTrue(x > previous);
+            if (x % 30 == 0 || x % 30 == 1) {
+                coupons++;
+            }
+            previous = x;
+        }
+        assertTrue(String.valueOf(coupons), coupons >= 120);
+    }
+
+    @Test
+    public void test_zooming_redecimates_visible_range() {
+        CurveDataset dataset = priceCurve(36000);
+        assertEquals(CurveDataset.DEFAULT_MAX_POINTS, dataset.getItemCount(0));
+        dataset.decimate(100.5, 200.5, 1000);
+        // Every visible day, plus one either side.
+        assertEquals(102, dataset.getItemCount(0));
+        assertEquals(100, dataset.getXValue(0, 0), 0);
+        assertEquals(201, dataset.getXValue(0, 101), 0);
+        dataset.decimate(100, 200, 1000);
+        assertEquals(99, dataset.getXValue(0, 0), 0);
+        assertEquals(201, dataset.getXValue(0, 102), 0);
+        assertEquals(36000, dataset.getDomainUpperBound(false), 0);
+    }
+
+    @Test
+    public void test_small_curves_are_not_decimated() {
+        int[] selected = new int[10];
+        double[] values = {1, 2, 3, 4, 5};
+        assertEquals(5, CurveDataset.largestTriangleThreeBuckets(values, values, 0, 5, 10, selected));
+        assertEquals(4, selected[4]);
+        assertEquals(0, new CurveDataset("empty", new double[0], new double[0]).getItemCount(0));
+    }
+
+    @Test
+    public void test_spike_is_kept() {
+        double[] x = new double[10000];
+        double[] y = new double[10000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+        }
+        y[4321] = 1;
+        int[] selected = new int[50];
+        int count = CurveDataset.largestTriangleThreeBuckets(x, y, 0, x.length, 50, selected);
+        assertEquals(50, count);
+        assertTrue(Arrays.binarySearch(selected, 4321) >= 0);
+    }
+}
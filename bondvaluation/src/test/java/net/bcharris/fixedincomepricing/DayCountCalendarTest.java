@@ -0,0 +1,135 @@
+package net.bcharris.fixedincomepricing;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import net.bcharris.fixedincomepricing.DayCountCalendar.DayCount;
+import net.bcharris.fixedincomepricing.DayCountCalendar.Terms;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DayCountCalendarTest {
+
+    private final DayCountCalendar calendar = new DayCountCalendar(LocalDate.of(2019, 1, 1), LocalDate.of(2031, 12, 31),
+            Collections.singleton(LocalDate.of(2020, 12, 25)));
+
+    private static int day(int year, int month, int dayOfMonth) {
+        return (int) LocalDate.of(year, month, dayOfMonth).toEpochDay();
+    }
+
+    @Test
+    public void test_thirty_e_360_monthly_bond_matches_day_based_terms() {
+        Terms terms = calendar.schedule(day(2020, 1, 15), day(2030, 1, 1), 12, DayCount.THIRTY_E_360, .05, 0, null);
+        assertEquals(30, terms.periodLength());
+        assertEquals(120, terms.periods());
+        assertEquals(119 * 30 + 16, terms.daysToMaturity());
+        assertEquals(day(2020, 2, 1), terms.nextCouponDate());
+        // 2020-02-01 is a Saturday.
+        assertEquals(2, terms.payDelay());
+        double[] rates = new double[120];
+        Arrays.fill(rates, .05 / 12);
+        for (int i = 0; i < rates.length; i++) {
+            assertEquals(rates[i], terms.rates()[i], 1e-15);
+        }
+        double[] factors = new double[120];
+        Arrays.fill(factors, 1);
+        assertEquals(Calc.price(3586, factors, rates, .05 / 12, 30, 2),
+                Calc.price(terms.daysToMaturity(), factors, terms.rates(), .05 / 12, terms.periodLength(), terms.payDelay()), 1e-12);
+    }
+
+    @Test
+    public void test_actual_actual_period_is_actual_days_and_payment_moves_to_business_day() {
+        Terms terms = calendar.schedule(day(2020, 8, 1), day(2030, 5, 15), 2, DayCount.ACTUAL_ACTUAL, .05, 3, null);
+        assertEquals(184, terms.periodLength());
+        assertEquals(20, terms.periods());
+        assertEquals(19 * 184 + 106, terms.daysToMaturity());
+        for (double rate : terms.rates()) {
+            assertEquals(.025, rate, 0);
+        }
+        // 2020-11-15 is a Sunday.
+        assertEquals(day(2020, 11, 16), terms.nextPaymentDate());
+        assertEquals(4, terms.payDelay());
+    }
+
+    @Test
+    public void test_actual_360_rates_follow_period_lengths() {
+        Terms terms = calendar.schedule(day(2021, 3, 1), day(2023, 1, 20), 4, DayCount.ACTUAL_360, .04, 0, null);
+        assertEquals(8, terms.periods());
+        LocalDate start = LocalDate.of(2021, 1, 20);
+        for (int i = 0; i < terms.periods(); i++) {
+            LocalDate end = start.plusMonths(3);
+            assertEquals(.04 * ChronoUnit.DAYS.between(start, end) / 360, terms.rates()[i], 1e-15);
+            start = end;
+        }
+        assertEquals(LocalDate.of(2023, 1, 20), start);
+        assertEquals(ChronoUnit.DAYS.between(LocalDate.of(2021, 1, 20), LocalDate.of(2021, 4, 20)), terms.periodLength());
+    }
+
+    @Test
+    public void test_month_end_maturity_rolls_to_month_ends() {
+        Terms terms = calendar.schedule(day(2020, 2, 10), day(2030, 6, 30), 2, DayCount.ACTUAL_365, .05, 0, null);
+        assertEquals(day(2020, 6, 30), terms.nextCouponDate());
+        assertEquals(day(2020, 6, 30) - day(2019, 12, 31), terms.periodLength());
+        assertEquals(.05 * (day(2020, 6, 30) - day(2019, 12, 31)) / 365, terms.rates()[0], 1e-15);
+        assertEquals(.05 * (day(2020, 12, 31) - day(2020, 6, 30)) / 365, terms.rates()[1], 1e-15);
+    }
+
+    @Test
+    public void test_settlement_on_coupon_date_leaves_a_full_period() {
+        Terms terms = calendar.schedule(day(2020, 5, 15), day(2030, 5, 15), 2, DayCount.ACTUAL_ACTUAL, .05, 0, null);
+        assertEquals(20, terms.periods());
+        assertEquals(day(2020, 11, 15), terms.nextCouponDate());
+        assertEquals(20 * terms.periodLength(), terms.daysToMaturity());
+    }
+
+    @Test
+    public void test_terms_are_reused() {
+        Terms terms = calendar.schedule(day(2020, 1, 15), day(2030, 1, 1), 12, DayCount.THIRTY_E_360, .05, 0, null);
+        double[] rates = terms.rates();
+        assertSame(terms, calendar.schedule(day(2020, 1, 20), day(2030, 1, 1), 12, DayCount.THIRTY_E_360, .06, 0, terms));
+        assertSame(rates, terms.rates());
+        assertEquals(.06 / 12, rates[0], 1e-15);
+    }
+
+    @Test
+    public void test_year_fractions() {
+        assertEquals(184 / 365.0 + 182 / 366.0, calendar.yearFraction(DayCount.ACTUAL_ACTUAL, day(2019, 7, 1), day(2020, 7, 1)), 1e-15);
+        assertEquals(29 / 360.0, calendar.yearFraction(DayCount.THIRTY_E_360, day(2020, 1, 31), day(2020, 2, 29)), 0);
+        assertEquals(366 / 360.0, calendar.yearFraction(DayCount.ACTUAL_360, day(2020, 1, 1), day(2021, 1, 1)), 0);
+        assertEquals(366 / 365.0, calendar.yearFraction(DayCount.ACTUAL_365, day(2020, 1, 1), day(2021, 1, 1)), 0);
+    }
+
+    @Test
+    public void test_business_day_adjustments() {
+        assertTrue(calendar.isBusinessDay(day(2020, 12, 24)));
+        assertFalse(calendar.isBusinessDay(day(2020, 12, 25)));
+        assertEquals(day(2020, 12, 28), calendar.following(day(2020, 12, 25)));
+        // 2020-05-30 is a Saturday, and the following business day is in June.
+        assertEquals(day(2020, 6, 1), calendar.following(day(2020, 5, 30)));
+        assertEquals(day(2020, 5, 29), calendar.modifiedFollowing(day(2020, 5, 30)));
+        assertEquals(day(2020, 12, 28), calendar.modifiedFollowing(day(2020, 12, 26)));
+    }
+
+    @Test
+    public void test_epoch_day_from_tables() {
+        assertEquals(day(2024, 2, 29), calendar.epochDay(2024, 2, 29));
+        assertEquals(day(2019, 1, 1), calendar.epochDay(2019, 1, 1));
+        assertEquals(day(2031, 12, 31), calendar.epochDay(2031, 12, 31));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_epoch_day_rejects_invalid_date() {
+        calendar.epochDay(2023, 2, 29);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_maturity_after_calendar_rejected() {
+        calendar.schedule(day(2020, 1, 15), day(2032, 1, 1), 12, DayCount.THIRTY_E_360, .05, 0, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_coupon_period_before_calendar_rejected() {
+        calendar.schedule(day(2019, 1, 10), day(2025, 6, 1), 2, DayCount.ACTUAL_ACTUAL, .05, 0, null);
+    }
+}
@@ -0,0 +1,98 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DiscountTableTest {
+
+    @Test
+    public void test_discounts_match_pow() {
+        DiscountTable table = DiscountTable.get(.05 / 12, 30, 14);
+        assertEquals(1 / (1 + .05 / 12), table.periodDiscount, 0);
+        assertEquals(1 / Math.pow(1 + .05 / 12, 14.0 / 30), table.delayDiscount, 0);
+        for (int day = 1; day < 30; day++) {
+            assertEquals(1 / Math.pow(1 + .05 / 12, day / 30.0), table.partialDiscount(day), 0);
+        }
+        assertEquals(1, DiscountTable.get(.05 / 12, 30, 0).delayDiscount, 0);
+    }
+
+    @Test
+    public void test_tables_are_reused_and_bounded() {
+        DiscountTable table = DiscountTable.get(.04 / 12, 30, 0);
+        assertSame(table, DiscountTable.get(.04 / 12, 30, 0));
+        assertEquals(1, DiscountTable.get(.04 / 12, 30, 1).payDelay);
+        assertEquals(180, DiscountTable.get(.04 / 12, 180, 0).periodLength);
+        for (int i = 0; i < 10 * DiscountTable.MAX_TABLES; i++) {
+            DiscountTable.get(i * 1e-5, 30, 0);
+        }
+        // Thousands of keys spread over every slot, and evict the older tables.
+        assertEquals(DiscountTable.MAX_TABLES, DiscountTable.size());
+        DiscountTable again = DiscountTable.get(.04 / 12, 30, 0);
+        assertEquals(1 / (1 + .04 / 12), again.periodDiscount, 0);
+        assertEquals(1 / Math.pow(1 + .04 / 12, 7 / 30.0), again.partialDiscount(7), 0);
+        assertSame(again, DiscountTable.get(.04 / 12, 30, 0));
+    }
+
+    @Test
+    public void test_yields_sharing_a_slot_reset_the_table() throws InterruptedException {
+        final double first = .05 / 12;
+        double other = first;
+        do {
+            other += 1e-7;
+        } while (DiscountTable.slot(other, 30, 14) != DiscountTable.slot(first, 30, 14));
+        final double second = other;
+        final double[] factors = {1, .9, .8, .7, .6, .5};
+        final double[] rates = {.005, .005, .005, .005, .005, .005};
+        // Prices from threads whose caches only ever hold one of the yields.
+        final double[] yields = {first, second};
+        final double[][] expected = new double[2][180];
+        for (int k = 0; k < 2; k++) {
+            final int yield = k;
+            Thread thread = new Thread() {
+
+                @Override
+                public void run() {
+                    for (int days = 1; days <= 180; days++) {
+                        expected[yield][days - 1] = Calc.price(days, factors, rates, yields[yield], 30, 14);
+                    }
+                }
+            };
+            thread.start();
+            thread.join();
+        }
+
+        DiscountTable table = DiscountTable.get(first, 30, 14);
+        for (int i = 0; i < 100; i++) {
+            double yield = yields[1 - i % 2];
+            int generation = table.generation;
+            assertSame(table, DiscountTable.get(yield, 30, 14));
+            assertTrue(table.generation != generation);
+            assertEquals(yield, table.periodYield, 0);
+            assertEquals(1 / Math.pow(1 + yield, 14 / 30.0), table.delayDiscount, 0);
+            for (int day = 1; day < 30; day += 7) {
+                assertEquals(1 / Math.pow(1 + yield, day / 30.0), table.partialDiscount(day), 0);
+            }
+            int days = 1 + i * 7 % 180;
+            assertEquals(expected[1 - i % 2][days - 1], Calc.price(days, factors, rates, yield, 30, 14), 0);
+        }
+    }
+
+    @Test
+    public void test_threads_have_their_own_tables() throws InterruptedException {
+        final DiscountTable table = DiscountTable.get(.03 / 12, 30, 0);
+        double periodDiscount = table.periodDiscount;
+        final AtomicReference<DiscountTable> other = new AtomicReference<DiscountTable>();
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                other.set(DiscountTable.get(.03 / 12, 30, 0));
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotSame(table, other.get());
+        assertEquals(periodDiscount, other.get().periodDiscount, 0);
+    }
+}
@@ -0,0 +1,101 @@
+package net.bcharris.fixedincomepricing;
+
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FactorModelsTest {
+
+    private static double[] generate(FactorModel model, int periods, int periodsPerYear) throws GenerationException {
+        double[] values = new double[periods];
+        model.generate(values, periodsPerYear);
+        return values;
+    }
+
+    private static void assertSameSchedule(String nativeScript, String groovyScript, int periods, int periodsPerYear, double delta) throws GenerationException {
+        FactorModel nativeModel = FactorModels.parse(nativeScript);
+        assertFalse(nativeScript, nativeModel instanceof GroovyPeriodValueGenerator);
+        FactorModel groovyModel = FactorModels.parse(groovyScript);
+        assertTrue(groovyScript, groovyModel instanceof GroovyPeriodValueGenerator);
+        double[] expected = generate(groovyModel, periods, periodsPerYear);
+        double[] actual = generate(nativeModel, periods, periodsPerYear);
+        for (int i = 0; i < periods; i++) {
+            assertEquals(nativeScript + ", period " + i, expected[i], actual[i], delta);
+        }
+    }
+
+    @Test
+    public void test_native_models_match_groovy() throws GenerationException {
+        assertSameSchedule("return 0.9;", "0.9 + 0", 12, 12, 0);
+        // Groovy divides integers to 10 significant digits.
+        assertSameSchedule(" (periods - period) / periods ", "(periods-period)/periods + 0", 360, 12, 1e-10);
+        assertSameSchedule("cpr(6)", "cpr(6) + 0", 360, 12, 1e-13);
+        assertSameSchedule("psa(150)", "psa(150) * 1", 60, 2, 1e-13);
+        assertSameSchedule("levelPayment(4.5)", "levelPayment(4.5) + 0", 360, 12, 1e-13);
+        assertSameSchedule("levelPayment(0)", "levelPayment(0) + 0", 10, 1, 1e-15);
+    }
+
+    @Test
+    public void test_cpr() throws GenerationException {
+        double[] factors = generate(FactorModels.cpr(6), 13, 12);
+        assertEquals(1, factors[0], 0);
+        assertEquals(.94, factors[12], 1e-14);
+    }
+
+    @Test
+    public void test_psa_ramp() throws GenerationException {
+        double[] factors = generate(FactorModels.psa(100), 40, 12);
+        // The first period's prepayment uses month 1, 0.2% a year.
+        assertEquals(1 - FactorModels.periodPrepaymentRate(.2, 12), factors[1], 1e-15);
+        // From month 30 on it is 6% a year.
+        assertEquals(factors[35] * (1 - FactorModels.periodPrepaymentRate(6, 12)), factors[36], 1e-15);
+    }
+
+    @Test
+    public void test_level_payment() throws GenerationException {
+        double[] factors = generate(FactorModels.levelPayment(6), 360, 12);
+        assertEquals(1, factors[0], 1e-15);
+        // A 30 year 6% mortgage pays off about 7% of principal in the first five years.
+        assertEquals(.9305, factors[60], 1e-4);
+        for (int i = 1; i < factors.length; i++) {
+            assertTrue(factors[i] < factors[i - 1]);
+        }
+        assertTrue(factors[359] > 0);
+    }
+
+    @Test
+    public void test_level_payment_schedules_are_valid() throws GenerationException {
+        for (int rate = 1; rate <= 15; rate++) {
+            for (int periodsPerYear : new int[]{1, 2, 4, 12}) {
+                for (int periods = 1; periods <= 400; periods++) {
+                    double[] factors = generate(FactorModels.levelPayment(rate), periods, periodsPerYear);
+                    String schedule = rate + "% over " + periods + " periods, " + periodsPerYear + " a year";
+                    assertNull(schedule, FactorModels.validate(factors));
+                    assertEquals(schedule, 1, factors[0], 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_compositions_run_as_groovy() throws GenerationException {
+        FactorModel model = FactorModels.parse("levelPayment(4.5) * cpr(6)");
+        assertTrue(model instanceof GroovyPeriodValueGenerator);
+        double[] combined = generate(model, 24, 12);
+        double[] level = generate(FactorModels.levelPayment(4.5), 24, 12);
+        double[] cpr = generate(FactorModels.cpr(6), 24, 12);
+        for (int i = 0; i < combined.length; i++) {
+            assertEquals(level[i] * cpr[i], combined[i], 1e-14);
+        }
+    }
+
+    @Test
+    public void test_validate() {
+        assertNull(FactorModels.validate(new double[]{1, 1, .5, .25}));
+        assertNull(FactorModels.validate(new double[0]));
+        assertTrue(FactorModels.validate(new double[]{1, 1.5}).contains("greater than 1"));
+        assertTrue(FactorModels.validate(new double[]{1, 0}).contains("not greater than 0"));
+        assertTrue(FactorModels.validate(new double[]{1, Double.NaN}).contains("not greater than 0"));
+        assertTrue(FactorModels.validate(new double[]{.5, .75}).contains("increasing"));
+    }
+}
@@ -0,0 +1,69 @@
+package net.bcharris.fixedincomepricing;
+
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GroovyPeriodValueGeneratorTest {
+
+    private static double[] generate(String script, int periods) throws GenerationException {
+        double[] values = new double[periods];
+        new GroovyPeriodValueGenerator(script).generate(values);
+        return values;
+    }
+
+    private static void assertValues(double[] expected, double[] actual, double delta) {
+        assertEquals("length", expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("period " + i, expected[i], actual[i], delta);
+        }
+    }
+
+    @Test
+    public void test_help_examples() throws GenerationException {
+        assertValues(new double[]{1, 1, 1}, generate("1", 3), 0);
+        assertValues(new double[]{1, .5, 1 / 3.0}, generate("1/(period+1)", 3), 1e-10);
+        assertValues(new double[]{1, .1, .1}, generate("if (period==0) 1; else 0.1", 3), 0);
+        assertValues(new double[]{.5, 1 / 2.1, 1 / 2.2}, generate("if (period==0) x=2; else x+=0.1; return 1/x", 3), 1e-10);
+        assertValues(new double[]{1, .75, .5, .25}, generate("(periods-period)/periods", 4), 0);
+    }
+
+    @Test
+    public void test_state_does_not_leak_between_schedules() throws GenerationException {
+        GroovyPeriodValueGenerator generator = new GroovyPeriodValueGenerator("if (period==0) x=1; else x+=1; return x");
+        double[] values = new double[3];
+        generator.generate(values);
+        generator.generate(values);
+        assertValues(new double[]{1, 2, 3}, values, 0);
+    }
+
+    @Test
+    public void test_identical_scripts_compile_once() {
+        String script = "period * 0.001 + 0.5";
+        assertSame(ScriptCache.compile(script), ScriptCache.compile(script));
+        assertNotSame(ScriptCache.compile(script), ScriptCache.compile(script + " "));
+    }
+
+    @Test
+    public void test_cache_is_bounded() {
+        for (int i = 0; i < ScriptCache.MAX_SCRIPTS + 10; i++) {
+            ScriptCache.compile("period + " + i);
+        }
+        assertEquals(ScriptCache.MAX_SCRIPTS, ScriptCache.size());
+    }
+
+    @Test
+    public void test_string_result() throws GenerationException {
+        assertValues(new double[]{.25}, generate("'0.25'", 1), 0);
+    }
+
+    @Test(expected = GenerationException.class)
+    public void test_no_value() throws GenerationException {
+        generate("x = null", 1);
+    }
+
+    @Test(expected = GenerationException.class)
+    public void test_not_a_number() throws GenerationException {
+        generate("'abc'", 1);
+    }
+}
@@ -0,0 +1,30 @@
+package net.bcharris.fixedincomepricing;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void test_buckets_are_contiguous() {
+        for (int bucket = 0; bucket < 60 * 16; bucket++) {
+            long lower = LatencyHistogram.lowerBound(bucket);
+            assertEquals(bucket, LatencyHistogram.bucket(lower));
+            assertEquals(bucket, LatencyHistogram.bucket(LatencyHistogram.lowerBound(bucket + 1) - 1));
+        }
+    }
+
+    @Test
+    public void test_percentiles_within_bucket_width() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(10000, histogram.count());
+        assertEquals(5000000, histogram.percentile(50), 5000000 * .04);
+        assertEquals(9900000, histogram.percentile(99), 9900000 * .04);
+        histogram.reset();
+        assertEquals(0, histogram.count());
+    }
+}
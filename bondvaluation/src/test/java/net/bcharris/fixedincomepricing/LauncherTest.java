@@ -0,0 +1,31 @@
+package net.bcharris.fixedincomepricing;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import java.io.File;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LauncherTest {
+
+    @Test
+    public void test_price_command_runs_batch_pricer() throws Exception {
+        File input = File.createTempFile("launcher", ".csv");
+        File output = File.createTempFile("launcher", ".csv");
+        try {
+            Files.write("daysToMaturity,coupon,couponsPerYear,yield\n360,5,12,5\n", input, Charsets.UTF_8);
+            Launcher.main(new String[]{"price", "--input", input.getPath(), "--output", output.getPath()});
+            String[] lines = Files.toString(output, Charsets.UTF_8).split("\n");
+            assertEquals("price,error", lines[0]);
+            double[] factors = new double[12];
+            double[] rates = new double[12];
+            Arrays.fill(factors, 1);
+            Arrays.fill(rates, .05 / 12);
+            assertEquals(Calc.price(360, factors, rates, .05 / 12, 30, 0), Double.parseDouble(lines[1].split(",")[0]), 0);
+        } finally {
+            input.delete();
+            output.delete();
+        }
+    }
+}
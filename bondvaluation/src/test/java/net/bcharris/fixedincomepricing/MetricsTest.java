@@ -0,0 +1,67 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void test_disabled_by_default() {
+        assertFalse(Metrics.ENABLED);
+        assertNull(Metrics.get());
+        assertEquals(0, Metrics.start());
+        assertEquals(0, Metrics.allocatedBytes());
+        Metrics.stop(Metrics.Stage.PRICE, 0);
+    }
+
+    @Test
+    public void test_records_per_stage() {
+        Metrics metrics = new Metrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(Metrics.Stage.PRICE, i * 1000L, 0);
+        }
+        metrics.record(Metrics.Stage.SCRIPT_COMPILE, 5000000L, 1 << 20);
+        List<Metrics.StageStatistics> stages = metrics.getStages();
+        assertEquals(Metrics.Stage.values().length, stages.size());
+        Metrics.StageStatistics price = stages.get(Metrics.Stage.PRICE.ordinal());
+        assertEquals("PRICE", price.getStage());
+        assertEquals(100, price.getCount());
+        assertEquals(5050000, price.getTotalNanos());
+        assertEquals(50000, price.getP50Nanos(), 50000 * .04);
+        assertEquals(99000, price.getP99Nanos(), 99000 * .04);
+        assertEquals(0, price.getAllocatedBytes());
+        assertEquals(1 << 20, stages.get(Metrics.Stage.SCRIPT_COMPILE.ordinal()).getAllocatedBytes());
+        assertEquals(0, stages.get(Metrics.Stage.CHART_RENDER.ordinal()).getCount());
+
+        String summary = metrics.summary();
+        assertTrue(summary, summary.contains("PRICE"));
+        assertTrue(summary, summary.contains("SCRIPT_COMPILE"));
+        assertFalse(summary, summary.contains("CHART_RENDER"));
+
+        metrics.reset();
+        assertEquals(0, metrics.getStages().get(Metrics.Stage.PRICE.ordinal()).getCount());
+        assertEquals("", metrics.summary());
+    }
+
+    @Test
+    public void test_published_over_jmx() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        Metrics metrics = new Metrics();
+        metrics.register(server);
+        metrics.record(Metrics.Stage.SCRIPT_RUN, 2000, 64);
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        assertEquals(Boolean.FALSE, server.getAttribute(name, "Enabled"));
+        CompositeData[] stages = (CompositeData[]) server.getAttribute(name, "Stages");
+        CompositeData run = stages[Metrics.Stage.SCRIPT_RUN.ordinal()];
+        assertEquals("SCRIPT_RUN", run.get("stage"));
+        assertEquals(1L, run.get("count"));
+        assertEquals(64L, run.get("allocatedBytes"));
+        server.invoke(name, "reset", new Object[0], new String[0]);
+        assertEquals(0, metrics.getStages().get(Metrics.Stage.SCRIPT_RUN.ordinal()).getCount());
+    }
+}
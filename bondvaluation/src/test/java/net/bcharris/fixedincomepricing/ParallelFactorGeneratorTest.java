@@ -0,0 +1,92 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ParallelFactorGeneratorTest {
+
+    private static int[] fill(int count, int value) {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = value;
+        }
+        return values;
+    }
+
+    @Test
+    public void test_shared_model_matches_sequential() throws GenerationException {
+        // The script keeps state across periods, so schedules interfering with each other would show.
+        FactorModel model = FactorModels.parse("if (period==0) x=1; else x*=0.99; return x * (periods-period)/periods");
+        FactorModel[] models = new FactorModel[100];
+        int[] periods = new int[models.length];
+        for (int i = 0; i < models.length; i++) {
+            models[i] = i % 3 == 0 ? FactorModels.cpr(6) : model;
+            periods[i] = 10 + i * 3;
+        }
+        String[] errors = new String[models.length];
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            double[][] schedules = new ParallelFactorGenerator(10000, pool).generate(models, periods, fill(models.length, 12), errors);
+            for (int i = 0; i < models.length; i++) {
+                double[] expected = new double[periods[i]];
+                models[i].generate(expected, 12);
+                assertNull(errors[i]);
+                assertEquals(Arrays.toString(expected), Arrays.toString(schedules[i]));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void test_runaway_scripts_fail_alone() {
+        FactorModel[] models = {
+            FactorModels.parse("1"),
+            FactorModels.parse("while (true) {}; return 1"),
+            FactorModels.parse("(periods-period)/periods"),
+            FactorModels.parse("try { for (;;) { x = 1 } } catch (Exception ex) {}; return 1"),
+            FactorModels.parse("(1..1000000000).each { x = it }; return 1"),
+            FactorModels.parse("def f(n) { f(n + 1) + f(n + 2) }; f(0)")
+        };
+        String[] errors = new String[models.length];
+        double[][] schedules = new ParallelFactorGenerator(100).generate(models, fill(models.length, 12), fill(models.length, 12), errors);
+        assertNull(errors[0]);
+        assertNotNull(schedules[0]);
+        assertNull(errors[2]);
+        assertNotNull(schedules[2]);
+        for (int i : new int[]{1, 3, 4}) {
+            assertNull(schedules[i]);
+            assertTrue(errors[i], errors[i].contains("budget of 100 ms"));
+        }
+        // Deep enough recursion overflows the stack before the budget runs out.
+        assertNull(schedules[5]);
+        assertEquals("The script recursed too deeply.", errors[5]);
+    }
+
+    @Test
+    public void test_cancel_stops_running_scripts() throws Exception {
+        final ParallelFactorGenerator generator = new ParallelFactorGenerator(Long.MAX_VALUE / 1000000);
+        final FactorModel[] models = {FactorModels.parse("while (true) {}; return 1")};
+        final String[] errors = new String[1];
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                generator.generate(models, new int[]{12}, new int[]{12}, errors);
+            }
+        };
+        thread.start();
+        Thread.sleep(200);
+        generator.cancel();
+        thread.join(10000);
+        assertFalse(thread.isAlive());
+        assertEquals("The script was cancelled.", errors[0]);
+
+        String[] later = new String[1];
+        assertNull(generator.generate(new FactorModel[]{FactorModels.bullet()}, new int[]{12}, new int[]{12}, later)[0]);
+        assertEquals("Cancelled.", later[0]);
+    }
+}
@@ -0,0 +1,66 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PortfolioPricerTest {
+
+    @Test
+    public void test_matches_calc_with_shared_and_own_schedules() {
+        int periods = 360;
+        double[] sharedFactors = new double[periods];
+        double[] sharedRates = new double[periods];
+        for (int i = 0; i < periods; i++) {
+            sharedFactors[i] = (double) (periods - i) / periods;
+            sharedRates[i] = .05 / 12;
+        }
+        Portfolio.Builder builder = new Portfolio.Builder();
+        int shared = builder.addSchedule(sharedFactors, sharedRates);
+
+        int size = 10 * PortfolioPricer.BONDS_PER_TASK + 17;
+        double[][] factors = new double[size][];
+        double[][] rates = new double[size][];
+        for (int i = 0; i < size; i++) {
+            int days = 1 + (i * 7919) % (periods * 30);
+            double periodYield = (.02 + (i % 50) * .001) / 12;
+            int payDelay = i % 25;
+            if (i % 3 == 0) {
+                int ownPeriods = (days + 29) / 30 + i % 4;
+                factors[i] = new double[ownPeriods];
+                rates[i] = new double[ownPeriods];
+                Arrays.fill(factors[i], 1);
+                Arrays.fill(rates[i], .03 / 12);
+                builder.add(days, periodYield, 30, payDelay, factors[i], rates[i]);
+            } else {
+                factors[i] = sharedFactors;
+                rates[i] = sharedRates;
+                builder.add(days, periodYield, 30, payDelay, shared, periods);
+            }
+        }
+        Portfolio portfolio = builder.build();
+        assertEquals(size, portfolio.size());
+
+        double[] parallel = new double[size];
+        PortfolioPricer.price(portfolio, parallel);
+        double[] single = new double[size];
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            PortfolioPricer.price(portfolio, single, pool);
+        } finally {
+            pool.shutdown();
+        }
+        for (int i = 0; i < size; i++) {
+            double expected = Calc.price(portfolio.daysToMaturity(i), factors[i], rates[i], portfolio.periodYield(i), 30, portfolio.payDelay(i));
+            assertEquals("bond " + i, expected, parallel[i], 0);
+            assertEquals("bond " + i, expected, single[i], 0);
+            assertEquals("bond " + i, expected, portfolio.price(i), 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_schedule_too_short() {
+        new Portfolio.Builder().add(91, .01, 30, 0, new double[3], new double[3]);
+    }
+}
@@ -0,0 +1,91 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PrepaymentSimulationTest {
+
+    @Test
+    public void test_deterministic_model_matches_calc() throws GenerationException {
+        // With no volatility and no refinancing every path prepays at the base rate.
+        PrepaymentSimulation simulation = new PrepaymentSimulation.Builder()
+                .shortRate(5, 5, .1, 0)
+                .prepayment(8, 0, 60, 5.5)
+                .fixedCoupon(6)
+                .scheduled(FactorModels.levelPayment(6.5))
+                .payDelay(14)
+                .build();
+        RunningStatistics statistics = simulation.run(3000, 5.5, 1000, 42);
+
+        int periods = 100;
+        double[] scheduled = new double[periods];
+        FactorModels.levelPayment(6.5).generate(scheduled, 12);
+        double[] prepaid = new double[periods];
+        FactorModels.cpr(8).generate(prepaid, 12);
+        double[] factors = new double[periods];
+        for (int i = 0; i < periods; i++) {
+            factors[i] = scheduled[i] * prepaid[i];
+        }
+        double[] rates = new double[periods];
+        Arrays.fill(rates, .06 / 12);
+        double expected = Calc.price(3000, factors, rates, .055 / 12, 30, 14);
+
+        assertEquals(1000, statistics.count());
+        assertEquals(expected, statistics.mean(), 1e-12);
+        assertEquals(0, statistics.standardError(), 1e-12);
+        assertEquals(expected, statistics.percentile(50), PrepaymentSimulation.PRICE_BIN_WIDTH / 2);
+    }
+
+    @Test
+    public void test_same_seed_same_statistics_on_any_pool() throws GenerationException {
+        PrepaymentSimulation simulation = new PrepaymentSimulation.Builder().scheduled(FactorModels.levelPayment(5.5)).build();
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        try {
+            RunningStatistics a = simulation.run(3600, 4, 3000, 7, one);
+            RunningStatistics b = simulation.run(3600, 4, 3000, 7, four);
+            assertEquals(Double.doubleToLongBits(a.mean()), Double.doubleToLongBits(b.mean()));
+            assertEquals(Double.doubleToLongBits(a.standardError()), Double.doubleToLongBits(b.standardError()));
+            assertEquals(a.percentile(5), b.percentile(5), 0);
+            assertEquals(a.percentile(95), b.percentile(95), 0);
+            RunningStatistics c = simulation.run(3600, 4, 3000, 8, four);
+            assertTrue(a.mean() != c.mean());
+        } finally {
+            one.shutdown();
+            four.shutdown();
+        }
+    }
+
+    @Test
+    public void test_prepayment_option_costs_a_premium_bond() throws GenerationException {
+        // Prepayments speed up when rates fall below the note rate and never slow below the base rate, so a premium bond
+        // repaid at par is worth less the more rates move.
+        PrepaymentSimulation.Builder builder = new PrepaymentSimulation.Builder().fixedCoupon(7).prepayment(6, 20, 60, 5);
+        RunningStatistics calm = builder.shortRate(5, 5, .1, .01).build().run(7200, 5, 4000, 1);
+        RunningStatistics volatile_ = builder.shortRate(5, 5, .1, 2).build().run(7200, 5, 4000, 1);
+        assertTrue(calm.mean() > 1);
+        assertTrue(volatile_.mean() + 5 * volatile_.standardError() < calm.mean());
+        assertTrue(volatile_.percentile(5) < volatile_.percentile(50));
+        assertTrue(volatile_.percentile(50) < volatile_.percentile(95));
+        // Four times the paths halves the standard error.
+        RunningStatistics more = builder.build().run(7200, 5, 16000, 2);
+        assertEquals(volatile_.standardError() / 2, more.standardError(), volatile_.standardError() * .1);
+    }
+
+    @Test
+    public void test_floating_coupon_follows_short_rate() {
+        PrepaymentSimulation simulation = new PrepaymentSimulation.Builder().floatingCoupon(.5).shortRate(4, 4, 0, 0).build();
+        double[] scheduled = {1, 1, 1};
+        double[] factors = new double[3];
+        double[] rates = new double[3];
+        simulation.simulate(new java.util.SplittableRandom(1), scheduled, factors, rates);
+        for (double rate : rates) {
+            assertEquals(.045 / 12, rate, 1e-15);
+        }
+        assertEquals(1, factors[0], 0);
+        assertTrue(factors[1] < 1 && factors[2] < factors[1]);
+    }
+}
@@ -0,0 +1,70 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PriceCurveTest {
+
+    private static final double TOLERANCE = 1e-12;
+
+    private static double[] stairStepFactors(int periods) {
+        double[] factors = new double[periods];
+        for (int i = 0; i < periods; i++) {
+            factors[i] = (double) (periods - i) / periods;
+        }
+        return factors;
+    }
+
+    private static double[] constantRates(int periods, double rate) {
+        double[] rates = new double[periods];
+        Arrays.fill(rates, rate);
+        return rates;
+    }
+
+    private static void assertMatchesCalc(int minDays, int maxDays, double[] factors, double[] rates, double periodYield, int periodLength, int payDelay) {
+        double[] curve = new double[maxDays - minDays + 1];
+        PriceCurve.price(minDays, factors, rates, periodYield, periodLength, payDelay, curve);
+        for (int i = 0; i < curve.length; i++) {
+            int days = minDays + i;
+            double expected = Calc.price(days, factors, rates, periodYield, periodLength, payDelay);
+            assertEquals("days=" + days + ", periodLength=" + periodLength + ", payDelay=" + payDelay, expected, curve[i], TOLERANCE);
+        }
+    }
+
+    @Test
+    public void test_matches_calc_for_each_coupon_frequency() {
+        for (int periodsPerYear : new int[]{1, 2, 3, 4, 6, 12}) {
+            int periodLength = DayCountUtil.periodLength(periodsPerYear);
+            int days = 30 * 360 + 17;
+            int periods = days / periodLength + 1;
+            double[] factors = stairStepFactors(periods);
+            double[] rates = constantRates(periods, .05 / periodsPerYear);
+            for (int payDelay : new int[]{0, 14, 55}) {
+                assertMatchesCalc(1, days, factors, rates, .04 / periodsPerYear, periodLength, payDelay);
+            }
+        }
+    }
+
+    @Test
+    public void test_matches_calc_for_partial_range_and_extra_factors() {
+        double[] factors = stairStepFactors(100);
+        double[] rates = new double[100];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = .01 + i * .0001;
+        }
+        assertMatchesCalc(45, 1000, factors, rates, .015, 30, 24);
+        assertMatchesCalc(360, 360, factors, rates, .015, 30, 0);
+    }
+
+    @Test
+    public void test_zero_yield() {
+        double[] factors = stairStepFactors(10);
+        assertMatchesCalc(1, 1800, factors, constantRates(10, .03), 0, 180, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_too_few_factors() {
+        PriceCurve.price(1, new double[2], new double[2], .01, 30, 0, new double[61]);
+    }
+}
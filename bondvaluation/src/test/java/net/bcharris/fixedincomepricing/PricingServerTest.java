@@ -0,0 +1,209 @@
+package net.bcharris.fixedincomepricing;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PricingServerTest {
+
+    private PricingServer server;
+
+    @Before
+    public void start() throws Exception {
+        server = PricingServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @After
+    public void stop() {
+        server.stop();
+    }
+
+    private int status;
+
+    private Object request(String method, String path, String body) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.port() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            OutputStream out = connection.getOutputStream();
+            out.write(body.getBytes("UTF-8"));
+            out.close();
+        }
+        status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, read);
+        }
+        in.close();
+        return Json.parse(new String(bytes.toByteArray(), "UTF-8"));
+    }
+
+    private static double[] constantSchedule(int periods, double value) {
+        double[] values = new double[periods];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    private static String bond(int days, double periodYield) {
+        return "{\"daysToMaturity\":" + days + ",\"periodLength\":30,\"payDelay\":14,\"rates\":0.004,\"periodYield\":" + periodYield + "}";
+    }
+
+    private static double expectedPrice(int days, double periodYield) {
+        int periods = (days + 29) / 30;
+        return Calc.price(days, constantSchedule(periods, 1), constantSchedule(periods, .004), periodYield, 30, 14);
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            out.append(text);
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void test_single_price_matches_calc() throws Exception {
+        Map<?, ?> result = (Map<?, ?>) request("POST", "/price", bond(1000, .003));
+        assertEquals(200, status);
+        assertEquals(expectedPrice(1000, .003), (Double) result.get("price"), 0);
+    }
+
+    @Test
+    public void test_schedules_given_as_arrays() throws Exception {
+        double[] factors = {1, .9, .8, .7};
+        double[] rates = {.004, .0041, .0042, .0043};
+        Map<?, ?> result = (Map<?, ?>) request("POST", "/price",
+                "{\"daysToMaturity\":100,\"periodLength\":30,\"factors\":[1,0.9,0.8,0.7],\"rates\":[0.004,0.0041,0.0042,0.0043],\"periodYield\":0.005}");
+        assertEquals(Calc.price(100, factors, rates, .005, 30, 0), (Double) result.get("price"), 0);
+    }
+
+    @Test
+    public void test_single_rate_takes_the_factor_schedule_length() throws Exception {
+        StringBuilder factorList = new StringBuilder();
+        double[] factors = new double[360];
+        for (int i = 0; i < factors.length; i++) {
+            factors[i] = (360 - i) / 360.0;
+            factorList.append(i > 0 ? "," : "").append(factors[i]);
+        }
+        Map<?, ?> result = (Map<?, ?>) request("POST", "/price",
+                "{\"daysToMaturity\":1000,\"periodLength\":30,\"rates\":0.004,\"factors\":[" + factorList + "],\"periodYield\":0.003}");
+        assertEquals(200, status);
+        assertEquals(Calc.price(1000, factors, constantSchedule(360, .004), .003, 30, 0), (Double) result.get("price"), 0);
+        result = (Map<?, ?>) request("POST", "/price",
+                "{\"daysToMaturity\":100,\"periodLength\":30,\"rates\":[0.004,0.004,0.004,0.004,0.004],\"periodYield\":0.003}");
+        assertEquals(200, status);
+        assertEquals(Calc.price(100, constantSchedule(5, 1), constantSchedule(5, .004), .003, 30, 0), (Double) result.get("price"), 0);
+    }
+
+    @Test
+    public void test_oversized_bodies_are_refused() throws Exception {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port());
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST /price HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + (PricingServer.MAX_BODY_BYTES + 1L)
+                    + "\r\n\r\n").getBytes("UTF-8"));
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+            String statusLine = in.readLine();
+            assertTrue(statusLine, statusLine.startsWith("HTTP/1.1 413 "));
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void test_batches_are_answered_in_order() throws Exception {
+        for (int count : new int[]{3, PricingServer.SMALL_REQUEST + 50}) {
+            StringBuilder body = new StringBuilder("[");
+            for (int i = 0; i < count; i++) {
+                body.append(i > 0 ? "," : "").append(bond(30 + i * 37, .002 + i * 1e-5));
+            }
+            List<?> results = (List<?>) request("POST", "/price", body.append(']').toString());
+            assertEquals(200, status);
+            assertEquals(count, results.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(expectedPrice(30 + i * 37, .002 + i * 1e-5), (Double) ((Map<?, ?>) results.get(i)).get("price"), 0);
+            }
+        }
+    }
+
+    @Test
+    public void test_price_solves_for_yield() throws Exception {
+        double price = expectedPrice(2000, .0035);
+        String body = "[" + bond(2000, .0035).replace("\"periodYield\":0.0035", "\"price\":" + price) + "," + bond(2000, .0035) + "]";
+        List<?> results = (List<?>) request("POST", "/price", body);
+        assertEquals(.0035, (Double) ((Map<?, ?>) results.get(0)).get("periodYield"), 1e-12);
+        assertEquals(price, (Double) ((Map<?, ?>) results.get(1)).get("price"), 0);
+    }
+
+    @Test
+    public void test_bad_requests_are_rejected() throws Exception {
+        String[] bodies = {
+            "{",
+            "{\"periodLength\":30,\"rates\":0.004,\"periodYield\":0.003}",
+            "{\"daysToMaturity\":0,\"periodLength\":30,\"rates\":0.004,\"periodYield\":0.003}",
+            "{\"daysToMaturity\":100,\"periodLength\":30,\"rates\":[0.004],\"periodYield\":0.003}",
+            "{\"daysToMaturity\":100,\"periodLength\":30,\"rates\":0.004}",
+            "[" + bond(100, .003) + ",7]",
+            "{\"daysToMaturity\":2000000000,\"periodLength\":1,\"rates\":0.004,\"periodYield\":0.003}",
+            repeat("[", 100000) + repeat("]", 100000)
+        };
+        for (String body : bodies) {
+            Map<?, ?> result = (Map<?, ?>) request("POST", "/price", body);
+            assertEquals(body, 400, status);
+            assertTrue(body, result.get("error") instanceof String);
+        }
+        request("GET", "/price", null);
+        assertEquals(405, status);
+    }
+
+    @Test
+    public void test_concurrent_requests_are_coalesced() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Double>> results = new ArrayList<Future<Double>>();
+            for (int i = 0; i < 400; i++) {
+                final int days = 30 + i * 11;
+                results.add(clients.submit(new Callable<Double>() {
+
+                    @Override
+                    public Double call() throws Exception {
+                        return (Double) ((Map<?, ?>) request("POST", "/price", bond(days, .003))).get("price");
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(expectedPrice(30 + i * 11, .003), results.get(i).get(), 0);
+            }
+        } finally {
+            clients.shutdown();
+        }
+        Map<?, ?> stats = (Map<?, ?>) request("GET", "/stats", null);
+        assertEquals(400, ((Double) stats.get("requests")).intValue());
+        assertEquals(400, ((Double) stats.get("batchedPrices")).intValue());
+        assertTrue((Double) stats.get("batches") <= 400);
+        assertTrue((Double) stats.get("p50Micros") <= (Double) stats.get("p99Micros"));
+    }
+}
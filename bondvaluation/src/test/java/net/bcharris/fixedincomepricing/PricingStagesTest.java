@@ -0,0 +1,126 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Arrays;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PricingStagesTest {
+
+    private static class CountingModel implements FactorModel {
+
+        int generated;
+
+        @Override
+        public void generate(double[] factors, int periodsPerYear) throws GenerationException {
+            generated++;
+            FactorModels.levelPayment(6).generate(factors, periodsPerYear);
+        }
+    }
+
+    @Test
+    public void test_curve_matches_price_curve() throws GenerationException {
+        PricingStages stages = new PricingStages();
+        double[] factors = stages.factors(FactorModels.levelPayment(6.5), 120, 12);
+        double[] rates = stages.rates(.06 / 12, 120);
+        PricingStages.Discounted discounted = stages.discount(stages.cashFlows(factors, rates), .055 / 12);
+        double[] curve = stages.curve(discounted, 30, 14, 3599);
+        double[] expected = new double[3599];
+        PriceCurve.price(1, factors, rates, .055 / 12, 30, 14, expected);
+        assertEquals(Arrays.toString(expected), Arrays.toString(curve));
+        for (int days : new int[]{1, 29, 30, 31, 1800, 3599}) {
+            assertEquals(Calc.price(days, factors, rates, .055 / 12, 30, 14), discounted.price(days, 30, 14), 0);
+        }
+    }
+
+    @Test
+    public void test_scenario_matches_scenario_surface() throws GenerationException {
+        PricingStages stages = new PricingStages();
+        double[] factors = stages.factors(FactorModels.cpr(8), 40, 4);
+        double[] rates = stages.rates(.05 / 4, 40);
+        PricingStages.CashFlows cashFlows = stages.cashFlows(factors, rates);
+        double[] periodYields = {.01 / 4, .03 / 4, .05 / 4};
+        double[][] surface = new double[3][3600];
+        ScenarioSurface.price(periodYields, 1, factors, rates, 90, 14, surface);
+        int[] days = {1, 89, 90, 91, 1000, 3599, 3600};
+        double[] prices = new double[days.length];
+        for (int i = 0; i < periodYields.length; i++) {
+            PricingStages.scenario(cashFlows, periodYields[i], 90, 14, days, prices);
+            for (int j = 0; j < days.length; j++) {
+                assertEquals(surface[i][days[j] - 1], prices[j], 0);
+            }
+        }
+    }
+
+    @Test
+    public void test_changes_recompute_only_downstream_stages() throws GenerationException {
+        PricingStages stages = new PricingStages();
+        CountingModel model = new CountingModel();
+        double[] factors = stages.factors(model, 120, 12);
+        double[] rates = stages.rates(.05 / 12, 120);
+        PricingStages.CashFlows cashFlows = stages.cashFlows(factors, rates);
+        PricingStages.Discounted discounted = stages.discount(cashFlows, .04 / 12);
+        double[] curve = stages.curve(discounted, 30, 0, 3600);
+
+        // The same inputs give the same results without computing anything.
+        assertSame(factors, stages.factors(model, 120, 12));
+        assertSame(curve, stages.curve(stages.discount(stages.cashFlows(stages.factors(model, 120, 12), stages.rates(.05 / 12, 120)), .04 / 12), 30, 0, 3600));
+        assertEquals(1, model.generated);
+
+        // A new yield is discounted again but keeps its cash flows.
+        PricingStages.Discounted higher = stages.discount(cashFlows, .05 / 12);
+        assertNotSame(discounted, higher);
+        assertNotSame(curve, stages.curve(higher, 30, 0, 3600));
+
+        // Fewer days in the same number of periods keep the factors and discounting.
+        assertSame(factors, stages.factors(model, (3590 + 29) / 30, 12));
+        assertNotSame(curve, stages.curve(discounted, 30, 0, 3590));
+        assertEquals(1, model.generated);
+
+        // A new coupon keeps the factors.
+        assertNotSame(cashFlows, stages.cashFlows(factors, stages.rates(.06 / 12, 120)));
+        assertEquals(1, model.generated);
+
+        // The factors depend on the periods per year and the number of periods.
+        stages.factors(model, 120, 4);
+        stages.factors(model, 121, 12);
+        assertEquals(3, model.generated);
+        assertSame(factors, stages.factors(model, 120, 12));
+        assertEquals(3, model.generated);
+    }
+
+    @Test
+    public void test_least_recently_used_results_are_forgotten() throws GenerationException {
+        PricingStages stages = new PricingStages(2);
+        CountingModel model = new CountingModel();
+        stages.factors(model, 10, 12);
+        stages.factors(model, 20, 12);
+        stages.factors(model, 10, 12);
+        stages.factors(model, 30, 12);
+        assertEquals(3, model.generated);
+        stages.factors(model, 10, 12);
+        assertEquals(3, model.generated);
+        stages.factors(model, 20, 12);
+        assertEquals(4, model.generated);
+    }
+
+    @Test
+    public void test_failed_generation_is_not_remembered() {
+        PricingStages stages = new PricingStages();
+        FactorModel failing = new FactorModel() {
+
+            @Override
+            public void generate(double[] factors, int periodsPerYear) throws GenerationException {
+                throw new GenerationException("Failed.");
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            try {
+                stages.factors(failing, 10, 12);
+                fail();
+            } catch (GenerationException ex) {
+                assertEquals("Failed.", ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package net.bcharris.fixedincomepricing;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RiskTest {
+
+    private static final double BUMP = 1e-5;
+
+    private static double[][] schedule(int periods, double periodCoupon) {
+        double[] factors = new double[periods];
+        double[] rates = new double[periods];
+        for (int i = 0; i < periods; i++) {
+            factors[i] = 1 - .8 * i / periods;
+            rates[i] = periodCoupon;
+        }
+        return new double[][]{factors, rates};
+    }
+
+    /**
+     * Compare with central differences of Calc.price in the annual yield, which are accurate to about 1e-7 relative.
+     */
+    private static void assertMatchesFiniteDifferences(int days, double[][] schedule, double annualYield, int periodLength, int payDelay) {
+        double periodsPerYear = DayCountUtil.periodsPerYear(periodLength);
+        double[] factors = schedule[0];
+        double[] rates = schedule[1];
+        double price = Calc.price(days, factors, rates, annualYield / periodsPerYear, periodLength, payDelay);
+        double up = Calc.price(days, factors, rates, (annualYield + BUMP) / periodsPerYear, periodLength, payDelay);
+        double down = Calc.price(days, factors, rates, (annualYield - BUMP) / periodsPerYear, periodLength, payDelay);
+        Risk risk = Risk.calculate(days, factors, rates, annualYield / periodsPerYear, periodLength, payDelay);
+        String message = days + " days, delay " + payDelay;
+
+        assertEquals(message, price, risk.price(), 0);
+        double fullPrice = price + risk.accrued();
+        double slope = (up - down) / (2 * BUMP);
+        double curvature = (up - 2 * price + down) / (BUMP * BUMP);
+        assertEquals(message, -slope / fullPrice, risk.modifiedDuration(), 1e-6 * risk.modifiedDuration());
+        assertEquals(message, curvature / fullPrice, risk.convexity(), 1e-3 * Math.max(1, risk.convexity()));
+        assertEquals(message, -slope * .0001, risk.dv01(), 1e-10);
+        assertEquals(message, risk.modifiedDuration() * (1 + annualYield / periodsPerYear), risk.macaulayDuration(), 1e-12);
+    }
+
+    @Test
+    public void test_matches_finite_differences() {
+        double[][] monthly = schedule(360, .05 / 12);
+        for (int days = 1; days <= 360 * 30; days += 173) {
+            assertMatchesFiniteDifferences(days, monthly, .04, 30, 0);
+            assertMatchesFiniteDifferences(days, monthly, .07, 30, 24);
+        }
+        double[][] semiannual = schedule(20, .03);
+        for (int days = 1; days <= 180 * 20; days += 59) {
+            assertMatchesFiniteDifferences(days, semiannual, .055, 180, 14);
+        }
+        assertMatchesFiniteDifferences(180 * 20, semiannual, -.002, 180, 0);
+    }
+
+    @Test
+    public void test_zero_coupon_bullet() {
+        // One payment of 1 in exactly five years at 4% compounded annually.
+        double[] factors = {1, 1, 1, 1, 1};
+        double[] rates = new double[5];
+        Risk risk = Risk.calculate(360 * 5, factors, rates, .04, 360, 0);
+        assertEquals(Math.pow(1.04, -5), risk.price(), 1e-15);
+        assertEquals(0, risk.accrued(), 0);
+        assertEquals(5, risk.macaulayDuration(), 1e-12);
+        assertEquals(5 / 1.04, risk.modifiedDuration(), 1e-12);
+        assertEquals(5 * 6 / (1.04 * 1.04), risk.convexity(), 1e-12);
+    }
+
+    @Test
+    public void test_slope_matches_yield_solver() {
+        double[][] monthly = schedule(360, .05 / 12);
+        double[] slope = new double[2];
+        YieldSolver.priceAndSlope(5000, monthly[0], monthly[1], .04 / 12, 30, 14, slope);
+        Risk risk = Risk.calculate(5000, monthly[0], monthly[1], .04 / 12, 30, 14);
+        assertEquals(-risk.dv01() / .0001 * 12, slope[1], 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_short_schedule() {
+        double[][] monthly = schedule(10, .05 / 12);
+        Risk.calculate(301, monthly[0], monthly[1], .04 / 12, 30, 0);
+    }
+}
@@ -0,0 +1,63 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RunningStatisticsTest {
+
+    @Test
+    public void test_moments_and_percentiles() {
+        RunningStatistics statistics = new RunningStatistics(0, 100, 1000);
+        assertTrue(Double.isNaN(statistics.mean()));
+        assertTrue(Double.isNaN(statistics.percentile(50)));
+        for (int i = 1; i <= 100; i++) {
+            statistics.add(i);
+        }
+        assertEquals(100, statistics.count());
+        assertEquals(50.5, statistics.mean(), 1e-12);
+        // The sample variance of 1..100 is 100 * 101 / 12.
+        assertEquals(Math.sqrt(100 * 101 / 12.0), statistics.standardDeviation(), 1e-12);
+        assertEquals(statistics.standardDeviation() / 10, statistics.standardError(), 1e-12);
+        // Within a bin of the exact value.
+        assertEquals(50, statistics.percentile(50), .1);
+        assertEquals(99, statistics.percentile(99), .1);
+        assertEquals(1, statistics.percentile(0), 0);
+        // 100 is the upper bound, outside the bins.
+        assertEquals(100, statistics.percentile(100), 0);
+        assertEquals(1, statistics.min(), 0);
+        assertEquals(100, statistics.max(), 0);
+    }
+
+    @Test
+    public void test_merge_matches_adding_everything() {
+        Random random = new Random(1);
+        RunningStatistics all = new RunningStatistics(-5, 5, 100);
+        RunningStatistics[] parts = new RunningStatistics[7];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new RunningStatistics(-5, 5, 100);
+        }
+        for (int i = 0; i < 10000; i++) {
+            double value = random.nextGaussian() * 2 + .5;
+            all.add(value);
+            parts[i % parts.length].add(value);
+        }
+        RunningStatistics merged = new RunningStatistics(-5, 5, 100);
+        for (RunningStatistics part : parts) {
+            merged.merge(part);
+        }
+        assertEquals(all.count(), merged.count());
+        assertEquals(all.mean(), merged.mean(), 1e-12);
+        assertEquals(all.standardDeviation(), merged.standardDeviation(), 1e-12);
+        assertEquals(all.min(), merged.min(), 0);
+        assertEquals(all.max(), merged.max(), 0);
+        for (double percentile : new double[]{0, 1, 25, 50, 75, 99, 100}) {
+            assertEquals(all.percentile(percentile), merged.percentile(percentile), 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_merge_needs_same_bins() {
+        new RunningStatistics(0, 1, 10).merge(new RunningStatistics(0, 1, 20));
+    }
+}
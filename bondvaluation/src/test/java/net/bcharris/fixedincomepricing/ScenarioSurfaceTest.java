@@ -0,0 +1,45 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScenarioSurfaceTest {
+
+    @Test
+    public void test_matches_calc_on_every_thread_count() {
+        double[] factors = new double[120];
+        double[] rates = new double[120];
+        for (int i = 0; i < factors.length; i++) {
+            factors[i] = 1 - .5 * i / factors.length;
+            rates[i] = .06 / 12;
+        }
+        double[] periodYields = new double[37];
+        for (int i = 0; i < periodYields.length; i++) {
+            periodYields[i] = (.01 + i * .0025) / 12;
+        }
+        for (int threads = 1; threads <= 4; threads *= 2) {
+            double[][] prices = new double[periodYields.length][3590];
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            ScenarioSurface.price(periodYields, 10, factors, rates, 30, 14, prices, pool);
+            pool.shutdown();
+            for (int i = 0; i < periodYields.length; i++) {
+                for (int j = 0; j < prices[i].length; j += 7) {
+                    assertEquals(Calc.price(10 + j, factors, rates, periodYields[i], 30, 14), prices[i][j], 0);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_ragged_rows() {
+        double[] factors = {1, 1};
+        ScenarioSurface.price(new double[]{.01, .02}, 1, factors, factors, 30, 0, new double[][]{new double[10], new double[11]});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_short_schedule() {
+        double[] factors = {1, 1};
+        ScenarioSurface.price(new double[]{.01}, 1, factors, factors, 30, 0, new double[1][61]);
+    }
+}
@@ -0,0 +1,145 @@
+package net.bcharris.fixedincomepricing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScheduleStoreTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("schedules", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static double[] schedule(int periods, double start) {
+        double[] values = new double[periods];
+        for (int i = 0; i < periods; i++) {
+            values[i] = start - i * .001;
+        }
+        return values;
+    }
+
+    private static void assertColumn(double[] expected, DoubleBuffer actual) {
+        assertEquals("length", expected.length, actual.remaining());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("period " + i, expected[i], actual.get(i), 0);
+        }
+    }
+
+    @Test
+    public void test_put_get_and_reopen() throws IOException {
+        ScheduleStore store = ScheduleStore.create(file, 1000);
+        for (long id = 0; id < 1000; id++) {
+            store.put(id * 7919, schedule(1 + (int) (id % 360), 1), schedule(1 + (int) (id % 360), .01));
+        }
+        assertEquals(1000, store.size());
+        assertNull(store.get(-1));
+        store.close();
+
+        store = ScheduleStore.open(file);
+        assertEquals(1000, store.size());
+        for (long id = 0; id < 1000; id++) {
+            ScheduleStore.Schedule schedule = store.get(id * 7919);
+            assertEquals(id * 7919, schedule.id());
+            assertColumn(schedule(1 + (int) (id % 360), 1), schedule.factors());
+            assertColumn(schedule(1 + (int) (id % 360), .01), schedule.rates());
+        }
+        store.close();
+    }
+
+    @Test
+    public void test_append_in_place_and_after_moving() throws IOException {
+        ScheduleStore store = ScheduleStore.create(file, 4);
+        double[] factors = schedule(100, 1);
+        double[] rates = schedule(100, .01);
+        for (int i = 0; i < 100; i++) {
+            store.append(42, new double[]{factors[i]}, new double[]{rates[i]});
+            store.append(43, new double[]{rates[i]}, new double[]{factors[i]});
+        }
+        assertEquals(2, store.size());
+        assertColumn(factors, store.get(42).factors());
+        assertColumn(rates, store.get(42).rates());
+        assertColumn(rates, store.get(43).factors());
+        store.put(42, new double[]{.5}, new double[]{.02});
+        assertColumn(new double[]{.5}, store.get(42).factors());
+        store.close();
+    }
+
+    @Test
+    public void test_schedules_spread_over_small_chunks() throws IOException {
+        // 4 KB chunks hold at most two 100 period schedules each.
+        ScheduleStore store = ScheduleStore.create(file, 8, 12);
+        for (long id = 0; id < 8; id++) {
+            store.put(id, schedule(100, 1 - id * .01), schedule(100, .01));
+        }
+        store.close();
+        assertTrue(file.length() > 4 * 4096);
+        store = ScheduleStore.open(file);
+        for (long id = 0; id < 8; id++) {
+            assertColumn(schedule(100, 1 - id * .01), store.get(id).factors());
+        }
+        store.close();
+    }
+
+    @Test
+    public void test_prices_from_mapping_match_calc() throws IOException {
+        ScheduleStore store = ScheduleStore.create(file, 1);
+        double[] factors = new double[360];
+        double[] rates = new double[360];
+        for (int i = 0; i < 360; i++) {
+            factors[i] = (360.0 - i) / 360;
+            rates[i] = .05 / 12;
+        }
+        store.put(7, factors, rates);
+        ScheduleStore.Schedule schedule = store.get(7);
+        for (int days = 1; days <= 360 * 30; days += 37) {
+            assertEquals(Calc.price(days, factors, rates, .04 / 12, 30, 14), schedule.price(days, .04 / 12, 30, 14), 0);
+        }
+        store.close();
+    }
+
+    @Test
+    public void test_failed_allocation_adds_nothing() throws IOException {
+        ScheduleStore store = ScheduleStore.create(file, 8, 12);
+        for (int i = 0; i < 2; i++) {
+            try {
+                // 300 periods with room to grow are more than a 4 KB chunk.
+                store.put(9, schedule(300, 1), schedule(300, .01));
+                fail();
+            } catch (IllegalArgumentException ex) {
+                assertEquals(0, store.size());
+                assertNull(store.get(9));
+            }
+        }
+        store.append(9, schedule(10, 1), schedule(10, .01));
+        assertEquals(1, store.size());
+        assertColumn(schedule(10, 1), store.get(9).factors());
+        store.close();
+        store = ScheduleStore.open(file);
+        assertEquals(1, store.size());
+        store.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_full() throws IOException {
+        ScheduleStore store = ScheduleStore.create(file, 2);
+        try {
+            for (long id = 0; id < 100; id++) {
+                store.put(id, new double[1], new double[1]);
+            }
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Arrays;
+import net.bcharris.fixedincomepricing.GroovyPeriodValueGenerator.GenerationException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScriptBudgetTest {
+
+    @Test
+    public void test_budgets_nest() throws GenerationException {
+        ScriptBudget outer = new ScriptBudget(10000);
+        ScriptBudget inner = new ScriptBudget(10000);
+        outer.begin();
+        try {
+            inner.begin();
+            inner.cancel();
+            try {
+                ScriptBudget.check();
+                fail();
+            } catch (ScriptBudget.Stopped ex) {
+                assertEquals("The script was cancelled.", ex.getMessage());
+            } finally {
+                inner.end();
+            }
+            ScriptBudget.check();
+        } finally {
+            outer.end();
+        }
+        ScriptBudget.check();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_end_without_begin() {
+        new ScriptBudget(1).end();
+    }
+
+    @Test
+    public void test_interrupt_stops_scripts_without_a_budget() {
+        GroovyPeriodValueGenerator generator = new GroovyPeriodValueGenerator("while (true) {}; return 1");
+        Thread.currentThread().interrupt();
+        try {
+            generator.generate(new double[1]);
+            fail();
+        } catch (GenerationException ex) {
+            assertEquals("The script was interrupted.", ex.getMessage());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void test_checks_do_not_change_results() throws GenerationException {
+        double[] values = new double[5];
+        new GroovyPeriodValueGenerator("x = 0; for (i in 0..period) { x += i }; while (x > 3) { x -= 3 }; [1, 2].each { x += it }; x").generate(values);
+        assertEquals(Arrays.toString(new double[]{3, 4, 6, 6, 4}), Arrays.toString(values));
+    }
+}
@@ -0,0 +1,87 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class YieldSolverTest {
+
+    private static double[] stairStepFactors(int periods) {
+        double[] factors = new double[periods];
+        for (int i = 0; i < periods; i++) {
+            factors[i] = (double) (periods - i) / periods;
+        }
+        return factors;
+    }
+
+    private static double[] constantRates(int periods, double rate) {
+        double[] rates = new double[periods];
+        Arrays.fill(rates, rate);
+        return rates;
+    }
+
+    @Test
+    public void test_slope_matches_finite_difference() {
+        double[] factors = stairStepFactors(120);
+        double[] rates = constantRates(120, .05 / 12);
+        double[] result = new double[2];
+        for (int days : new int[]{1, 30, 45, 1000, 3600}) {
+            for (int payDelay : new int[]{0, 24}) {
+                double y = .06 / 12;
+                double h = 1e-6;
+                YieldSolver.priceAndSlope(days, factors, rates, y, 30, payDelay, result);
+                assertEquals(Calc.price(days, factors, rates, y, 30, payDelay), result[0], 1e-15);
+                double fd = (Calc.price(days, factors, rates, y + h, 30, payDelay) - Calc.price(days, factors, rates, y - h, 30, payDelay)) / (2 * h);
+                assertEquals("days=" + days + ", payDelay=" + payDelay, fd, result[1], 1e-6 * Math.abs(fd));
+            }
+        }
+    }
+
+    @Test
+    public void test_round_trip() {
+        for (int periodsPerYear : new int[]{1, 2, 4, 12}) {
+            int periodLength = DayCountUtil.periodLength(periodsPerYear);
+            int periods = 30 * periodsPerYear;
+            double[] factors = stairStepFactors(periods);
+            double[] rates = constantRates(periods, .05 / periodsPerYear);
+            for (int days : new int[]{1, periodLength, periodLength + 7, 10 * 360 + 3, 30 * 360}) {
+                for (double yield : new double[]{-.005, 0, .001, .05, .25, 1.5}) {
+                    double periodYield = yield / periodsPerYear;
+                    double price = Calc.price(days, factors, rates, periodYield, periodLength, 10);
+                    double solved = YieldSolver.solve(price, days, factors, rates, periodLength, 10);
+                    assertEquals("periodsPerYear=" + periodsPerYear + ", days=" + days + ", yield=" + yield,
+                            price, Calc.price(days, factors, rates, solved, periodLength, 10), 1e-12);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test_batch_warm_start_converges_quickly() {
+        int periods = 360;
+        double[] factors = stairStepFactors(periods);
+        double[] rates = constantRates(periods, .045 / 12);
+        int count = 2000;
+        int[] days = new int[count];
+        double[] prices = new double[count];
+        double[] expected = new double[count];
+        for (int i = 0; i < count; i++) {
+            days[i] = 5400 + i;
+            expected[i] = (.04 + .02 * i / count) / 12;
+            prices[i] = Calc.price(days[i], factors, rates, expected[i], 30, 14);
+        }
+        double[] yields = new double[count];
+        int iterations = YieldSolver.solveInto(count, days, prices, factors, rates, 30, 14, yields);
+        for (int i = 0; i < count; i++) {
+            assertEquals(expected[i], yields[i], 1e-12);
+        }
+        assertTrue("iterations per price " + (double) iterations / count, iterations <= 4 * count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_unreachable_price() {
+        double[] factors = stairStepFactors(10);
+        double[] rates = constantRates(10, .01);
+        YieldSolver.solve(-.5, 45, factors, rates, 30, 0);
+    }
+}
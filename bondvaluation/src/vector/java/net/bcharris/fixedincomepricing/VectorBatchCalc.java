@@ -0,0 +1,123 @@
+package net.bcharris.fixedincomepricing;
+
+import java.util.Arrays;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link BatchCalc} with the JDK's Vector API, one bond per lane.  Only compiled by the vector profile, as it needs Java
+ * 16 or later and the jdk.incubator.vector module, and only loaded by {@link BatchCalc} when the module is there.  Bonds
+ * past the last whole vector in a tile are priced by the scalar kernel's loops.
+ */
+abstract class VectorBatchCalc extends BatchCalc {
+
+    /**
+     * @param lanes 2, 4 or 8, or 0 for the preferred width.  A single lane is the scalar kernel's job, and x86 has no
+     * 64 bit vectors for the JIT to use.
+     */
+    public static BatchCalc create(int lanes) {
+        switch (lanes) {
+            case 0:
+                return new Preferred();
+            case 2:
+                return new Lanes2();
+            case 4:
+                return new Lanes4();
+            case 8:
+                return new Lanes8();
+            default:
+                throw new IllegalArgumentException(String.format("lanes (%s) is 0, 2, 4 or 8", lanes));
+        }
+    }
+
+    /**
+     * The JIT only compiles vector operations to SIMD instructions when their species is a constant.  Each width's species
+     * is a static final field of its own class, which becomes a constant where this is inlined, as it is when a JVM
+     * prices with one width.
+     */
+    abstract VectorSpecies<Double> species();
+
+    @Override
+    public final int lanes() {
+        return species().length();
+    }
+
+    @Override
+    final void priceTile(int tile, int size, int count, int numCashFlows, int periods, double accruedFraction, boolean delay,
+            double[] factors, double[] rates, double[] periodDiscounts, double[] finalDiscounts, double[] delayDiscounts, double[] prices) {
+        VectorSpecies<Double> species = species();
+        int lanes = species.length();
+        DoubleVector zero = DoubleVector.zero(species);
+        int bound = species.loopBound(size);
+        Arrays.fill(prices, 0, size, 0);
+        for (int p = 0, row = (periods - 1) * count + tile; p < numCashFlows; p++, row -= count) {
+            boolean finalPeriod = p == 0;
+            int i = 0;
+            // Calc.discountPeriod and Calc.cleanPrice lane by lane, in the same order.
+            for (; i < bound; i += lanes) {
+                DoubleVector prevFactor = DoubleVector.fromArray(species, factors, row + i);
+                DoubleVector factor = finalPeriod ? zero : DoubleVector.fromArray(species, factors, row + count + i);
+                DoubleVector px = DoubleVector.fromArray(species, prices, i).mul(DoubleVector.fromArray(species, periodDiscounts, i));
+                px = px.add(prevFactor.mul(DoubleVector.fromArray(species, rates, row + i))); // coupon amount
+                px = px.add(prevFactor.sub(factor)); // paydown amount
+                px.intoArray(prices, i);
+            }
+            discountPeriod(i, size, row, count, finalPeriod, factors, rates, periodDiscounts, prices);
+        }
+        int current = (periods - numCashFlows) * count + tile;
+        int i = 0;
+        for (; i < bound; i += lanes) {
+            DoubleVector px = DoubleVector.fromArray(species, prices, i).mul(DoubleVector.fromArray(species, finalDiscounts, i));
+            if (delay) {
+                px = px.mul(DoubleVector.fromArray(species, delayDiscounts, i));
+            }
+            px = px.div(DoubleVector.fromArray(species, factors, current + i));
+            if (accruedFraction > 0) {
+                px = px.sub(DoubleVector.fromArray(species, rates, current + i).mul(accruedFraction)); // calc date accrued
+            }
+            px.intoArray(prices, i);
+        }
+        finish(i, size, current, accruedFraction, delay, factors, rates, finalDiscounts, delayDiscounts, prices);
+    }
+
+    private static final class Preferred extends VectorBatchCalc {
+
+        private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+        @Override
+        VectorSpecies<Double> species() {
+            return SPECIES;
+        }
+    }
+
+    private static final class Lanes2 extends VectorBatchCalc {
+
+        private static final VectorSpecies<Double> SPECIES = VectorSpecies.of(double.class, VectorShape.S_128_BIT);
+
+        @Override
+        VectorSpecies<Double> species() {
+            return SPECIES;
+        }
+    }
+
+    private static final class Lanes4 extends VectorBatchCalc {
+
+        private static final VectorSpecies<Double> SPECIES = VectorSpecies.of(double.class, VectorShape.S_256_BIT);
+
+        @Override
+        VectorSpecies<Double> species() {
+            return SPECIES;
+        }
+    }
+
+    private static final class Lanes8 extends VectorBatchCalc {
+
+        private static final VectorSpecies<Double> SPECIES = VectorSpecies.of(double.class, VectorShape.S_512_BIT);
+
+        @Override
+        VectorSpecies<Double> species() {
+            return SPECIES;
+        }
+    }
+}